@@ -0,0 +1,105 @@
+package com.biokey.client;
+
+import com.biokey.client.constants.EngineConstants;
+import com.biokey.client.helpers.KeyStrokeCsvHelper;
+import com.biokey.client.models.pojo.EngineModelPojo;
+import com.biokey.client.models.pojo.GaussianFeaturePojo;
+import com.biokey.client.models.pojo.KeyStrokePojo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Key strokes and typing profile shared by the benchmarks, built from the simulated imposters stream so that key
+ * codes, holds and gaps are the ones the engine sees from real typing.
+ *
+ * The profile has the shape of the profiles from the server: the most frequent sequences of one to three keys typed
+ * by the user in the stream, each with the mean and stdev of the log of its duration.
+ */
+public class BenchmarkData {
+
+    public static final String STREAM_FILE = "simulated-imposters-small.csv"; // read from the project directory
+    public static final int FEATURE_SIZE = 617; // features in the typing profiles from the server
+    private static final int MAX_SEQUENCE_LENGTH = 3;
+
+    private static List<KeyStrokePojo> keyStrokes;
+    private static EngineModelPojo profile;
+
+    /**
+     * @return every key stroke in the stream, in order.
+     */
+    public static synchronized List<KeyStrokePojo> keyStrokes() {
+        if (keyStrokes == null) load();
+        return keyStrokes;
+    }
+
+    /**
+     * @return the engine model with the profile built from the user's key strokes in the stream.
+     */
+    public static synchronized EngineModelPojo profile() {
+        if (profile == null) load();
+        return profile;
+    }
+
+    private static void load() {
+        List<KeyStrokePojo> read = new ArrayList<>();
+        // Count, sum and sum of squares of the log durations of each sequence, keyed by the profile name of the sequence.
+        Map<String, double[]> durations = new HashMap<>();
+        List<Integer> pressedKeys = new ArrayList<>();
+        List<Long> pressedTimes = new ArrayList<>();
+        List<Integer> runStarts = new ArrayList<>();
+        Map<Integer, Integer> held = new HashMap<>();
+
+        try {
+            KeyStrokeCsvHelper.read(Paths.get(STREAM_FILE), (String userId, int key, boolean keyDown, long timeStamp, boolean isUser) -> {
+                read.add(new KeyStrokePojo(key, keyDown, timeStamp));
+                if (!isUser) return;
+
+                if (keyDown) {
+                    int position = pressedKeys.size();
+                    boolean newRun = position == 0 || timeStamp - pressedTimes.get(position - 1) > EngineConstants.SEQ_THRESHOLD;
+                    runStarts.add(newRun ? position : runStarts.get(position - 1));
+                    pressedKeys.add(key);
+                    pressedTimes.add(timeStamp);
+                    held.put(key, position);
+                    return;
+                }
+
+                Integer position = held.remove(key);
+                if (position == null) return;
+                StringBuilder sequence = new StringBuilder();
+                for (int start = position; start >= runStarts.get(position) && start > position - MAX_SEQUENCE_LENGTH; start--) {
+                    sequence.insert(0, start == position ? "" : "-").insert(0, pressedKeys.get(start));
+                    long duration = timeStamp - pressedTimes.get(start);
+                    if (duration <= 0) continue;
+                    double[] stats = durations.computeIfAbsent(sequence.toString(), (String s) -> new double[3]);
+                    stats[0]++;
+                    stats[1] += Math.log(duration);
+                    stats[2] += Math.log(duration) * Math.log(duration);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Run the benchmarks from the project directory, next to " + STREAM_FILE, e);
+        }
+
+        List<Map.Entry<String, double[]>> sequences = new ArrayList<>(durations.entrySet());
+        sequences.sort((Map.Entry<String, double[]> a, Map.Entry<String, double[]> b) -> a.getValue()[0] != b.getValue()[0] ?
+                Double.compare(b.getValue()[0], a.getValue()[0]) : a.getKey().compareTo(b.getKey()));
+
+        EngineModelPojo model = new EngineModelPojo();
+        for (int i = 0; i < Math.min(FEATURE_SIZE, sequences.size()); i++) {
+            double[] stats = sequences.get(i).getValue();
+            double mean = stats[1] / stats[0];
+            GaussianFeaturePojo feature = new GaussianFeaturePojo();
+            feature.setIndex(i);
+            feature.setMean(mean);
+            feature.setStdev(Math.max(0.05, Math.sqrt(Math.max(0, stats[2] / stats[0] - mean * mean))));
+            model.getGaussianProfile().put(sequences.get(i).getKey(), feature);
+        }
+
+        keyStrokes = Collections.unmodifiableList(read);
+        profile = model;
+    }
+}
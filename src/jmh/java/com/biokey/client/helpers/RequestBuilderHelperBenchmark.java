@@ -0,0 +1,102 @@
+package com.biokey.client.helpers;
+
+import com.biokey.client.BenchmarkData;
+import com.biokey.client.models.pojo.AnalysisResultPojo;
+import com.biokey.client.models.pojo.AnalysisResultsPojo;
+import com.biokey.client.models.pojo.KeyStrokePojo;
+import com.biokey.client.models.pojo.KeyStrokesPojo;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.biokey.client.constants.AppConstants.KEYSTROKE_WINDOW_SIZE_PER_REQUEST;
+
+/**
+ * Time and allocation of building the body of one POST keystrokes request, the way it was built before the writers
+ * were shared against the way it is built now, and of the other upload bodies. The key strokes are taken in order from
+ * the simulated imposters stream. Run with the gc profiler to see the bytes allocated per request:
+ *
+ * mvn -P jmh compile exec:exec -Djmh.benchmarks=RequestBuilderHelperBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBuilderHelperBenchmark {
+
+    private static final String TYPING_PROFILE_ID = "5a8e1b2c3d4e5f6a7b8c9d0e";
+
+    @Param({"1", "50"})
+    private int windows;
+
+    private List<KeyStrokesPojo> windowsToSend;
+    private AnalysisResultsPojo resultsToSend;
+
+    @Setup
+    public void createWindows() {
+        List<KeyStrokePojo> keyStrokes = BenchmarkData.keyStrokes();
+        windowsToSend = new ArrayList<>();
+        resultsToSend = new AnalysisResultsPojo();
+        Random random = new Random(1);
+        int next = 0;
+        for (int i = 0; i < windows; i++) {
+            KeyStrokesPojo window = new KeyStrokesPojo();
+            for (int j = 0; j < KEYSTROKE_WINDOW_SIZE_PER_REQUEST; j++) {
+                KeyStrokePojo keyStroke = keyStrokes.get(next++ % keyStrokes.size());
+                window.getKeyStrokes().add(keyStroke);
+                if (!keyStroke.isKeyDown()) {
+                    resultsToSend.getAnalysisResults().add(new AnalysisResultPojo(keyStroke.getTimeStamp(), random.nextFloat()));
+                }
+            }
+            windowsToSend.add(window);
+        }
+    }
+
+    /**
+     * A new mapper per request, the keys copied into one queue and the body built as a string, then encoded.
+     */
+    @Benchmark
+    public byte[] newMapperPerRequest() throws JsonProcessingException {
+        Queue<KeyStrokePojo> keysToSend = new ArrayDeque<>();
+        for (KeyStrokesPojo window : windowsToSend) keysToSend.addAll(window.getKeyStrokes());
+
+        ObjectWriter writer = new ObjectMapper().writerFor(Queue.class).withAttribute("typingProfile", TYPING_PROFILE_ID);
+        return ("{\"keystrokes\": " + writer.writeValueAsString(keysToSend) + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The shared writer streaming the keys into the thread's buffer.
+     */
+    @Benchmark
+    public byte[] sharedWriter() throws JsonProcessingException {
+        return RequestBuilderHelper.requestBytesToPostKeystrokes(windowsToSend, TYPING_PROFILE_ID);
+    }
+
+    /**
+     * The compact gzipped column form of the same key strokes.
+     */
+    @Benchmark
+    public byte[] compactKeyStrokes() throws IOException {
+        return RequestBuilderHelper.compactRequestBodyToPostKeystrokes(windowsToSend, TYPING_PROFILE_ID);
+    }
+
+    /**
+     * The analysis results produced by the releases in the same key strokes.
+     */
+    @Benchmark
+    public byte[] analysisResults() throws JsonProcessingException {
+        return RequestBuilderHelper.requestBytesToPostAnalysisResults(resultsToSend, TYPING_PROFILE_ID);
+    }
+}
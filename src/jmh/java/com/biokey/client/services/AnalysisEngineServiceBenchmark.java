@@ -0,0 +1,70 @@
+package com.biokey.client.services;
+
+import com.biokey.client.BenchmarkData;
+import com.biokey.client.models.pojo.AnalysisResultPojo;
+import com.biokey.client.models.pojo.KeyStrokePojo;
+import com.biokey.client.services.engine.LstmEnsembleModel;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the analysis engine from keystrokeQueueChanged to the key being consumed by the engine thread, over
+ * the simulated imposters stream and a 617 feature profile. Each invocation hands a batch of key events to a headless
+ * engine and waits until the engine is done with all of them, so the score is key events per second through the
+ * whole pipeline, prediction scheduling included.
+ *
+ * The model is not initialized, so predictions return at once: model inference is not part of the score.
+ *
+ * mvn -P jmh compile exec:exec -Djmh.benchmarks=AnalysisEngineServiceBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalysisEngineServiceBenchmark {
+
+    private static final int BATCH = 256; // key events per invocation, well within the engine's ring
+
+    private List<KeyStrokePojo> keyStrokes;
+    private int next = 0;
+    private long published = 0;
+    // Written by the engine thread only.
+    private volatile long results = 0;
+
+    private HeadlessAnalysisEngine engine;
+
+    @Setup
+    public void createEngine() {
+        Logger.getRootLogger().setLevel(Level.WARN);
+        Logger.getLogger(LstmEnsembleModel.class).setLevel(Level.OFF);
+        keyStrokes = BenchmarkData.keyStrokes();
+
+        engine = new HeadlessAnalysisEngine(BenchmarkData.profile(), (AnalysisResultPojo analysisResult) -> results++);
+    }
+
+    @TearDown
+    public void stopEngine() {
+        engine.close();
+        if (results == 0) throw new IllegalStateException("The engine produced no analysis results");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long keystrokeQueueChanged() {
+        AnalysisEngineService service = engine.getEngine();
+        for (int i = 0; i < BATCH; i++) {
+            service.keystrokeQueueChanged(keyStrokes.get(next), false);
+            next = next + 1 == keyStrokes.size() ? 0 : next + 1;
+        }
+        published += BATCH;
+        long consumed;
+        while ((consumed = engine.getConsumed()) < published) Thread.yield();
+        return consumed;
+    }
+}
@@ -0,0 +1,82 @@
+package com.biokey.client.services.engine;
+
+import com.biokey.client.BenchmarkData;
+import com.biokey.client.models.pojo.KeyStrokePojo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocation of each stage of handling one key event on the engine thread, over the simulated imposters
+ * stream and a 617 feature profile. Each benchmark handles the next event of the stream through the FeaturePipeline the
+ * engine runs, and adds one stage to the previous benchmark:
+ *
+ * - holdTracking: key presses and releases in the key hold log, with no profile to score against;
+ * - sequenceScoring: plus, on release, the walk of the profile for completed sequences, their scores and adding them
+ *   to the feature engine;
+ * - featureWindows: plus updating the frames and pushing them into the model input windows.
+ *
+ * mvn -P jmh compile exec:exec -Djmh.benchmarks=KeyEventProcessingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeyEventProcessingBenchmark {
+
+    private static final int WINDOW_SIZE = 100; // frames in each model input window, as in the engine
+
+    private int[] keys;
+    private boolean[] keyDowns;
+    private long[] timeStamps;
+    private int next = 0;
+
+    private CompiledProfile profile;
+    private FeaturePipeline features;
+
+    @Setup
+    public void createEngine() {
+        List<KeyStrokePojo> keyStrokes = BenchmarkData.keyStrokes();
+        keys = new int[keyStrokes.size()];
+        keyDowns = new boolean[keyStrokes.size()];
+        timeStamps = new long[keyStrokes.size()];
+        for (int i = 0; i < keyStrokes.size(); i++) {
+            keys[i] = keyStrokes.get(i).getKey();
+            keyDowns[i] = keyStrokes.get(i).isKeyDown();
+            timeStamps[i] = keyStrokes.get(i).getTimeStamp();
+        }
+
+        profile = CompiledProfile.compile(BenchmarkData.profile());
+        features = new FeaturePipeline(WINDOW_SIZE);
+        features.reset(profile.getFeatureSize());
+    }
+
+    @Benchmark
+    public boolean holdTracking() {
+        int i = nextEvent();
+        return features.keyEvent(null, keys[i], keyDowns[i], timeStamps[i]);
+    }
+
+    @Benchmark
+    public boolean sequenceScoring() {
+        int i = nextEvent();
+        return features.keyEvent(profile, keys[i], keyDowns[i], timeStamps[i]);
+    }
+
+    @Benchmark
+    public boolean featureWindows() {
+        int i = nextEvent();
+        if (!features.keyEvent(profile, keys[i], keyDowns[i], timeStamps[i])) return false;
+        features.updateWindows();
+        return true;
+    }
+
+    private int nextEvent() {
+        int i = next;
+        next = i + 1 == keys.length ? 0 : i + 1;
+        return i;
+    }
+}
@@ -1,5 +1,7 @@
 package com.biokey.client.constants;
 
+import java.io.File;
+
 /**
  * General constants for the client.
  */
@@ -8,14 +10,41 @@ public class AppConstants {
     public static final String SERVER_TOKEN_HEADER = "authorization";
     public static final int KEYSTROKE_WINDOW_SIZE_PER_REQUEST = 100;
     public static final int KEYSTROKE_TIME_INTERVAL_PER_WINDOW = 300000; // 5 minutes of inactivity
-    public static final String CLIENT_STATE_PREFERENCES_ID = "client_state";
+    public static final int KEYSTROKE_KEYS_PER_UPLOAD = 5000; // key strokes from sealed windows packed into one request
+    public static final int KEYSTROKE_UPLOADS_IN_FLIGHT = 4; // requests sending key strokes at the same time
+    public static final String CLIENT_STATE_PREFERENCES_ID = "client_state"; // only read to migrate older installs
+    public static final String CLIENT_STATE_DIRECTORY = System.getProperty("user.home") + File.separator + ".biokey";
+    public static final int JOURNAL_COMMIT_INTERVAL = 200; // milliseconds a journal write waits to be grouped with others
+    public static final long JOURNAL_COMPACTION_SIZE = 4 * 1024 * 1024; // journal bytes before it is replaced by a snapshot
+    public static final long SAVE_MAX_DELAY = 1000; // milliseconds a save request waits to be coalesced with others
+    public static final boolean KEYSTROKE_ARCHIVE_ENABLED = false; // true keeps the recent key strokes in a memory-mapped file
+    public static final int KEYSTROKE_RETENTION_COUNT = 50000; // synced and analysed key strokes kept in memory at most
+    public static final long KEYSTROKE_RETENTION_AGE = 24 * 60 * 60 * 1000L; // milliseconds synced and analysed key strokes are kept
+    public static final String KEYSTROKE_ARCHIVE_FILE = CLIENT_STATE_DIRECTORY + File.separator + "keystrokes.archive";
+    public static final int KEYSTROKE_ARCHIVE_CAPACITY = 65536; // archived key strokes kept at most, well over WARM_UP_MAX_AGE of typing
+    public static final boolean CHECK_MODEL_ACCESS = Boolean.getBoolean("biokey.checkModelAccess"); // true makes the model check its locks are held
     public static final int KEYSTROKE_WINDOW_SIZE_PER_SAVE = 1000;
     public static final int ANALYSIS_RESULT_WINDOW_SIZE_PER_SAVE = 1000;
     public static final int TIME_BETWEEN_HEARTBEATS = 1000;
     public static final int TIME_BETWEEN_SERVER_SYNCS = 1000;
+    public static final int SERVER_REQUEST_THREADS = 8; // threads making requests to the server
+    public static final int SERVER_REQUEST_QUEUE_SIZE = 200; // requests waiting for a thread before new ones are dropped
+    public static final int SERVER_MAX_CONNECTIONS = 8;
+    public static final int SERVER_MAX_CONNECTIONS_PER_ROUTE = 8;
+    public static final int SERVER_CONNECT_TIMEOUT = 5000;
+    public static final int SERVER_READ_TIMEOUT = 15000;
+    public static final int SERVER_CONNECTION_REQUEST_TIMEOUT = 5000; // milliseconds a request waits for a pooled connection
+    public static final long SERVER_KEEP_ALIVE = 30000; // milliseconds an idle connection is kept if the server does not say
     public static final int MAX_CHALLENGE_ATTEMPTS = 3;
     public static final int SQS_LISTENER_PERIOD = 3000;
     public static final float DEFAULT_THRESHOLD = 0.1f;
+    public static final int CHALLENGE_LONG_WINDOW = 20; // latest results averaged, and needed before any challenge
+    public static final double CHALLENGE_AVERAGE_THRESHOLD = 0.30; // average of the long window below which the user is challenged
+    public static final int CHALLENGE_SHORT_WINDOW = 10; // latest results counted for low scores
+    public static final double CHALLENGE_LOW_SCORE = 0.2; // result at or below which it counts as low
+    public static final int CHALLENGE_LOW_SCORE_COUNT = 5; // low results in the short window that challenge the user
     public static final boolean SEND_KEYSTROKES_TO_SERVER = true;
     public static final boolean SEND_ANALYSIS_TO_SERVER = true;
+    public static final boolean COMPACT_UPLOADS = false; // true sends gzipped columns instead of JSON until the server refuses them
+    public static final String COMPACT_UPLOAD_CONTENT_TYPE = "application/vnd.biokey.columns+json";
 }
@@ -0,0 +1,12 @@
+package com.biokey.client.constants;
+
+/**
+ * Policy the analysis engine applies when key events arrive faster than it can analyze them.
+ * DROP_OLDEST runs the model for every key event that updates its inputs.
+ * COALESCE only runs the model once per batch of queued events, so the engine catches up after a burst of typing.
+ * Neither holds up the thread typing the keys: if the engine still falls so far behind that its queue is full, the
+ * oldest queued key events are discarded.
+ */
+public enum BackpressureConstants {
+    DROP_OLDEST, COALESCE
+}
@@ -2,9 +2,23 @@ package com.biokey.client.constants;
 
 public class EngineConstants {
     public static final int SEQ_THRESHOLD = 150;
+    public static final int SHORT_FRAME = 40; // keystrokes averaged in the x_40 frame
+    public static final int LONG_FRAME = 100; // keystrokes averaged in the x_100 frame
+    public static final int KEY_EVENT_RING_SIZE = 1024; // key events queued for the engine, must be a power of two
+    public static final int KEY_HOLD_LOG_SIZE = 1024; // key presses kept for sequences completed by a release, must be a power of two
+    public static final boolean FAST_SCORING = false; // true approximates the exponential of the Gaussian scores
+    public static final BackpressureConstants BACKPRESSURE_POLICY = BackpressureConstants.COALESCE;
+    public static final int PIPELINE_IDLE_WAIT = 100; // milliseconds the engine waits for key events before checking again
+    public static final int WARM_UP_KEYSTROKES = 4 * LONG_FRAME; // archived key strokes replayed when the engine first starts
+    public static final long WARM_UP_MAX_AGE = 300000; // milliseconds after which archived key strokes are too old to replay
 
     public static final int MODEL_SERVER_PORT = 4674;
     public static final String MODEL_SERVER_URL = "http://127.0.0.1:"+MODEL_SERVER_PORT;
     public static final String INIT_ENDPOINT = MODEL_SERVER_URL + "/init";
     public static final String PREDICTION_ENDPOINT = MODEL_SERVER_URL + "/prediction";
+
+    public static final boolean USE_NATIVE_INFERENCE = true; // false runs the model in a Python subprocess instead
+    public static final String MODEL_SCRIPT_PATH = "D:\\Documents\\GitHub\\biokey-client\\src\\main\\resources\\com\\biokey\\client\\services\\model.py";
+    public static final String MODEL_PAYLOAD_PATH = "D:\\Documents\\GitHub\\biokey-client\\src\\main\\resources\\com\\biokey\\client\\services\\ensemble-c-2.json";
+    public static final String RESET_FRAMES_PATH = "D:\\Documents\\GitHub\\biokey-client\\src\\main\\resources\\com\\biokey\\client\\services\\reset-frames.json";
 }
@@ -2,6 +2,7 @@ package com.biokey.client.controllers;
 
 import com.biokey.client.constants.AuthConstants;
 import com.biokey.client.constants.SyncStatusConstants;
+import com.biokey.client.helpers.KeyStrokeArchiveHelper;
 import com.biokey.client.helpers.PojoHelper;
 import com.biokey.client.helpers.RequestBuilderHelper;
 import com.biokey.client.helpers.ServerRequestExecutorHelper;
@@ -13,12 +14,20 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.NonNull;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.util.UriTemplate;
 
-import java.util.Deque;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.biokey.client.constants.AppConstants.*;
 import static com.biokey.client.constants.UrlConstants.*;
@@ -33,6 +42,12 @@ public class ClientStateController {
     private final ClientStateModel state;
     private final ServerRequestExecutorHelper serverRequestExecutorHelper;
     private final Timer timer = new Timer(true);
+    private volatile KeyStrokeArchiveHelper keyStrokeArchive;
+    // Key strokes and analysis results are not synced while the saved ones are still being loaded behind them.
+    private volatile boolean restoringBacklog = false;
+    private final AtomicInteger keyStrokeUploadsInFlight = new AtomicInteger();
+    // Key strokes and analysis results are sent in the compact form until the server refuses it.
+    private volatile boolean compactUploads = COMPACT_UPLOADS;
 
     @Autowired
     public ClientStateController(ClientStateModel state,
@@ -57,6 +72,13 @@ public class ClientStateController {
         }, TIME_BETWEEN_SERVER_SYNCS, TIME_BETWEEN_SERVER_SYNCS);
     }
 
+    /**
+     * Stop the scheduled syncs with the server and end their thread, for a controller that is no longer used.
+     */
+    public void cancelServerSyncs() {
+        timer.cancel();
+    }
+
     /**
      * Sends the server a message at fixed time intervals to let it know when the client is alive.
      *
@@ -64,83 +86,199 @@ public class ClientStateController {
      * @param handler the code to call when the server returns a response
      */
     public void sendHeartbeat(@NonNull String id, @NonNull ServerRequestExecutorHelper.ServerResponseHandler<String> handler) {
-        state.obtainAccessToStatus();
-        try {
-            // Check if there is a current status.
-            if (state.getCurrentStatus() == null) {
-                log.error("Confirm access token called but no model was found.");
-                handler.handleResponse(null);
-                return;
-            }
-
-            serverRequestExecutorHelper.submitPostRequest(
-                    new UriTemplate(SERVER_NAME + HEARTBEAT_POST_API_ENDPOINT).expand(id).toString(),
-                    RequestBuilderHelper.headerMapWithToken(state.getCurrentStatus().getAccessToken()),
-                    "",
-                    String.class,
-                    handler);
-        } finally {
-            state.releaseAccessToStatus();
+        // Check if there is a current status.
+        ClientStatusPojo currentStatus = state.peekCurrentStatus();
+        if (currentStatus == null) {
+            log.error("Confirm access token called but no model was found.");
+            handler.handleResponse(null);
+            return;
         }
+
+        serverRequestExecutorHelper.submitPostRequest(
+                new UriTemplate(SERVER_NAME + HEARTBEAT_POST_API_ENDPOINT).expand(id).toString(),
+                RequestBuilderHelper.headerMapWithToken(currentStatus.getAccessToken()),
+                "",
+                String.class,
+                handler);
     }
 
     /**
-     * Sends the server a request with the oldest client keystrokes not yet known to server.
-     * Modifies the sync status for all keystrokes sent.
+     * Sends the server the oldest client keystrokes not yet known to server. Several sealed windows are packed into one
+     * request, up to KEYSTROKE_KEYS_PER_UPLOAD keys, and up to KEYSTROKE_UPLOADS_IN_FLIGHT requests are sent at once.
+     * Windows leave the model in order, once they and every window before them are acknowledged. While a backlog
+     * remains, each acknowledged request sends the next one instead of waiting for the next sync. Once a request cannot
+     * be made, or has already failed, the rest wait for the next sync.
      *
-     * @return true if the oldest keys were unsynced and an attempt to sync them was made
+     * @return true if some keys were unsynced and an attempt to sync them was made
      */
     public boolean sendKeyStrokes() {
         // Check if we want to send keystrokes to server.
         if (!SEND_KEYSTROKES_TO_SERVER) throw new UnsupportedOperationException();
+        if (restoringBacklog) return false;
+        ClientStatusPojo currentStatus = state.peekCurrentStatus();
+        if (currentStatus == null) return false;
+
+        boolean sent = false;
+        int inFlight;
+        // A request that fails fast leaves its windows unsynced while this still runs, they are not sent again until
+        // the next sync.
+        Set<KeyStrokesPojo> taken = Collections.newSetFromMap(new IdentityHashMap<>());
+        while ((inFlight = keyStrokeUploadsInFlight.get()) < KEYSTROKE_UPLOADS_IN_FLIGHT) {
+            if (!keyStrokeUploadsInFlight.compareAndSet(inFlight, inFlight + 1)) continue;
+
+            List<KeyStrokesPojo> windowsToSend = takeKeyStrokesToSend(taken);
+            if (windowsToSend.isEmpty()) {
+                keyStrokeUploadsInFlight.decrementAndGet();
+                break;
+            }
+            // A request refused for lack of room has already been handled, trying again now would refuse it again.
+            if (!postKeyStrokes(windowsToSend, currentStatus)) break;
+            sent = true;
+        }
+        return sent;
+    }
 
-        // First, make sure to get the lock.
-        state.obtainAccessToModel();
+    /**
+     * Change the state of the oldest sealed windows to SYNCING, up to the budget of one request. Stops at a window
+     * already taken, whose request has failed.
+     *
+     * @param taken the windows taken so far, to which the windows to send are added
+     * @return the windows to send, oldest first
+     */
+    private List<KeyStrokesPojo> takeKeyStrokesToSend(Set<KeyStrokesPojo> taken) {
+        List<KeyStrokesPojo> windowsToSend = new ArrayList<>();
+        int keysToSend = 0;
+
+        state.obtainAccessToKeyStrokes();
         try {
-            // Change the state of keystrokes to SYNCING.
-            KeyStrokesPojo keysToSend = state.getOldestUnsyncedKeyStrokes();
-            ClientStatusPojo currentStatus = state.getCurrentStatus();
-            if (currentStatus == null || keysToSend == null || keysToSend == state.getNewestUnsyncedKeyStrokes() ||
-                    keysToSend.getKeyStrokes().size() == 0 ||
-                    !(keysToSend.getSyncedWithServer() == SyncStatusConstants.UNSYNCED)) return false;
-            keysToSend.setSyncedWithServer(SyncStatusConstants.SYNCING);
+            KeyStrokesPojo newestKeyStrokes = state.getNewestUnsyncedKeyStrokes();
+            for (KeyStrokesPojo window : state.getUnsyncedKeyStrokes()) {
+                if (window == newestKeyStrokes) break; // still being filled
+
+                int size = window.getKeyStrokes().size();
+                if (size == 0) {
+                    // Nothing to send, so it is acknowledged as is.
+                    window.compareAndSetSyncedWithServer(SyncStatusConstants.UNSYNCED, SyncStatusConstants.INSYNC);
+                    continue;
+                }
+                if (!windowsToSend.isEmpty() && keysToSend + size > KEYSTROKE_KEYS_PER_UPLOAD) break;
+                if (taken.contains(window)) {
+                    if (window.getSyncedWithServer() == SyncStatusConstants.UNSYNCED) break;
+                    continue;
+                }
+                if (!window.compareAndSetSyncedWithServer(SyncStatusConstants.UNSYNCED, SyncStatusConstants.SYNCING)) continue;
 
-            // Make the request.
-            serverRequestExecutorHelper.submitPostRequest(
-                    SERVER_NAME + KEYSTROKE_POST_API_ENDPOINT,
-                    RequestBuilderHelper.headerMapWithToken(currentStatus.getAccessToken()),
-                    RequestBuilderHelper.requestBodyToPostKeystrokes(keysToSend, currentStatus.getProfile().getId()),
-                    String.class,
-                    (ResponseEntity<String> response) -> {
-                        // First, make sure to get the lock.
-                        state.obtainAccessToModel();
+                windowsToSend.add(window);
+                taken.add(window);
+                keysToSend += size;
+            }
+            dequeueAcknowledgedKeyStrokes();
+        } finally {
+            state.releaseAccessToKeyStrokes();
+        }
+        return windowsToSend;
+    }
 
-                        try {
-                            // Check if the response was good.
-                            if (response == null || !response.getStatusCode().is2xxSuccessful()) {
-                                log.debug("KeyStrokes failed to sync with server and received response: " + response);
-                                keysToSend.setSyncedWithServer(SyncStatusConstants.UNSYNCED);
-                                return;
-                            }
-
-                            // If it was good then update the model.
-                            state.dequeueOneFromUnsyncedKeyStrokes();
-                            state.notifyKeyQueueChange(null, true);
-                            log.debug("KeyStrokes successfully synced with server and received response: " + response);
-                        } finally {
-                            state.releaseAccessToModel();
-                        }
-                    });
+    /**
+     * Make the request for windows taken by {@link #takeKeyStrokesToSend(Set)}. The windows are sealed, so they do not
+     * change while they are serialized.
+     *
+     * @return true if the request was made, false if it could not be and the windows are unsynced again
+     */
+    private boolean postKeyStrokes(List<KeyStrokesPojo> windowsToSend, ClientStatusPojo currentStatus) {
+        boolean compact = compactUploads;
+        ServerRequestExecutorHelper.ServerResponseHandler<String> handler = (ResponseEntity<String> response) -> {
+            keyStrokeUploadsInFlight.decrementAndGet();
+
+            // Check if the response was good.
+            if (response == null || !response.getStatusCode().is2xxSuccessful()) {
+                log.debug("KeyStrokes failed to sync with server and received response: " + response);
+                if (compact) checkCompactUploadRefused(response);
+                markKeyStrokes(windowsToSend, SyncStatusConstants.UNSYNCED);
+                return;
+            }
 
-            return true;
-        } catch (JsonProcessingException e) {
-            log.error("Exception when trying to serialize keystrokes to JSON", e);
+            // If it was good then update the model, as far as every window before these was acknowledged.
+            markKeyStrokes(windowsToSend, SyncStatusConstants.INSYNC);
+            boolean moreToSend;
+            state.obtainAccessToKeyStrokes();
+            try {
+                dequeueAcknowledgedKeyStrokes();
+                moreToSend = hasKeyStrokesToSend();
+            } finally {
+                state.releaseAccessToKeyStrokes();
+            }
+            log.debug("KeyStrokes successfully synced with server and received response: " + response);
+
+            if (moreToSend) sendKeyStrokes();
+        };
+
+        try {
+            if (compact) {
+                return serverRequestExecutorHelper.submitBinaryPostRequest(
+                        SERVER_NAME + KEYSTROKE_POST_API_ENDPOINT,
+                        RequestBuilderHelper.compactHeaderMapWithToken(currentStatus.getAccessToken()),
+                        RequestBuilderHelper.compactRequestBodyToPostKeystrokes(windowsToSend, currentStatus.getProfile().getId()),
+                        String.class,
+                        handler);
+            } else {
+                return serverRequestExecutorHelper.submitBinaryPostRequest(
+                        SERVER_NAME + KEYSTROKE_POST_API_ENDPOINT,
+                        RequestBuilderHelper.headerMapWithToken(currentStatus.getAccessToken()),
+                        RequestBuilderHelper.requestBytesToPostKeystrokes(windowsToSend, currentStatus.getProfile().getId()),
+                        String.class,
+                        handler);
+            }
+        } catch (IOException e) {
+            log.error("Exception when trying to serialize keystrokes", e);
+            keyStrokeUploadsInFlight.decrementAndGet();
+            markKeyStrokes(windowsToSend, SyncStatusConstants.UNSYNCED);
             return false;
-        } finally {
-            state.releaseAccessToModel();
         }
     }
 
+    /**
+     * Fall back to JSON uploads if the server refused a compact one as an unsupported media type.
+     */
+    private void checkCompactUploadRefused(ResponseEntity<String> response) {
+        if (compactUploads && response != null && response.getStatusCode() == HttpStatus.UNSUPPORTED_MEDIA_TYPE) {
+            compactUploads = false;
+            log.warn("Server does not accept compact uploads, sending JSON from now on.");
+        }
+    }
+
+    /**
+     * Move windows that were SYNCING to the outcome of their request.
+     */
+    private static void markKeyStrokes(List<KeyStrokesPojo> windows, SyncStatusConstants outcome) {
+        for (KeyStrokesPojo window : windows) window.compareAndSetSyncedWithServer(SyncStatusConstants.SYNCING, outcome);
+    }
+
+    /**
+     * Remove the acknowledged windows at the front of the model. Must be called while holding the key stroke lock.
+     */
+    private void dequeueAcknowledgedKeyStrokes() {
+        KeyStrokesPojo oldestKeyStrokes;
+        while ((oldestKeyStrokes = state.getOldestUnsyncedKeyStrokes()) != null &&
+                oldestKeyStrokes != state.getNewestUnsyncedKeyStrokes() &&
+                oldestKeyStrokes.getSyncedWithServer() == SyncStatusConstants.INSYNC) {
+            state.dequeueOneFromUnsyncedKeyStrokes();
+            state.notifyKeyQueueChange(null, true);
+        }
+    }
+
+    /**
+     * @return true if a sealed window is waiting to be sent. Must be called while holding the key stroke lock.
+     */
+    private boolean hasKeyStrokesToSend() {
+        KeyStrokesPojo newestKeyStrokes = state.getNewestUnsyncedKeyStrokes();
+        for (KeyStrokesPojo window : state.getUnsyncedKeyStrokes()) {
+            if (window == newestKeyStrokes) return false;
+            if (window.getSyncedWithServer() == SyncStatusConstants.UNSYNCED) return true;
+        }
+        return false;
+    }
+
     /**
      * Sends the server a request with the oldest status not yet known to server.
      * Modifies the sync status for status sent.
@@ -148,49 +286,51 @@ public class ClientStateController {
      * @return true if the status was unsynced and an attempt to sync them was made
      */
     public boolean sendClientStatus() {
-        // First, make sure to get the lock.
+        // Change the state of status to SYNCING, which keeps any other thread from sending it.
+        ClientStatusPojo oldStatus;
+        ClientStatusPojo currentStatus;
         state.obtainAccessToStatus();
         try {
-            // Change the state of status to SYNCING.
-            ClientStatusPojo oldStatus = state.getOldestStatus();
-            ClientStatusPojo currentStatus = state.getCurrentStatus();
+            oldStatus = state.getOldestStatus();
+            currentStatus = state.getCurrentStatus();
             if (currentStatus == null || oldStatus == null ||
-                    !(oldStatus.getSyncedWithServer() == SyncStatusConstants.UNSYNCED)) return false;
-            oldStatus.setSyncedWithServer(SyncStatusConstants.SYNCING);
+                    !oldStatus.compareAndSetSyncedWithServer(SyncStatusConstants.UNSYNCED, SyncStatusConstants.SYNCING)) return false;
+        } finally {
+            state.releaseAccessToStatus();
+        }
 
-            // Make the request.
+        // Make the request.
+        try {
             serverRequestExecutorHelper.submitPutRequest(
                     new UriTemplate(SERVER_NAME + CLIENT_STATUS_PUT_API_ENDPOINT).expand(oldStatus.getProfile().getId()).toString(),
                     RequestBuilderHelper.headerMapWithToken(currentStatus.getAccessToken()),
                     RequestBuilderHelper.requestBodyToPostClientStatus(oldStatus),
                     String.class,
                     (ResponseEntity<String> response) -> {
-                        // First, make sure to get the lock.
-                        state.obtainAccessToModel();
+                        // Check if the response was good.
+                        if (response == null || !response.getStatusCode().is2xxSuccessful()) {
+                            log.debug("Client status failed to sync with server and received response: " + response);
+                            oldStatus.compareAndSetSyncedWithServer(SyncStatusConstants.SYNCING, SyncStatusConstants.UNSYNCED);
+                            return;
+                        }
 
+                        // If it was good then update the model, unless the model was replaced in the meantime.
+                        state.obtainAccessToStatus();
                         try {
-                            // Check if the response was good.
-                            if (response == null || !response.getStatusCode().is2xxSuccessful()) {
-                                log.debug("Client status failed to sync with server and received response: " + response);
-                                oldStatus.setSyncedWithServer(SyncStatusConstants.UNSYNCED);
-                                return;
-                            }
-
-                            // If it was good then update the model.
+                            if (state.getOldestStatus() != oldStatus) return;
                             state.dequeueStatus();
                             state.notifyStatusChange(null, null, true);
                             log.debug("Client Status successfully synced with server and received response: " + response);
                         } finally {
-                            state.releaseAccessToModel();
+                            state.releaseAccessToStatus();
                         }
                     });
 
             return true;
         } catch (JsonProcessingException e) {
             log.error("Exception when trying to serialize client status to JSON", e);
+            oldStatus.compareAndSetSyncedWithServer(SyncStatusConstants.SYNCING, SyncStatusConstants.UNSYNCED);
             return false;
-        } finally {
-            state.releaseAccessToStatus();
         }
     }
 
@@ -204,51 +344,67 @@ public class ClientStateController {
         // Impossible to test because server has not implemented the API endpoint.
         // Check if we want to send results to server.
         if (!SEND_ANALYSIS_TO_SERVER) throw new UnsupportedOperationException();
+        if (restoringBacklog) return false;
+        ClientStatusPojo currentStatus = state.peekCurrentStatus();
+        if (currentStatus == null) return false;
 
-        // First, make sure to get the lock.
-        state.obtainAccessToModel();
+        // Change the state of results to SYNCING, which keeps any other thread from sending them.
+        AnalysisResultsPojo analysisResults;
+        state.obtainAccessToAnalysisResult();
         try {
-            // Change the state of results to SYNCING.
-            AnalysisResultsPojo analysisResults = state.getOldestAnalysisResults();
-            ClientStatusPojo currentStatus = state.getCurrentStatus();
-            if (currentStatus == null || analysisResults == null || analysisResults.getAnalysisResults().size() == 0 ||
-                    !(analysisResults.getSyncedWithServer() == SyncStatusConstants.UNSYNCED)) return false;
-            analysisResults.setSyncedWithServer(SyncStatusConstants.SYNCING);
+            analysisResults = state.getOldestAnalysisResults();
+            if (analysisResults == null || analysisResults.getAnalysisResults().size() == 0 ||
+                    !analysisResults.compareAndSetSyncedWithServer(SyncStatusConstants.UNSYNCED, SyncStatusConstants.SYNCING)) return false;
             state.divideAnalysisResults();
+        } finally {
+            state.releaseAccessToAnalysisResult();
+        }
 
-            // Make the request.
-            serverRequestExecutorHelper.submitPostRequest(
-                    SERVER_NAME + ANALYSIS_RESULT_POST_API_ENDPOINT,
-                    RequestBuilderHelper.headerMapWithToken(currentStatus.getAccessToken()),
-                    RequestBuilderHelper.requestBodyToPostAnalysisResults(analysisResults, currentStatus.getProfile().getId()),
-                    String.class,
-                    (ResponseEntity<String> response) -> {
-                        // First, make sure to get the lock.
-                        state.obtainAccessToModel();
+        // Make the request.
+        boolean compact = compactUploads;
+        ServerRequestExecutorHelper.ServerResponseHandler<String> handler = (ResponseEntity<String> response) -> {
+            // Check if the response was good.
+            if (response == null || !response.getStatusCode().is2xxSuccessful()) {
+                log.debug("Analysis result failed to sync with server and received response: " + response);
+                if (compact) checkCompactUploadRefused(response);
+                analysisResults.compareAndSetSyncedWithServer(SyncStatusConstants.SYNCING, SyncStatusConstants.UNSYNCED);
+                return;
+            }
 
-                        try {
-                            // Check if the response was good.
-                            if (response == null || !response.getStatusCode().is2xxSuccessful()) {
-                                log.debug("Analysis result failed to sync with server and received response: " + response);
-                                analysisResults.setSyncedWithServer(SyncStatusConstants.UNSYNCED);
-                                return;
-                            }
-
-                            // If it was good then update the model.
-                            state.dequeueAnalysisResults();
-                            state.notifyAnalysisResultQueueChange(null, true);
-                            log.debug("Analysis result successfully synced with server and received response: " + response);
-                        } finally {
-                            state.releaseAccessToModel();
-                        }
-                    });
+            // If it was good then update the model, unless the model was replaced in the meantime.
+            state.obtainAccessToAnalysisResult();
+            try {
+                if (state.getOldestAnalysisResults() != analysisResults) return;
+                state.dequeueAnalysisResults();
+                state.notifyAnalysisResultQueueChange(null, true);
+                log.debug("Analysis result successfully synced with server and received response: " + response);
+            } finally {
+                state.releaseAccessToAnalysisResult();
+            }
+        };
+
+        try {
+            if (compact) {
+                serverRequestExecutorHelper.submitBinaryPostRequest(
+                        SERVER_NAME + ANALYSIS_RESULT_POST_API_ENDPOINT,
+                        RequestBuilderHelper.compactHeaderMapWithToken(currentStatus.getAccessToken()),
+                        RequestBuilderHelper.compactRequestBodyToPostAnalysisResults(analysisResults, currentStatus.getProfile().getId()),
+                        String.class,
+                        handler);
+            } else {
+                serverRequestExecutorHelper.submitBinaryPostRequest(
+                        SERVER_NAME + ANALYSIS_RESULT_POST_API_ENDPOINT,
+                        RequestBuilderHelper.headerMapWithToken(currentStatus.getAccessToken()),
+                        RequestBuilderHelper.requestBytesToPostAnalysisResults(analysisResults, currentStatus.getProfile().getId()),
+                        String.class,
+                        handler);
+            }
 
             return true;
-        } catch (JsonProcessingException e) {
-            log.error("Exception when trying to serialize client status to JSON", e);
+        } catch (IOException e) {
+            log.error("Exception when trying to serialize analysis results", e);
+            analysisResults.compareAndSetSyncedWithServer(SyncStatusConstants.SYNCING, SyncStatusConstants.UNSYNCED);
             return false;
-        } finally {
-            state.releaseAccessToModel();
         }
     }
 
@@ -307,25 +463,20 @@ public class ClientStateController {
      * @param handler the code to call when the server returns a response
      */
     public void confirmAccessToken(@NonNull ServerRequestExecutorHelper.ServerResponseHandler<String> handler) {
-        // First, make sure to get the lock.
-        state.obtainAccessToStatus();
-        try {
-            // Check if there is a current status.
-            if (state.getCurrentStatus() == null) {
-                log.error("Confirm access token called but no model was found.");
-                handler.handleResponse(null);
-                return;
-            }
-
-            // Make the request
-            serverRequestExecutorHelper.submitGetRequest(
-                    SERVER_NAME + USERS_GET_API_ENDPOINT,
-                    RequestBuilderHelper.headerMapWithToken(state.getCurrentStatus().getAccessToken()),
-                    String.class,
-                    handler);
-        } finally {
-            state.releaseAccessToStatus();
+        // Check if there is a current status.
+        ClientStatusPojo currentStatus = state.peekCurrentStatus();
+        if (currentStatus == null) {
+            log.error("Confirm access token called but no model was found.");
+            handler.handleResponse(null);
+            return;
         }
+
+        // Make the request
+        serverRequestExecutorHelper.submitGetRequest(
+                SERVER_NAME + USERS_GET_API_ENDPOINT,
+                RequestBuilderHelper.headerMapWithToken(currentStatus.getAccessToken()),
+                String.class,
+                handler);
     }
 
     /**
@@ -334,25 +485,72 @@ public class ClientStateController {
      * @param keyStroke the key stroke to enqueue
      */
     public void enqueueKeyStroke(@NonNull KeyStrokePojo keyStroke) {
-        // First, make sure to get the lock.
-        state.obtainAccessToKeyStrokes();
+        // The model divides the windows and enqueues the key stroke without making the key logger wait for the lock.
+        state.offerKeyStroke(keyStroke);
+        archiveKeyStroke(keyStroke);
+        state.notifyKeyQueueChange(keyStroke, false);
+    }
+
+    /**
+     * Keep the most recent key strokes enqueued from now on in a memory-mapped archive, which outlives the queues in
+     * the model.
+     *
+     * @param file the file holding the archive
+     * @param capacity the number of key strokes the archive holds at most
+     * @param maxAge milliseconds after which an archived key stroke is erased
+     */
+    public void archiveKeyStrokes(@NonNull Path file, int capacity, long maxAge) {
         try {
-            // If the oldest window of keystrokes is too long (by keys or by time) then create a new window.
-            if (state.getNewestUnsyncedKeyStrokes() != null) {
-                Deque<KeyStrokePojo> newestKeyStrokes = state.getNewestUnsyncedKeyStrokes().getKeyStrokes();
-                if (newestKeyStrokes.size() >= KEYSTROKE_WINDOW_SIZE_PER_REQUEST ||
-                        keyStroke.getTimeStamp() - newestKeyStrokes.peekLast().getTimeStamp() > KEYSTROKE_TIME_INTERVAL_PER_WINDOW) {
-                    state.divideKeyStrokes();
-                }
-            }
+            keyStrokeArchive = new KeyStrokeArchiveHelper(file, capacity, maxAge);
+            log.debug("Archiving key strokes after the " + keyStrokeArchive.size() + " already in " + file);
+        } catch (IOException e) {
+            log.error("Could not open the key stroke archive, key strokes will not be archived.", e);
+        }
+    }
 
-            state.enqueueKeyStroke(keyStroke);
-            state.notifyKeyQueueChange(keyStroke, false);
-        } finally {
-            state.releaseAccessToKeyStrokes();
+    /**
+     * Stop archiving key strokes and close the archive, for when the client shuts down.
+     */
+    public void closeKeyStrokeArchive() {
+        KeyStrokeArchiveHelper archive = keyStrokeArchive;
+        if (archive == null) return;
+        keyStrokeArchive = null;
+        try {
+            archive.close();
+        } catch (IOException e) {
+            log.error("Could not close the key stroke archive.", e);
         }
     }
 
+    /**
+     * @return the number of key strokes ever archived, which is the number of the next one, 0 if key strokes are not
+     *         archived.
+     */
+    public long getArchivedKeyStrokeCount() {
+        KeyStrokeArchiveHelper archive = keyStrokeArchive;
+        return (archive == null) ? 0 : archive.size();
+    }
+
+    /**
+     * Read archived key strokes in the order they were enqueued.
+     *
+     * @param from index of the first key stroke to read
+     * @param handler called with each key stroke
+     * @return the index after the last key stroke read, where the next read should start
+     */
+    public long readArchivedKeyStrokes(long from, @NonNull KeyStrokeArchiveHelper.IKeyStrokeHandler handler) {
+        KeyStrokeArchiveHelper archive = keyStrokeArchive;
+        return (archive == null) ? from : archive.read(from, handler);
+    }
+
+    /**
+     * Add the key stroke to the archive, if key strokes are archived.
+     */
+    private void archiveKeyStroke(KeyStrokePojo keyStroke) {
+        KeyStrokeArchiveHelper archive = keyStrokeArchive;
+        if (archive != null) archive.append(keyStroke.getKey(), keyStroke.isKeyDown(), keyStroke.getTimeStamp());
+    }
+
     /**
      * Modify the model to include the new analysis result.
      *
@@ -411,6 +609,50 @@ public class ClientStateController {
         }
     }
 
+    /**
+     * Pass only the statuses read from memory to the model, so that the services can start before the key strokes and
+     * analysis results are read. Syncing them with the server waits for {@link #passBacklogToModel(ClientStateModel)}.
+     *
+     * @param fromMemory the client state model holding the statuses read from memory
+     */
+    public void passStatusToModel(@NonNull ClientStateModel fromMemory) {
+        restoringBacklog = true;
+        state.obtainAccessToStatus();
+        fromMemory.obtainAccessToStatus();
+        try {
+            state.loadStatusFromMemory(fromMemory);
+
+            // Make sure that the loaded state is unauthenticated.
+            ClientStatusPojo currentStatus = state.getCurrentStatus();
+            if (currentStatus != null && currentStatus.getAuthStatus() == AuthConstants.AUTHENTICATED) {
+                ClientStatusPojo unAuthenticatedStatus = PojoHelper.createStatus(currentStatus, AuthConstants.UNAUTHENTICATED);
+                state.enqueueStatus(unAuthenticatedStatus);
+            }
+
+            state.notifyModelChange();
+        } finally {
+            state.releaseAccessToStatus();
+            fromMemory.releaseAccessToStatus();
+        }
+    }
+
+    /**
+     * Pass the key strokes and analysis results read from memory to the model, in front of the ones enqueued since
+     * {@link #passStatusToModel(ClientStateModel)}, and resume syncing them with the server.
+     *
+     * @param fromMemory the client state model holding the key strokes and analysis results read from memory,
+     *                   or null if they could not be read
+     */
+    public void passBacklogToModel(ClientStateModel fromMemory) {
+        state.obtainAccessToModel();
+        try {
+            state.loadBacklogFromMemory((fromMemory == null) ? new ClientStateModel(null) : fromMemory);
+        } finally {
+            state.releaseAccessToModel();
+            restoringBacklog = false;
+        }
+    }
+
     /**
      * Checks if the client state model read from memory is valid.
      *
@@ -0,0 +1,748 @@
+package com.biokey.client.helpers;
+
+import com.biokey.client.models.ClientStateModel;
+import com.biokey.client.models.pojo.AnalysisResultPojo;
+import com.biokey.client.models.pojo.ClientStatusPojo;
+import com.biokey.client.models.pojo.KeyStrokePojo;
+import lombok.NonNull;
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static com.biokey.client.constants.AppConstants.JOURNAL_COMMIT_INTERVAL;
+import static com.biokey.client.constants.AppConstants.JOURNAL_COMPACTION_SIZE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Write-ahead journal that keeps the client state on disk.
+ *
+ * Every change to the model is appended to the journal as a checksummed record. A writer thread commits the records
+ * in groups: it waits up to JOURNAL_COMMIT_INTERVAL for more records, then writes them all and forces them to disk
+ * once. When the journal grows past JOURNAL_COMPACTION_SIZE, or the whole model is replaced, the model is written to
+ * a snapshot and a new journal is started, so a save costs the size of the changes rather than the size of the state.
+ * Both only hold the model's locks while they copy the model. On compaction the writer thread moves on to the new
+ * journal once it has written the records made before the copy to the old one, and the snapshot is written after. On
+ * replacement the writer thread drops the records made before the copy, and writes the snapshot before the new journal.
+ *
+ * Journals are numbered by generation, and each one continues the one before it. The snapshot records the generation
+ * of the journal that follows it and only replaces the previous snapshot once it is complete, so the saved state is
+ * always a snapshot followed by its chain of journals. A record torn by a crash fails its checksum and is dropped
+ * along with anything after it.
+ *
+ * The statuses are kept in their own section of the snapshot, ahead of the key strokes and analysis results, so that
+ * they can be read without deserializing the backlog.
+ *
+ * The files hold the access token and the key strokes, so only the owner may read them where the file system has POSIX
+ * permissions.
+ */
+public class ClientStateJournalHelper implements ClientStateModel.IClientStateJournal {
+
+    private static Logger log = Logger.getLogger(ClientStateJournalHelper.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x424b5353;
+    private static final int SNAPSHOT_HEADER_SIZE = 28; // magic, generation, then length and checksum of both sections
+    private static final String SNAPSHOT_FILE = "state.snapshot";
+    private static final String SNAPSHOT_TEMP_FILE = "state.snapshot.tmp";
+    private static final String JOURNAL_PREFIX = "state.journal.";
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private static final int RECORD_HEADER_SIZE = 8; // length and checksum of the body, which is the type and payload
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte STATUS_ENQUEUED = 1;
+    private static final byte STATUS_DEQUEUED = 2;
+    private static final byte ANALYSIS_RESULT_ENQUEUED = 3;
+    private static final byte ANALYSIS_RESULTS_DIVIDED = 4;
+    private static final byte ANALYSIS_RESULTS_DEQUEUED = 5;
+    private static final byte KEY_STROKE_ENQUEUED = 6;
+    private static final byte KEY_STROKES_DIVIDED = 7;
+    private static final byte UNSYNCED_KEY_STROKES_DEQUEUED = 8;
+    private static final byte ALL_KEY_STROKES_DEQUEUED = 9;
+
+    // Parts of the model, as sections of the snapshot and kinds of records.
+    private static final int STATUS_PART = 1;
+    private static final int BACKLOG_PART = 2;
+    private static final int ALL_PARTS = STATUS_PART | BACKLOG_PART;
+
+    private final Path directory;
+
+    // Held while the files are written. The generation and channel only change while it and the monitor are held.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile long generation = 0;
+    private FileChannel channel;
+    private volatile long journalSize = 0;
+    // Generation of the journal after the snapshot on disk, guarded by the directory.
+    private long snapshotGeneration = 0;
+    // Journal generation and size when the statuses were read, where reading the backlog stops, guarded by the directory.
+    // The generation is -1 when the statuses have not been read since the backlog was.
+    private long backlogEndGeneration = -1;
+    private long backlogEndSize = 0;
+
+    // Records waiting for the writer, guarded by the monitor.
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final CRC32 checksum = new CRC32();
+    private long appended = 0;
+    private long durable = 0;
+    private boolean syncRequested = false;
+    // Journal of the next generation the writer moves to, at this position of the pending records, guarded by the monitor.
+    private FileChannel nextChannel;
+    private int nextChannelPosition;
+    // Snapshot of a model that replaced the previous one, waiting for the writer, guarded by the monitor.
+    private byte[] replacementStatus;
+    private byte[] replacementBacklog;
+    private long replacementGeneration;
+    // Until the writer has written the last replacement, when no compaction may start.
+    private boolean replacementPending = false;
+
+    /**
+     * Open the journal in the directory, dropping any record torn by a crash. Changes made before the journal could be
+     * opened are not saved.
+     *
+     * @param directory the directory holding the snapshot and journal files, created if it does not exist
+     */
+    public ClientStateJournalHelper(@NonNull Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            snapshotGeneration = readSnapshotGeneration();
+            generation = snapshotGeneration;
+            while (Files.exists(journalPath(generation + 1))) generation++;
+            Path journal = journalPath(generation);
+            long validSize = Files.exists(journal) ? replay(ByteBuffer.wrap(Files.readAllBytes(journal)), null, ALL_PARTS) : 0;
+
+            // Saved by an older client, which left the permissions to the umask.
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "state.*")) {
+                for (Path file : files) restrictToOwner(file);
+            }
+            restrictToOwner(journal);
+            channel = FileChannel.open(journal, CREATE, WRITE);
+            channel.truncate(validSize);
+            channel.position(validSize);
+            journalSize = validSize;
+            deleteJournalsOutside(snapshotGeneration, generation);
+        } catch (IOException e) {
+            log.error("Could not open the client state journal, changes to the client state will not be saved", e);
+            channel = null;
+        }
+
+        Thread writer = new Thread(this::runWriter, "client-state-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Read the saved client state: the snapshot with every change in the journal since applied to it.
+     *
+     * @return the saved client state, or null if nothing has been saved
+     * @throws IOException if the files could not be read or the snapshot is corrupt
+     */
+    public ClientStateModel readState() throws IOException {
+        ClientStateModel model = readStatus();
+        ClientStateModel backlog = readBacklog();
+        if (backlog == null) return model;
+        if (model == null) model = new ClientStateModel(null);
+
+        model.obtainAccessToModel();
+        try {
+            model.loadBacklogFromMemory(backlog);
+        } finally {
+            model.releaseAccessToModel();
+        }
+        return model;
+    }
+
+    /**
+     * Read only the saved statuses, without the key strokes and analysis results. The journal is not compacted until
+     * the backlog is read, which stops at the changes made when the statuses were read, so that the changes made to the
+     * model since are not read back into it.
+     *
+     * @return a model holding the saved statuses, or null if nothing has been saved
+     * @throws IOException if the files could not be read or the snapshot is corrupt
+     */
+    public ClientStateModel readStatus() throws IOException {
+        return readPart(STATUS_PART);
+    }
+
+    /**
+     * Read only the saved key strokes and analysis results, without the statuses. If the statuses were read before,
+     * only the changes made until then are read, and nothing if the model has been replaced since.
+     *
+     * @return a model holding the saved key strokes and analysis results, or null if nothing has been saved
+     * @throws IOException if the files could not be read or the snapshot is corrupt
+     */
+    public ClientStateModel readBacklog() throws IOException {
+        return readPart(BACKLOG_PART);
+    }
+
+    /**
+     * Block until every change appended so far is on disk.
+     */
+    public void sync() {
+        synchronized (this) {
+            long target = appended;
+            if (durable >= target) return;
+            syncRequested = true;
+            notifyAll();
+            try {
+                while (durable < target) wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Replace the journal with a snapshot of the model if the journal has grown past JOURNAL_COMPACTION_SIZE.
+     * The model is only locked while it is copied and the writer is told to start a new journal after the records
+     * made so far, nothing is written to disk while it is locked.
+     *
+     * @param state the model the journal belongs to
+     * @return true if the journal was compacted
+     */
+    public boolean compactIfNeeded(@NonNull ClientStateModel state) {
+        if (journalSize < JOURNAL_COMPACTION_SIZE) return false;
+
+        long nextGeneration;
+        synchronized (this) {
+            // The writer has not moved on from the last compaction yet, or has a replacement to write.
+            if (nextChannel != null || replacementPending) return false;
+            nextGeneration = generation + 1;
+        }
+        synchronized (directory) {
+            // The snapshot would hold the changes made since the statuses were read, and the backlog read would miss them.
+            if (isBacklogUnread()) return false;
+        }
+        FileChannel next;
+        try {
+            // Not truncated: if the model is replaced in the meantime, this is the journal that follows its snapshot.
+            restrictToOwner(journalPath(nextGeneration));
+            next = FileChannel.open(journalPath(nextGeneration), CREATE, WRITE);
+        } catch (IOException e) {
+            log.error("Could not start a new client state journal", e);
+            return false;
+        }
+
+        byte[] status;
+        byte[] backlog;
+        boolean started = false;
+        state.obtainAccessToModel();
+        try {
+            status = SerializationUtils.serialize(state.copyStatus());
+            backlog = SerializationUtils.serialize(state.copyBacklog());
+            synchronized (this) {
+                // Give up if the model was replaced, or the last compaction is not done, since the journal was opened.
+                if (generation + 1 == nextGeneration && nextChannel == null && !replacementPending) {
+                    nextChannel = next;
+                    nextChannelPosition = pending.position();
+                    journalSize = 0;
+                    started = true;
+                    notifyAll();
+                }
+            }
+        } finally {
+            state.releaseAccessToModel();
+        }
+        if (!started) {
+            closeQuietly(next);
+            return false;
+        }
+
+        try {
+            writeSnapshot(nextGeneration, status, backlog);
+            return true;
+        } catch (IOException e) {
+            log.error("Could not write a snapshot of the client state", e);
+            return false;
+        }
+    }
+
+    /**
+     * Read a part of the saved model: its section of the snapshot, with the records of that part applied to it.
+     */
+    private ClientStateModel readPart(int part) throws IOException {
+        sync();
+        writeLock.lock();
+        try {
+            synchronized (directory) {
+                long endGeneration = generation;
+                long endSize = Files.exists(journalPath(generation)) ? Files.size(journalPath(generation)) : 0;
+                if (part == STATUS_PART) {
+                    backlogEndGeneration = endGeneration;
+                    backlogEndSize = endSize;
+                } else if (backlogEndGeneration >= 0) {
+                    endGeneration = backlogEndGeneration;
+                    endSize = backlogEndSize;
+                    backlogEndGeneration = -1;
+                    // The model was replaced after the statuses were read, its snapshot is not the saved backlog.
+                    if (snapshotGeneration > endGeneration) return null;
+                }
+
+                ClientStateModel model = null;
+                Path snapshot = directory.resolve(SNAPSHOT_FILE);
+                if (Files.exists(snapshot)) model = readSnapshot(snapshot, part);
+
+                for (long journalGeneration = snapshotGeneration; journalGeneration <= endGeneration; journalGeneration++) {
+                    Path journal = journalPath(journalGeneration);
+                    if (!Files.exists(journal) || Files.size(journal) == 0) continue;
+                    byte[] contents = Files.readAllBytes(journal);
+                    int length = (journalGeneration == endGeneration) ? (int) Math.min(endSize, contents.length) : contents.length;
+                    if (model == null) model = new ClientStateModel(null);
+                    model.obtainAccessToModel();
+                    try {
+                        replay(ByteBuffer.wrap(contents, 0, length), model, part);
+                    } finally {
+                        model.releaseAccessToModel();
+                    }
+                }
+                return model;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the statuses have been read but not the backlog, and the model has not been replaced since.
+     * Must be called while holding the directory.
+     */
+    private boolean isBacklogUnread() {
+        return backlogEndGeneration >= 0 && snapshotGeneration <= backlogEndGeneration;
+    }
+
+    /**
+     * @return the size of the journal on disk in bytes.
+     */
+    public long getJournalSize() {
+        return journalSize;
+    }
+
+    public void statusEnqueued(ClientStatusPojo status) {
+        byte[] payload = SerializationUtils.serialize(status);
+        synchronized (this) {
+            int start = beginRecord(STATUS_ENQUEUED, payload.length);
+            pending.put(payload);
+            endRecord(start);
+        }
+    }
+
+    public void statusDequeued() {
+        appendEmpty(STATUS_DEQUEUED);
+    }
+
+    public void analysisResultEnqueued(AnalysisResultPojo result) {
+        synchronized (this) {
+            int start = beginRecord(ANALYSIS_RESULT_ENQUEUED, Long.BYTES + Float.BYTES);
+            pending.putLong(result.getTimeStamp()).putFloat(result.getProbability());
+            endRecord(start);
+        }
+    }
+
+    public void analysisResultsDivided() {
+        appendEmpty(ANALYSIS_RESULTS_DIVIDED);
+    }
+
+    public void analysisResultsDequeued() {
+        appendEmpty(ANALYSIS_RESULTS_DEQUEUED);
+    }
+
+    public void keyStrokeEnqueued(KeyStrokePojo keyStroke) {
+        synchronized (this) {
+            int start = beginRecord(KEY_STROKE_ENQUEUED, Integer.BYTES + 1 + Long.BYTES);
+            pending.putInt(keyStroke.getKey()).put((byte) (keyStroke.isKeyDown() ? 1 : 0)).putLong(keyStroke.getTimeStamp());
+            endRecord(start);
+        }
+    }
+
+    public void keyStrokesDivided() {
+        appendEmpty(KEY_STROKES_DIVIDED);
+    }
+
+    public void unsyncedKeyStrokesDequeued() {
+        appendEmpty(UNSYNCED_KEY_STROKES_DEQUEUED);
+    }
+
+    public void allKeyStrokesDequeued() {
+        appendEmpty(ALL_KEY_STROKES_DEQUEUED);
+    }
+
+    /**
+     * Hand a snapshot of the model to the writer, which writes it and starts a new journal after it. The caller must
+     * hold the locks of the entire model, which are only held while the model is copied. The records not yet written
+     * are dropped, the snapshot holds their changes, and the records that follow go to the new journal.
+     */
+    public void modelReplaced(ClientStateModel model) {
+        byte[] status = SerializationUtils.serialize(model.copyStatus());
+        byte[] backlog = SerializationUtils.serialize(model.copyBacklog());
+        FileChannel droppedChannel;
+        synchronized (this) {
+            pending.clear();
+            // A compaction the writer has not moved on to yet is dropped, but it may still write its snapshot, which
+            // has the next generation, so the replacement takes the one after.
+            replacementGeneration = generation + ((nextChannel == null) ? 1 : 2);
+            replacementStatus = status;
+            replacementBacklog = backlog;
+            replacementPending = true;
+            droppedChannel = nextChannel;
+            nextChannel = null;
+            // Counted as a change, so that a sync waits for the snapshot.
+            appended++;
+            notifyAll();
+        }
+        if (droppedChannel != null) closeQuietly(droppedChannel);
+    }
+
+    /**
+     * Write a snapshot that replaces the model and switch the appends to a new journal after it. Must be called by the
+     * writer while holding the write lock. The model does not continue the old journals, so the snapshot must be on disk
+     * before the new journal is used.
+     */
+    private void replaceJournal(long nextGeneration, byte[] status, byte[] backlog) throws IOException {
+        Files.deleteIfExists(journalPath(nextGeneration));
+        writeSnapshot(nextGeneration, status, backlog);
+        restrictToOwner(journalPath(nextGeneration));
+        FileChannel newChannel = FileChannel.open(journalPath(nextGeneration), CREATE, WRITE, TRUNCATE_EXISTING);
+        FileChannel previousChannel = channel;
+        synchronized (this) {
+            generation = nextGeneration;
+            channel = newChannel;
+            journalSize = 0;
+        }
+        if (previousChannel != null) previousChannel.close();
+    }
+
+    /**
+     * Commit the pending records in groups until the program exits.
+     */
+    private void runWriter() {
+        while (true) {
+            long target;
+            long batchGeneration;
+            FileChannel batchNextChannel;
+            int batchNextChannelPosition;
+            byte[] batchReplacementStatus;
+            byte[] batchReplacementBacklog;
+            long batchReplacementGeneration;
+            try {
+                synchronized (this) {
+                    while (pending.position() == 0 && nextChannel == null && replacementStatus == null) wait();
+
+                    // Give other changes a chance to join the group, unless someone is waiting for the commit.
+                    long deadline = System.currentTimeMillis() + JOURNAL_COMMIT_INTERVAL;
+                    long remaining;
+                    while (!syncRequested && (remaining = deadline - System.currentTimeMillis()) > 0) wait(remaining);
+
+                    ByteBuffer batch = pending;
+                    pending = writing;
+                    writing = batch;
+                    target = appended;
+                    batchGeneration = generation;
+                    batchNextChannel = nextChannel;
+                    batchNextChannelPosition = nextChannelPosition;
+                    nextChannel = null;
+                    batchReplacementStatus = replacementStatus;
+                    batchReplacementBacklog = replacementBacklog;
+                    batchReplacementGeneration = replacementGeneration;
+                    replacementStatus = null;
+                    replacementBacklog = null;
+                    syncRequested = false;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            writing.flip();
+            writeLock.lock();
+            try {
+                // The batch holds only the records that follow the replacement.
+                if (batchReplacementStatus != null) {
+                    replaceJournal(batchReplacementGeneration, batchReplacementStatus, batchReplacementBacklog);
+                    batchGeneration = generation;
+                }
+                if (batchGeneration == generation && channel != null) {
+                    if (batchNextChannel != null) {
+                        // The old journal must hold every change made before the snapshot until the snapshot is written.
+                        ByteBuffer previous = writing.duplicate();
+                        previous.limit(batchNextChannelPosition);
+                        while (previous.hasRemaining()) channel.write(previous);
+                        channel.force(false);
+                        channel.close();
+                        writing.position(batchNextChannelPosition);
+                        synchronized (this) {
+                            generation = batchGeneration + 1;
+                            channel = batchNextChannel;
+                        }
+                        batchNextChannel = null;
+                    }
+                    while (writing.hasRemaining()) channel.write(writing);
+                    channel.force(false);
+                    journalSize = channel.position();
+                }
+            } catch (IOException e) {
+                log.error("Could not write to the client state journal", e);
+            } finally {
+                writeLock.unlock();
+                writing.clear();
+                if (batchNextChannel != null) closeQuietly(batchNextChannel);
+            }
+
+            synchronized (this) {
+                durable = Math.max(durable, target);
+                if (replacementStatus == null) replacementPending = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Start a record in the pending buffer. Must be called while holding the monitor, followed by the payload and
+     * endRecord.
+     *
+     * @return the position of the record in the pending buffer
+     */
+    private int beginRecord(byte type, int payloadSize) {
+        int recordSize = RECORD_HEADER_SIZE + 1 + payloadSize;
+        if (pending.remaining() < recordSize) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + recordSize));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        int start = pending.position();
+        pending.position(start + RECORD_HEADER_SIZE);
+        pending.put(type);
+        return start;
+    }
+
+    /**
+     * Fill in the header of the record started at the position and hand it to the writer.
+     */
+    private void endRecord(int start) {
+        int bodySize = pending.position() - start - RECORD_HEADER_SIZE;
+        checksum.reset();
+        checksum.update(pending.array(), start + RECORD_HEADER_SIZE, bodySize);
+        pending.putInt(start, bodySize);
+        pending.putInt(start + Integer.BYTES, (int) checksum.getValue());
+        appended++;
+        notifyAll();
+    }
+
+    private synchronized void appendEmpty(byte type) {
+        endRecord(beginRecord(type, 0));
+    }
+
+    /**
+     * Apply the valid records of a journal to a model.
+     *
+     * @param journal contents of the journal
+     * @param model the model to apply the records to, whose locks must be held, or null to only validate the records
+     * @param parts the parts of the model whose records are applied
+     * @return the size of the valid records at the start of the journal
+     */
+    private static long replay(ByteBuffer journal, ClientStateModel model, int parts) {
+        CRC32 recordChecksum = new CRC32();
+        while (journal.remaining() >= RECORD_HEADER_SIZE) {
+            int start = journal.position();
+            int bodySize = journal.getInt();
+            int expectedChecksum = journal.getInt();
+            if (bodySize < 1 || bodySize > journal.remaining()) {
+                journal.position(start);
+                break;
+            }
+            recordChecksum.reset();
+            recordChecksum.update(journal.array(), journal.position(), bodySize);
+            if ((int) recordChecksum.getValue() != expectedChecksum) {
+                log.warn("Dropping the client state journal after a corrupt record at " + start);
+                journal.position(start);
+                break;
+            }
+
+            int end = journal.position() + bodySize;
+            if (model != null) {
+                byte type = journal.get();
+                if ((partOf(type) & parts) != 0) apply(type, journal, end, model);
+            }
+            journal.position(end);
+        }
+        if (journal.hasRemaining()) log.warn("Dropped " + journal.remaining() + " bytes at the end of the client state journal");
+        return journal.position();
+    }
+
+    private static int partOf(byte type) {
+        return (type == STATUS_ENQUEUED || type == STATUS_DEQUEUED) ? STATUS_PART : BACKLOG_PART;
+    }
+
+    private static void apply(byte type, ByteBuffer payload, int end, ClientStateModel model) {
+        switch (type) {
+            case STATUS_ENQUEUED:
+                byte[] status = new byte[end - payload.position()];
+                payload.get(status);
+                model.enqueueStatus((ClientStatusPojo) SerializationUtils.deserialize(status));
+                break;
+            case STATUS_DEQUEUED:
+                model.dequeueStatus();
+                break;
+            case ANALYSIS_RESULT_ENQUEUED:
+                model.enqueueAnalysisResult(new AnalysisResultPojo(payload.getLong(), payload.getFloat()));
+                break;
+            case ANALYSIS_RESULTS_DIVIDED:
+                model.divideAnalysisResults();
+                break;
+            case ANALYSIS_RESULTS_DEQUEUED:
+                model.dequeueAnalysisResults();
+                break;
+            case KEY_STROKE_ENQUEUED:
+                model.enqueueKeyStroke(new KeyStrokePojo(payload.getInt(), payload.get() != 0, payload.getLong()));
+                break;
+            case KEY_STROKES_DIVIDED:
+                model.divideKeyStrokes();
+                break;
+            case UNSYNCED_KEY_STROKES_DEQUEUED:
+                model.dequeueOneFromUnsyncedKeyStrokes();
+                break;
+            case ALL_KEY_STROKES_DEQUEUED:
+                model.dequeueOneFromAllKeyStrokes();
+                break;
+            default:
+                log.warn("Skipping client state journal record of unknown type " + type);
+        }
+    }
+
+    /**
+     * Write a snapshot and delete the journals it replaces, unless a newer snapshot has been written in the meantime.
+     */
+    private void writeSnapshot(long nextGeneration, byte[] status, byte[] backlog) throws IOException {
+        CRC32 sectionChecksum = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+        header.putInt(SNAPSHOT_MAGIC).putLong(nextGeneration);
+        sectionChecksum.update(status);
+        header.putInt(status.length).putInt((int) sectionChecksum.getValue());
+        sectionChecksum.reset();
+        sectionChecksum.update(backlog);
+        header.putInt(backlog.length).putInt((int) sectionChecksum.getValue());
+        header.flip();
+        ByteBuffer[] contents = {header, ByteBuffer.wrap(status), ByteBuffer.wrap(backlog)};
+
+        synchronized (directory) {
+            if (nextGeneration <= snapshotGeneration) return;
+
+            // Only replace the previous snapshot once the new one is completely on disk.
+            Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+            restrictToOwner(temp);
+            try (FileChannel out = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                while (contents[2].hasRemaining()) out.write(contents);
+                out.force(true);
+            }
+            Files.move(temp, directory.resolve(SNAPSHOT_FILE), ATOMIC_MOVE, REPLACE_EXISTING);
+            snapshotGeneration = nextGeneration;
+            deleteJournalsOutside(snapshotGeneration, Long.MAX_VALUE);
+        }
+        log.debug("Wrote a snapshot of the client state of " + status.length + " bytes of statuses and "
+                + backlog.length + " bytes of key strokes and analysis results");
+    }
+
+    /**
+     * Read one section of the snapshot, without reading the other.
+     */
+    private static ClientStateModel readSnapshot(Path snapshot, int part) throws IOException {
+        try (FileChannel in = FileChannel.open(snapshot, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+            while (header.hasRemaining() && in.read(header) >= 0);
+            header.flip();
+            if (header.remaining() < SNAPSHOT_HEADER_SIZE || header.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Client state snapshot has no valid header");
+            }
+            header.getLong();
+            int statusLength = header.getInt();
+            int statusChecksum = header.getInt();
+            int backlogLength = header.getInt();
+            int backlogChecksum = header.getInt();
+            if (in.size() != (long) SNAPSHOT_HEADER_SIZE + statusLength + backlogLength) {
+                throw new IOException("Client state snapshot is truncated");
+            }
+
+            int length = (part == STATUS_PART) ? statusLength : backlogLength;
+            int expectedChecksum = (part == STATUS_PART) ? statusChecksum : backlogChecksum;
+            ByteBuffer section = ByteBuffer.allocate(length);
+            in.position((part == STATUS_PART) ? SNAPSHOT_HEADER_SIZE : SNAPSHOT_HEADER_SIZE + statusLength);
+            while (section.hasRemaining() && in.read(section) >= 0);
+
+            CRC32 sectionChecksum = new CRC32();
+            sectionChecksum.update(section.array());
+            if ((int) sectionChecksum.getValue() != expectedChecksum) throw new IOException("Client state snapshot is corrupt");
+            return (ClientStateModel) SerializationUtils.deserialize(section.array());
+        }
+    }
+
+    /**
+     * @return the generation of the journal that follows the snapshot, 0 if there is no snapshot.
+     */
+    private long readSnapshotGeneration() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) return 0;
+        try (FileChannel in = FileChannel.open(snapshot, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+            while (header.hasRemaining() && in.read(header) >= 0);
+            header.flip();
+            if (header.remaining() < SNAPSHOT_HEADER_SIZE || header.getInt() != SNAPSHOT_MAGIC) {
+                log.error("Client state snapshot has no valid header");
+                return 0;
+            }
+            return header.getLong();
+        }
+    }
+
+    private static void closeQuietly(FileChannel toClose) {
+        try {
+            toClose.close();
+        } catch (IOException e) {
+            log.warn("Could not close a client state journal", e);
+        }
+    }
+
+    /**
+     * Create the file readable and writable by the owner only, or take everyone else's access away if it exists.
+     */
+    private static void restrictToOwner(Path file) throws IOException {
+        try {
+            if (Files.exists(file)) Files.setPosixFilePermissions(file, OWNER_ONLY);
+            else Files.createFile(file, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } catch (UnsupportedOperationException e) {
+            log.debug("Client state file permissions are left to the file system");
+        }
+    }
+
+    private Path journalPath(long journalGeneration) {
+        return directory.resolve(JOURNAL_PREFIX + journalGeneration);
+    }
+
+    /**
+     * Delete the journals outside of the generations from first to last, which are no longer part of the saved state.
+     */
+    private void deleteJournalsOutside(long first, long last) throws IOException {
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, JOURNAL_PREFIX + "*")) {
+            for (Path journal : journals) {
+                long journalGeneration;
+                try {
+                    journalGeneration = Long.parseLong(journal.getFileName().toString().substring(JOURNAL_PREFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (journalGeneration < first || journalGeneration > last) Files.deleteIfExists(journal);
+            }
+        }
+    }
+}
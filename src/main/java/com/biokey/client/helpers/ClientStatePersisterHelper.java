@@ -0,0 +1,171 @@
+package com.biokey.client.helpers;
+
+import com.biokey.client.models.ClientStateModel;
+import lombok.NonNull;
+import org.apache.log4j.Logger;
+
+/**
+ * Saves the client state on a background thread, so that the listeners asking for a save are not held up by the disk.
+ *
+ * Requests are coalesced: the first request of a burst starts a timer of maxDelay milliseconds, and every request made
+ * before it runs out is served by the same save. A save first drops the key strokes past the retention limits, then waits
+ * for the journal to reach the disk and compacts it when it has grown large, which only locks the model while it is
+ * copied.
+ */
+public class ClientStatePersisterHelper {
+
+    private static Logger log = Logger.getLogger(ClientStatePersisterHelper.class);
+
+    private final ClientStateJournalHelper journal;
+    private final ClientStateModel state;
+    private final KeyStrokeRetentionHelper retention;
+    private final long maxDelay;
+
+    // Requests waiting for a save, guarded by the monitor.
+    private int pendingRequests = 0;
+    private long firstRequestTime = 0;
+
+    // Held while saving, so that a save on the shutdown thread does not overlap one on the persister thread.
+    private final Object saveLock = new Object();
+
+    // Written by the saving thread only.
+    private volatile long saveCount = 0;
+    private volatile long coalescedRequestCount = 0;
+    private volatile long lastSaveLatency = 0;
+    private volatile long maxSaveLatency = 0;
+
+    /**
+     * @param journal the journal holding the changes to the state
+     * @param state the model to save
+     * @param maxDelay milliseconds a request may wait for other requests to join it
+     */
+    public ClientStatePersisterHelper(@NonNull ClientStateJournalHelper journal, @NonNull ClientStateModel state,
+                                      long maxDelay) {
+        this(journal, state, null, maxDelay);
+    }
+
+    /**
+     * @param journal the journal holding the changes to the state
+     * @param state the model to save
+     * @param retention trims the key strokes before each save, or null to keep them all
+     * @param maxDelay milliseconds a request may wait for other requests to join it
+     */
+    public ClientStatePersisterHelper(@NonNull ClientStateJournalHelper journal, @NonNull ClientStateModel state,
+                                      KeyStrokeRetentionHelper retention, long maxDelay) {
+        this.journal = journal;
+        this.state = state;
+        this.retention = retention;
+        this.maxDelay = maxDelay;
+
+        Thread persister = new Thread(this::runPersister, "client-state-persister");
+        persister.setDaemon(true);
+        persister.start();
+    }
+
+    /**
+     * Ask for the state to be saved within maxDelay milliseconds. Returns immediately.
+     */
+    public synchronized void requestSave() {
+        if (pendingRequests++ == 0) {
+            firstRequestTime = System.currentTimeMillis();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Save the state on the calling thread, along with any request still waiting.
+     */
+    public void saveNow() {
+        long requestTime;
+        int requests;
+        synchronized (this) {
+            requestTime = (pendingRequests == 0) ? System.currentTimeMillis() : firstRequestTime;
+            requests = Math.max(pendingRequests, 1);
+            pendingRequests = 0;
+        }
+        save(requestTime, requests);
+    }
+
+    /**
+     * @return the number of requests waiting for a save.
+     */
+    public synchronized int getQueueDepth() {
+        return pendingRequests;
+    }
+
+    /**
+     * @return the number of saves made.
+     */
+    public long getSaveCount() {
+        return saveCount;
+    }
+
+    /**
+     * @return the number of requests served by the saves made, at least the number of saves.
+     */
+    public long getCoalescedRequestCount() {
+        return coalescedRequestCount;
+    }
+
+    /**
+     * @return milliseconds from the first request to the end of the last save.
+     */
+    public long getLastSaveLatency() {
+        return lastSaveLatency;
+    }
+
+    /**
+     * @return the longest latency of any save so far.
+     */
+    public long getMaxSaveLatency() {
+        return maxSaveLatency;
+    }
+
+    /**
+     * Wait for requests and save once per burst until the program exits.
+     */
+    private void runPersister() {
+        while (true) {
+            long requestTime;
+            int requests;
+            try {
+                synchronized (this) {
+                    while (pendingRequests == 0) wait();
+
+                    // Let the rest of the burst join this save.
+                    long remaining;
+                    while (pendingRequests > 0 && (remaining = firstRequestTime + maxDelay - System.currentTimeMillis()) > 0) {
+                        wait(remaining);
+                    }
+                    if (pendingRequests == 0) continue; // served by saveNow in the meantime
+
+                    requestTime = firstRequestTime;
+                    requests = pendingRequests;
+                    pendingRequests = 0;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            save(requestTime, requests);
+        }
+    }
+
+    private void save(long requestTime, int requests) {
+        synchronized (saveLock) {
+            try {
+                if (retention != null) retention.trim();
+                journal.sync();
+                journal.compactIfNeeded(state);
+
+                long latency = System.currentTimeMillis() - requestTime;
+                lastSaveLatency = latency;
+                maxSaveLatency = Math.max(maxSaveLatency, latency);
+                coalescedRequestCount += requests;
+                saveCount++;
+                log.debug("Saved client state to file for " + requests + " requests in " + latency + " ms.");
+            } catch (Exception e) {
+                log.debug("Could not save client state to file.", e);
+            }
+        }
+    }
+}
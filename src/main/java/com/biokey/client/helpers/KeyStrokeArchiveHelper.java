@@ -0,0 +1,203 @@
+package com.biokey.client.helpers;
+
+import lombok.NonNull;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Archive of the most recent key strokes in a memory-mapped file, kept off the heap and readable after a restart
+ * without deserializing anything.
+ *
+ * Each key stroke is a fixed record of RECORD_SIZE bytes: the time stamp, the key and a flag for key down. The records
+ * form a ring of a fixed number of records, so the file never grows: once it is full, each key stroke takes the place
+ * of the oldest one. Key strokes older than the maximum age are erased as new ones arrive and when the archive is
+ * opened, so typing is not kept on disk for longer than it is needed. Key strokes are numbered in the order they were
+ * added, the numbers carrying on as old key strokes are dropped.
+ *
+ * The file starts with a header holding the number of the first and the next key stroke. The next is updated after
+ * each record is written and the first before a record is overwritten, so a crash never exposes a half written record.
+ * The mapped pages are written out by the operating system, so only a power failure before flush loses key strokes.
+ * The file is only readable by its owner where the file system allows it.
+ *
+ * Appends are serialized by the archive, reads may happen on any thread while appends are in progress. A key stroke
+ * overwritten while read is reading it is skipped.
+ */
+public class KeyStrokeArchiveHelper {
+
+    private static Logger log = Logger.getLogger(KeyStrokeArchiveHelper.class);
+
+    public interface IKeyStrokeHandler {
+        void handleKeyStroke(int key, boolean keyDown, long timeStamp);
+    }
+
+    public static final int RECORD_SIZE = 16;
+
+    private static final int ARCHIVE_MAGIC = 0x424b4b52;
+    private static final int HEADER_SIZE = 2 * RECORD_SIZE; // magic, record size, capacity, next and first key stroke
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int NEXT_OFFSET = 16;
+    private static final int FIRST_OFFSET = 24;
+    private static final int KEY_DOWN = 1;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long maxAge;
+    private volatile long first;
+    private volatile long count;
+    private boolean closed = false;
+
+    /**
+     * Open the archive in the file, creating it if it does not exist. An archive that cannot be read, or holds a
+     * different number of records, is started over.
+     *
+     * @param file the file holding the archive
+     * @param capacity the number of key strokes the archive holds at most
+     * @param maxAge milliseconds after which a key stroke is erased
+     * @throws IOException if the file could not be opened or mapped
+     */
+    public KeyStrokeArchiveHelper(@NonNull Path file, int capacity, long maxAge) throws IOException {
+        if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+            throw new IllegalArgumentException("Capacity must be positive and fit in one mapping");
+        }
+        this.capacity = capacity;
+        this.maxAge = maxAge;
+
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        restrictToOwner(file);
+        channel = FileChannel.open(file, CREATE, READ, WRITE);
+
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        long previousSize = channel.size();
+        boolean readable = previousSize == size;
+        if (!readable) channel.truncate(0);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        long savedCount = buffer.getLong(NEXT_OFFSET);
+        long savedFirst = buffer.getLong(FIRST_OFFSET);
+        if (!readable || buffer.getInt(0) != ARCHIVE_MAGIC || buffer.getInt(4) != RECORD_SIZE ||
+                buffer.getInt(CAPACITY_OFFSET) != capacity || savedFirst < 0 || savedFirst > savedCount ||
+                savedCount - savedFirst > capacity) {
+            if (previousSize != 0) log.warn("Starting over the key stroke archive, which could not be read");
+            for (int offset = 0; offset < size; offset += Long.BYTES) buffer.putLong(offset, 0);
+            buffer.putInt(0, ARCHIVE_MAGIC).putInt(4, RECORD_SIZE).putInt(CAPACITY_OFFSET, capacity);
+            savedCount = 0;
+            savedFirst = 0;
+        }
+        count = savedCount;
+        first = savedFirst;
+        erase(System.currentTimeMillis() - maxAge);
+    }
+
+    /**
+     * Add a key stroke to the end of the archive, in place of the oldest one if the archive is full, and erase the key
+     * strokes that are too old by its time stamp. Does nothing once the archive is closed.
+     */
+    public synchronized void append(int key, boolean keyDown, long timeStamp) {
+        if (closed) return;
+        if (count - first == capacity) setFirst(first + 1);
+
+        int offset = offset(count);
+        buffer.putLong(offset, timeStamp);
+        buffer.putInt(offset + 8, key);
+        buffer.putInt(offset + 12, keyDown ? KEY_DOWN : 0);
+
+        count++;
+        buffer.putLong(NEXT_OFFSET, count);
+        erase(timeStamp - maxAge);
+    }
+
+    /**
+     * Read key strokes from the archive in the order they were added.
+     *
+     * @param from number of the first key stroke to read, reading from the oldest kept if that one is gone
+     * @param handler called with each key stroke
+     * @return the number after the last key stroke read, where the next read should start
+     */
+    public long read(long from, @NonNull IKeyStrokeHandler handler) {
+        long end = count;
+        for (long i = Math.max(from, first); i < end; i++) {
+            int offset = offset(i);
+            long timeStamp = buffer.getLong(offset);
+            int key = buffer.getInt(offset + 8);
+            boolean keyDown = buffer.getInt(offset + 12) == KEY_DOWN;
+            if (i < first) continue; // overwritten or erased while it was read
+            handler.handleKeyStroke(key, keyDown, timeStamp);
+        }
+        return Math.max(from, end);
+    }
+
+    /**
+     * @return the number of key strokes ever added to the archive, which is the number the next one will get.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * @return the number of the oldest key stroke still kept.
+     */
+    public long first() {
+        return first;
+    }
+
+    /**
+     * Force the archived key strokes to disk.
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Force the archived key strokes to disk and close the file. Key strokes added afterwards are not archived.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Erase the key strokes older than the given time, oldest first, stopping at the first that is not.
+     */
+    private void erase(long oldestTimeStamp) {
+        while (first < count && buffer.getLong(offset(first)) < oldestTimeStamp) {
+            int offset = offset(first);
+            setFirst(first + 1);
+            buffer.putLong(offset, 0).putLong(offset + 8, 0);
+        }
+    }
+
+    private void setFirst(long newFirst) {
+        first = newFirst;
+        buffer.putLong(FIRST_OFFSET, newFirst);
+    }
+
+    private int offset(long index) {
+        return HEADER_SIZE + (int) (index % capacity) * RECORD_SIZE;
+    }
+
+    /**
+     * Create the file readable and writable by its owner only, or take away everyone else's access to an existing one.
+     */
+    private static void restrictToOwner(Path file) throws IOException {
+        try {
+            if (Files.exists(file)) Files.setPosixFilePermissions(file, OWNER_ONLY);
+            else Files.createFile(file, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } catch (UnsupportedOperationException e) {
+            log.debug("Key stroke archive permissions are left to the file system");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.biokey.client.helpers;
+
+import lombok.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads recorded key strokes from the CSV files kept with the client, for tools that replay them.
+ *
+ * Two formats are read:
+ * - the key logger's output without a header: seq, timestamp, key, down (true or false);
+ * - simulated imposters with a header: index, user_id, key_time, key_code, direction (d or u), is_user (True or False).
+ * Key strokes from the key logger's output belong to the user with the empty id and are all the user's own.
+ */
+public class KeyStrokeCsvHelper {
+
+    public interface IKeyStrokeRowHandler {
+        void handleKeyStroke(String userId, int key, boolean keyDown, long timeStamp, boolean isUser);
+    }
+
+    private static final String IMPOSTERS_HEADER_START = ",user_id";
+
+    /**
+     * Read every key stroke in the file, in the order of the file.
+     *
+     * @param file the CSV file to read
+     * @param handler called with each key stroke
+     * @return the number of key strokes read
+     * @throws IOException if the file could not be read or a line could not be parsed
+     */
+    public static int read(@NonNull Path file, @NonNull IKeyStrokeRowHandler handler) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            boolean imposters = line != null && line.startsWith(IMPOSTERS_HEADER_START);
+            if (imposters) line = reader.readLine();
+
+            for (int lineNumber = imposters ? 2 : 1; line != null; line = reader.readLine(), lineNumber++) {
+                if (line.isEmpty()) continue;
+                String[] columns = line.split(",");
+                try {
+                    if (imposters) {
+                        handler.handleKeyStroke(columns[1], Integer.parseInt(columns[3]), columns[4].charAt(0) == 'd',
+                                Long.parseLong(columns[2]), Boolean.parseBoolean(columns[5]));
+                    } else {
+                        handler.handleKeyStroke("", Integer.parseInt(columns[2]), Boolean.parseBoolean(columns[3]),
+                                Long.parseLong(columns[1]), true);
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Could not parse line " + lineNumber + " of " + file + ": " + line, e);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,82 @@
+package com.biokey.client.helpers;
+
+import com.biokey.client.models.ClientStateModel;
+import lombok.NonNull;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the record of all key strokes in the model from growing for as long as the client runs.
+ *
+ * Key strokes that are synced with the server and consumed by the analysis engine are dropped once there are more than
+ * maxCount of them or they are older than maxAge milliseconds. Key strokes still waiting for either are always kept.
+ * Trimming is cheap when there is nothing to drop, so it can run with every save.
+ */
+public class KeyStrokeRetentionHelper {
+
+    private static Logger log = Logger.getLogger(KeyStrokeRetentionHelper.class);
+
+    // Rough heap taken by a key stroke in the all key strokes queue: the object and its node in the queue.
+    public static final int BYTES_PER_KEY_STROKE = 64;
+
+    private final ClientStateModel state;
+    private final int maxCount;
+    private final long maxAge;
+
+    // Written by the trimming thread only.
+    private volatile long retainedKeyStrokes = 0;
+    private volatile long droppedKeyStrokes = 0;
+
+    /**
+     * @param state the model holding the key strokes
+     * @param maxCount the number of synced and consumed key strokes to keep
+     * @param maxAge milliseconds synced and consumed key strokes are kept
+     */
+    public KeyStrokeRetentionHelper(@NonNull ClientStateModel state, int maxCount, long maxAge) {
+        this.state = state;
+        this.maxCount = maxCount;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Drop the key strokes that are past the limits. Takes the key stroke lock.
+     *
+     * @return the number of key strokes dropped
+     */
+    public synchronized int trim() {
+        int dropped;
+        state.obtainAccessToKeyStrokes();
+        try {
+            dropped = state.trimKeyStrokes(maxCount, System.currentTimeMillis() - maxAge);
+            retainedKeyStrokes = state.getKeyStrokes().size();
+        } finally {
+            state.releaseAccessToKeyStrokes();
+        }
+
+        if (dropped > 0) {
+            droppedKeyStrokes += dropped;
+            log.debug("Dropped " + dropped + " key strokes from memory, keeping " + retainedKeyStrokes);
+        }
+        return dropped;
+    }
+
+    /**
+     * @return the number of key strokes in the model after the last trim.
+     */
+    public long getRetainedKeyStrokes() {
+        return retainedKeyStrokes;
+    }
+
+    /**
+     * @return the estimated bytes of heap taken by the key strokes in the model after the last trim.
+     */
+    public long getRetainedBytes() {
+        return retainedKeyStrokes * BYTES_PER_KEY_STROKE;
+    }
+
+    /**
+     * @return the number of key strokes dropped so far.
+     */
+    public long getDroppedKeyStrokes() {
+        return droppedKeyStrokes;
+    }
+}
@@ -5,17 +5,42 @@ import com.biokey.client.constants.SecurityConstants;
 import com.biokey.client.models.pojo.*;
 import com.biokey.client.models.response.TypingProfileContainerResponse;
 import com.biokey.client.models.response.TypingProfileResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.NonNull;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 
-import java.util.Queue;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPOutputStream;
+
+import static com.biokey.client.constants.AppConstants.COMPACT_UPLOAD_CONTENT_TYPE;
 
 public class RequestBuilderHelper {
 
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Writers are immutable and thread safe. Building them once keeps their serializers cached between requests.
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectWriter KEY_STROKES_WRITER = MAPPER.writerFor(new TypeReference<Iterable<KeyStrokePojo>>() {});
+    private static final ObjectWriter ANALYSIS_RESULTS_WRITER = MAPPER.writerFor(new TypeReference<Iterable<AnalysisResultPojo>>() {});
+    private static final ObjectWriter CLIENT_STATUS_WRITER = MAPPER.writerFor(TypingProfileContainerResponse.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024; // initial size of the buffer each thread writes bodies into
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024; // larger buffers are dropped after use, not kept
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFER =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(BUFFER_SIZE));
+
     /**
      * Create header map with the current status' access token added.
      *
@@ -29,6 +54,20 @@ public class RequestBuilderHelper {
         return headers;
     }
 
+    /**
+     * Create header map for a compact request body with the current status' access token added.
+     *
+     * @param token the custom token
+     * @return header map with the access token, the compact content type and gzip content encoding
+     */
+    public static HttpHeaders compactHeaderMapWithToken(String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(AppConstants.SERVER_TOKEN_HEADER, token);
+        headers.setContentType(MediaType.valueOf(COMPACT_UPLOAD_CONTENT_TYPE));
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return headers;
+    }
+
     /**
      * Create empty header map specifying content type application/json.
      *
@@ -49,8 +88,96 @@ public class RequestBuilderHelper {
      * @throws JsonProcessingException if serialization of keystrokes to JSON has failed
      */
     public static String requestBodyToPostKeystrokes(KeyStrokesPojo keysToSend, String typingProfileId) throws JsonProcessingException {
-        ObjectWriter writer = new ObjectMapper().writerFor(Queue.class).withAttribute("typingProfile", typingProfileId);
-        return "{\"keystrokes\": " + writer.writeValueAsString(keysToSend.getKeyStrokes()) + "}";
+        return requestBodyToPostKeystrokes(Collections.singletonList(keysToSend), typingProfileId);
+    }
+
+    /**
+     * Create request body for POST keystrokes holding several windows of keystrokes, in the order given.
+     *
+     * @param windowsToSend the windows of keys to serialize
+     * @param typingProfileId the typing profile id to attach to each serialized key
+     * @return string representing the request body for POST keystrokes
+     * @throws JsonProcessingException if serialization of keystrokes to JSON has failed
+     */
+    public static String requestBodyToPostKeystrokes(List<KeyStrokesPojo> windowsToSend, String typingProfileId) throws JsonProcessingException {
+        return new String(requestBytesToPostKeystrokes(windowsToSend, typingProfileId), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create request body for POST keystrokes as UTF-8 bytes, the same JSON as
+     * {@link #requestBodyToPostKeystrokes(List, String)}. The keys of all windows are written straight into the
+     * thread's buffer, without copying them into one queue or building a string first.
+     *
+     * @param windowsToSend the windows of keys to serialize
+     * @param typingProfileId the typing profile id to attach to each serialized key
+     * @return bytes representing the request body for POST keystrokes
+     * @throws JsonProcessingException if serialization of keystrokes to JSON has failed
+     */
+    public static byte[] requestBytesToPostKeystrokes(List<KeyStrokesPojo> windowsToSend, String typingProfileId) throws JsonProcessingException {
+        Iterable<KeyStrokePojo> keysToSend = () -> new Iterator<KeyStrokePojo>() {
+            private final Iterator<KeyStrokesPojo> windows = windowsToSend.iterator();
+            private Iterator<KeyStrokePojo> keys = Collections.emptyIterator();
+
+            public boolean hasNext() {
+                while (!keys.hasNext() && windows.hasNext()) keys = windows.next().getKeyStrokes().iterator();
+                return keys.hasNext();
+            }
+
+            public KeyStrokePojo next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return keys.next();
+            }
+        };
+
+        ByteArrayOutputStream buffer = buffer();
+        try (JsonGenerator json = MAPPER.getFactory().createGenerator(buffer)) {
+            json.writeRaw("{\"keystrokes\": ");
+            KEY_STROKES_WRITER.withAttribute("typingProfile", typingProfileId).writeValue(json, keysToSend);
+            json.writeRaw('}');
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to memory buffer", e);
+        }
+        return bytesOf(buffer);
+    }
+
+    /**
+     * Create compact request body for POST keystrokes: gzipped JSON holding one array per field and the typing profile
+     * id once. The first timestamp is absolute and each following one is the difference from the one before.
+     *
+     * @param windowsToSend the windows of keys to serialize
+     * @param typingProfileId the typing profile id of the keys
+     * @return gzipped bytes representing the request body for POST keystrokes
+     * @throws IOException if serialization of keystrokes has failed
+     */
+    public static byte[] compactRequestBodyToPostKeystrokes(List<KeyStrokesPojo> windowsToSend, String typingProfileId) throws IOException {
+        ByteArrayOutputStream buffer = buffer();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(new GZIPOutputStream(buffer))) {
+            json.writeStartObject();
+            json.writeStringField("typingProfile", typingProfileId);
+
+            json.writeArrayFieldStart("character");
+            for (KeyStrokesPojo window : windowsToSend) for (KeyStrokePojo key : window.getKeyStrokes()) json.writeNumber(key.getKey());
+            json.writeEndArray();
+
+            json.writeArrayFieldStart("keyDown");
+            for (KeyStrokesPojo window : windowsToSend) for (KeyStrokePojo key : window.getKeyStrokes()) json.writeNumber(key.isKeyDown() ? 1 : 0);
+            json.writeEndArray();
+
+            long previousTimeStamp = 0;
+            json.writeArrayFieldStart("timestamp");
+            for (KeyStrokesPojo window : windowsToSend) {
+                for (KeyStrokePojo key : window.getKeyStrokes()) {
+                    json.writeNumber(key.getTimeStamp() - previousTimeStamp);
+                    previousTimeStamp = key.getTimeStamp();
+                }
+            }
+            json.writeEndArray();
+
+            json.writeEndObject();
+        }
+        return bytesOf(buffer);
     }
 
     /**
@@ -83,7 +210,7 @@ public class RequestBuilderHelper {
                 clientStatus.getGoogleAuthKey(),
                 clientStatus.getTimeStamp());
 
-        return new ObjectMapper().writeValueAsString(req);
+        return CLIENT_STATUS_WRITER.writeValueAsString(req);
     }
 
     /**
@@ -95,8 +222,79 @@ public class RequestBuilderHelper {
      * @throws JsonProcessingException if serialization of result to JSON has failed
      */
     public static String requestBodyToPostAnalysisResults(AnalysisResultsPojo analysisResults, String typingProfileId) throws JsonProcessingException {
-        ObjectWriter writer = new ObjectMapper().writerFor(Queue.class).withAttribute("typingProfile", typingProfileId);
-        return "{\"analysisResults\": " + writer.writeValueAsString(analysisResults.getAnalysisResults()) + "}";
+        return new String(requestBytesToPostAnalysisResults(analysisResults, typingProfileId), StandardCharsets.UTF_8);
     }
-}
 
+    /**
+     * Create request body for POST analysis results as UTF-8 bytes, the same JSON as
+     * {@link #requestBodyToPostAnalysisResults(AnalysisResultsPojo, String)}.
+     *
+     * @param analysisResults the analysis results to serialize
+     * @param typingProfileId the typing profile id to attach to serialized result
+     * @return bytes representing the request body for POST result
+     * @throws JsonProcessingException if serialization of result to JSON has failed
+     */
+    public static byte[] requestBytesToPostAnalysisResults(AnalysisResultsPojo analysisResults, String typingProfileId) throws JsonProcessingException {
+        ByteArrayOutputStream buffer = buffer();
+        try (JsonGenerator json = MAPPER.getFactory().createGenerator(buffer)) {
+            json.writeRaw("{\"analysisResults\": ");
+            ANALYSIS_RESULTS_WRITER.withAttribute("typingProfile", typingProfileId).writeValue(json, analysisResults.getAnalysisResults());
+            json.writeRaw('}');
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to memory buffer", e);
+        }
+        return bytesOf(buffer);
+    }
+
+    /**
+     * Create compact request body for POST analysis results, in the same form as
+     * {@link #compactRequestBodyToPostKeystrokes(List, String)}.
+     *
+     * @param analysisResults the analysis results to serialize
+     * @param typingProfileId the typing profile id of the results
+     * @return gzipped bytes representing the request body for POST result
+     * @throws IOException if serialization of results has failed
+     */
+    public static byte[] compactRequestBodyToPostAnalysisResults(AnalysisResultsPojo analysisResults, String typingProfileId) throws IOException {
+        ByteArrayOutputStream buffer = buffer();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(new GZIPOutputStream(buffer))) {
+            json.writeStartObject();
+            json.writeStringField("typingProfile", typingProfileId);
+
+            long previousTimeStamp = 0;
+            json.writeArrayFieldStart("timestamp");
+            for (AnalysisResultPojo result : analysisResults.getAnalysisResults()) {
+                json.writeNumber(result.getTimeStamp() - previousTimeStamp);
+                previousTimeStamp = result.getTimeStamp();
+            }
+            json.writeEndArray();
+
+            json.writeArrayFieldStart("probability");
+            for (AnalysisResultPojo result : analysisResults.getAnalysisResults()) json.writeNumber(result.getProbability());
+            json.writeEndArray();
+
+            json.writeEndObject();
+        }
+        return bytesOf(buffer);
+    }
+
+    /**
+     * @return the calling thread's buffer, emptied
+     */
+    private static ByteArrayOutputStream buffer() {
+        ByteArrayOutputStream buffer = BUFFER.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Copy out the bytes written to the thread's buffer, letting go of the buffer if an unusually large body grew it.
+     */
+    private static byte[] bytesOf(ByteArrayOutputStream buffer) {
+        byte[] bytes = buffer.toByteArray();
+        if (bytes.length > MAX_BUFFER_SIZE) BUFFER.remove();
+        return bytes;
+    }
+}
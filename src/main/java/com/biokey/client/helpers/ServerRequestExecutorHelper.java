@@ -1,8 +1,17 @@
 package com.biokey.client.helpers;
 
 import lombok.NonNull;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.log4j.Logger;
 import org.springframework.http.*;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.ResourceAccessException;
@@ -10,10 +19,19 @@ import org.springframework.web.client.RestTemplate;
 
 import java.net.ConnectException;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.biokey.client.constants.AppConstants.*;
 
 /**
  * Helper class that uses Spring RestTemplate to make HTTP requests to the server.
+ *
+ * Connections are pooled and kept alive between requests, so the heartbeats and syncs made every second reuse the same
+ * few TLS connections instead of opening new ones. A request that the executor has no room for is not made, and its
+ * handler is given a null response as if the client were offline.
  */
 public class ServerRequestExecutorHelper {
 
@@ -23,7 +41,12 @@ public class ServerRequestExecutorHelper {
         void handleResponse(ResponseEntity<T> response);
     }
 
-    private RestTemplate rt = new RestTemplate();
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final RestTemplate rt;
+
+    // Time requests waited for a pooled connection, in milliseconds.
+    private volatile long lastConnectionWaitTime = 0;
+    private volatile long maxConnectionWaitTime = 0;
 
     /**
      * Executor that will use a worker or pool of worker threads to make HTTP requests asynchronously.
@@ -32,9 +55,88 @@ public class ServerRequestExecutorHelper {
 
     public ServerRequestExecutorHelper(ExecutorService executor) {
         this.executor = executor;
+
+        connectionManager = new PoolingHttpClientConnectionManager() {
+            @Override
+            public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+                ConnectionRequest request = super.requestConnection(route, state);
+                return new ConnectionRequest() {
+                    @Override
+                    public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                            throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                        long start = System.currentTimeMillis();
+                        try {
+                            return request.get(timeout, timeUnit);
+                        } finally {
+                            recordConnectionWaitTime(System.currentTimeMillis() - start);
+                        }
+                    }
+
+                    @Override
+                    public boolean cancel() {
+                        return request.cancel();
+                    }
+                };
+            }
+        };
+        connectionManager.setMaxTotal(SERVER_MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(SERVER_MAX_CONNECTIONS_PER_ROUTE);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(SERVER_CONNECT_TIMEOUT)
+                .setSocketTimeout(SERVER_READ_TIMEOUT)
+                .setConnectionRequestTimeout(SERVER_CONNECTION_REQUEST_TIMEOUT)
+                .build();
+
+        this.rt = new RestTemplate(new HttpComponentsClientHttpRequestFactory(HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    // Keep connections for as long as the server allows, or SERVER_KEEP_ALIVE if it does not say.
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return (keepAlive > 0) ? keepAlive : SERVER_KEEP_ALIVE;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(SERVER_KEEP_ALIVE, TimeUnit.MILLISECONDS)
+                .build()));
         this.rt.getMessageConverters().add(new MappingJackson2HttpMessageConverter());
     }
 
+    /**
+     * @return the number of pooled connections in use by a request.
+     */
+    public int getLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    /**
+     * @return the number of pooled connections kept alive and waiting for a request.
+     */
+    public int getIdleConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    /**
+     * @return the number of requests waiting for a pooled connection.
+     */
+    public int getPendingConnectionRequests() {
+        return connectionManager.getTotalStats().getPending();
+    }
+
+    /**
+     * @return milliseconds the last request waited for a pooled connection.
+     */
+    public long getLastConnectionWaitTime() {
+        return lastConnectionWaitTime;
+    }
+
+    /**
+     * @return the longest time any request waited for a pooled connection so far.
+     */
+    public long getMaxConnectionWaitTime() {
+        return maxConnectionWaitTime;
+    }
+
     /**
      * Submits a HTTP GET Request to the provided url, and expect a response back matching the template.
      * Allow caller to provide a lambda to execute on the response.
@@ -44,12 +146,13 @@ public class ServerRequestExecutorHelper {
      * @param responseTemplate the expected template that the response should be cast to
      * @param handler the lambda that will be passed the server response
      * @param <T> the type of the responseTemplate
+     * @return true if the request was queued, false if there was no room for it and the handler was already given null
      */
-    public <T> void submitGetRequest(@NonNull String url,
-                                     @NonNull HttpHeaders headers,
-                                     @NonNull Class<T> responseTemplate,
-                                     @NonNull ServerResponseHandler<T> handler) {
-        executor.execute(() -> {
+    public <T> boolean submitGetRequest(@NonNull String url,
+                                        @NonNull HttpHeaders headers,
+                                        @NonNull Class<T> responseTemplate,
+                                        @NonNull ServerResponseHandler<T> handler) {
+        return execute(url, handler, () -> {
             // Add body and header to an Http Entity.
             HttpEntity<HashMap<String, String>> requestEntity = new HttpEntity<>(headers);
 
@@ -82,15 +185,42 @@ public class ServerRequestExecutorHelper {
      * @param responseTemplate the expected template that the response should be cast to
      * @param handler the lambda that will be passed the server response
      * @param <T> the type of the responseTemplate
+     * @return true if the request was queued, false if there was no room for it and the handler was already given null
+     */
+    public <T> boolean submitPostRequest(@NonNull String url,
+                                         @NonNull HttpHeaders headers,
+                                         @NonNull String requestBody,
+                                         @NonNull Class<T> responseTemplate,
+                                         @NonNull ServerResponseHandler<T> handler) {
+        return post(url, headers, requestBody, responseTemplate, handler);
+    }
+
+    /**
+     * Submits a HTTP POST Request to the provided url, attaching the provided bytes as the request body. The headers
+     * must give the content type and encoding of the bytes.
+     * Allow caller to provide a lambda to execute on the response.
+     *
+     * @param url url to send request to
+     * @param headers the http headers to use in the request
+     * @param requestBody the bytes to be attached to the request body
+     * @param responseTemplate the expected template that the response should be cast to
+     * @param handler the lambda that will be passed the server response
+     * @param <T> the type of the responseTemplate
+     * @return true if the request was queued, false if there was no room for it and the handler was already given null
      */
-    public <T> void submitPostRequest(@NonNull String url,
-                                      @NonNull HttpHeaders headers,
-                                      @NonNull String requestBody,
-                                      @NonNull Class<T> responseTemplate,
-                                      @NonNull ServerResponseHandler<T> handler) {
-        executor.execute(() -> {
+    public <T> boolean submitBinaryPostRequest(@NonNull String url,
+                                               @NonNull HttpHeaders headers,
+                                               @NonNull byte[] requestBody,
+                                               @NonNull Class<T> responseTemplate,
+                                               @NonNull ServerResponseHandler<T> handler) {
+        return post(url, headers, requestBody, responseTemplate, handler);
+    }
+
+    private <T> boolean post(String url, HttpHeaders headers, Object requestBody, Class<T> responseTemplate,
+                             ServerResponseHandler<T> handler) {
+        return execute(url, handler, () -> {
             // Add body and header to an Http Entity.
-            HttpEntity<String> requestEntity = new HttpEntity<>(requestBody, headers);
+            HttpEntity<Object> requestEntity = new HttpEntity<>(requestBody, headers);
 
             // Pre-suppose that the response fails for whatever reason.
             ResponseEntity<T> response = null;
@@ -121,13 +251,14 @@ public class ServerRequestExecutorHelper {
      * @param responseTemplate the expected template that the response should be cast to
      * @param handler the lambda that will be passed the server response
      * @param <T> the type of the responseTemplate
+     * @return true if the request was queued, false if there was no room for it and the handler was already given null
      */
-    public <T> void submitPutRequest(@NonNull String url,
-                                     @NonNull HttpHeaders headers,
-                                     @NonNull String requestBody,
-                                     @NonNull Class<T> responseTemplate,
-                                     @NonNull ServerResponseHandler<T> handler) {
-        executor.execute(() -> {
+    public <T> boolean submitPutRequest(@NonNull String url,
+                                        @NonNull HttpHeaders headers,
+                                        @NonNull String requestBody,
+                                        @NonNull Class<T> responseTemplate,
+                                        @NonNull ServerResponseHandler<T> handler) {
+        return execute(url, handler, () -> {
             // Add body and header to an Http Entity.
             HttpEntity<String> requestEntity = new HttpEntity<>(requestBody, headers);
 
@@ -149,4 +280,27 @@ public class ServerRequestExecutorHelper {
             }
         });
     }
+
+    /**
+     * Run the request on the executor, or hand a null response to the handler if the executor has no room for it.
+     * The null response is handled on the calling thread before this returns, so callers that submit in a loop must
+     * stop once a request is refused rather than try again straight away.
+     *
+     * @return true if the request was queued
+     */
+    private <T> boolean execute(String url, ServerResponseHandler<T> handler, Runnable request) {
+        try {
+            executor.execute(request);
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.debug("Too many HTTP requests waiting, did not make HTTP Request for: " + url);
+            handler.handleResponse(null);
+            return false;
+        }
+    }
+
+    private void recordConnectionWaitTime(long waitTime) {
+        lastConnectionWaitTime = waitTime;
+        if (waitTime > maxConnectionWaitTime) maxConnectionWaitTime = waitTime;
+    }
 }
@@ -4,18 +4,29 @@ import com.biokey.client.models.pojo.*;
 import lombok.NonNull;
 import lombok.Setter;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.security.AccessControlException;
 import java.util.Deque;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.locks.ReentrantLock;
 
+import static com.biokey.client.constants.AppConstants.CHECK_MODEL_ACCESS;
+import static com.biokey.client.constants.AppConstants.KEYSTROKE_TIME_INTERVAL_PER_WINDOW;
+import static com.biokey.client.constants.AppConstants.KEYSTROKE_WINDOW_SIZE_PER_REQUEST;
+
 /**
  * Model serves as the single source of truth for all client state information.
  * State can be observed by any service who registers a listener.
+ *
+ * Each part of the model is guarded by its own lock. Callers are trusted to hold the right lock, which is only checked
+ * when CHECK_MODEL_ACCESS is on. The current status can be read without a lock, and key strokes can be offered without
+ * waiting for the key stroke lock.
  */
 public class ClientStateModel implements Serializable {
 
@@ -35,6 +46,13 @@ public class ClientStateModel implements Serializable {
         void keystrokeQueueChanged(KeyStrokePojo newKey, boolean isDeleteEvent);
     }
 
+    /**
+     * Interface describing the contract for listeners that need every keystroke in the order it was enqueued.
+     * These listeners are called on the thread that changed the queue, so they must return quickly.
+     */
+    public interface IClientOrderedKeyListener extends IClientKeyListener {
+    }
+
     /**
      * Interface describing the contract for listeners to the analysis result queue.
      * Listeners will be notified when the queue is modified.
@@ -43,20 +61,46 @@ public class ClientStateModel implements Serializable {
         void analysisResultQueueChanged(AnalysisResultPojo newResult, boolean isDeleteEvent);
     }
 
+    /**
+     * Interface describing the contract for a journal of the changes made to the model.
+     * The journal is called by the thread making the change while it holds the lock of that part of the model,
+     * so it must return quickly.
+     */
+    public interface IClientStateJournal {
+        void statusEnqueued(ClientStatusPojo status);
+        void statusDequeued();
+        void analysisResultEnqueued(AnalysisResultPojo result);
+        void analysisResultsDivided();
+        void analysisResultsDequeued();
+        void keyStrokeEnqueued(KeyStrokePojo keyStroke);
+        void keyStrokesDivided();
+        void unsyncedKeyStrokesDequeued();
+        void allKeyStrokesDequeued();
+        /**
+         * Called when the whole model was replaced or cleared, while the thread holds the locks of the entire model.
+         */
+        void modelReplaced(ClientStateModel model);
+    }
+
     private static final long serialVersionUID = 100;
 
-    private ClientStatusPojo currentStatus;
+    private volatile ClientStatusPojo currentStatus; // replaced whole, so it can be read without the status lock
     private Deque<ClientStatusPojo> unsyncedStatuses = new LinkedBlockingDeque<>();
     private Deque<AnalysisResultsPojo> unsyncedAnalysisResults = new LinkedBlockingDeque<>();
     private Deque<KeyStrokesPojo> unsyncedKeyStrokes = new LinkedBlockingDeque<>();
     private Deque<KeyStrokePojo> allKeyStrokes = new LinkedBlockingDeque<>(); // need a record of all keyStrokes for the analysis engine
 
-    private final ReentrantLock statusLock = new ReentrantLock(true);
+    private final ReentrantLock statusLock = new ReentrantLock();
     private boolean retrievedStatusBeforeEnqueue = false;
-    private final ReentrantLock analysisResultLock = new ReentrantLock(true);
-    private final ReentrantLock keyStrokesLock = new ReentrantLock(true);
+    private final ReentrantLock analysisResultLock = new ReentrantLock();
+    private final ReentrantLock keyStrokesLock = new ReentrantLock();
     private final transient ExecutorService executor;
 
+    // Key strokes offered without the key stroke lock, moved to the queues by the next thread holding it.
+    private transient Queue<KeyStrokePojo> offeredKeyStrokes = new ConcurrentLinkedQueue<>();
+    // Time stamp of the newest key stroke the analysis engine is done with, written without a lock.
+    private transient volatile long keyStrokesConsumedUpTo;
+
     @Setter @NonNull
     private transient Set<IClientStatusListener> statusListeners;
 
@@ -66,10 +110,18 @@ public class ClientStateModel implements Serializable {
     @Setter @NonNull
     private transient Set<IClientAnalysisListener> analysisResultQueueListeners;
 
+    @Setter
+    private transient IClientStateJournal journal;
+
     public ClientStateModel(ExecutorService executor) {
         this.executor = executor;
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        offeredKeyStrokes = new ConcurrentLinkedQueue<>();
+    }
+
     /**
      * Obtain access to status. If a thread is not holding this lock, it can not get or modify the status.
      * A thread that has called this method must make sure to release the lock through a finally block.
@@ -108,6 +160,7 @@ public class ClientStateModel implements Serializable {
      */
     public void obtainAccessToKeyStrokes() {
         if (!keyStrokesLock.isHeldByCurrentThread()) keyStrokesLock.lock();
+        moveOfferedKeyStrokes();
     }
 
     /**
@@ -115,6 +168,7 @@ public class ClientStateModel implements Serializable {
      */
     public void releaseAccessToKeyStrokes() {
         if (keyStrokesLock.isHeldByCurrentThread()) keyStrokesLock.unlock();
+        drainOfferedKeyStrokes();
     }
 
     /**
@@ -126,6 +180,7 @@ public class ClientStateModel implements Serializable {
         if (!analysisResultLock.isHeldByCurrentThread()) analysisResultLock.lock();
         if (!keyStrokesLock.isHeldByCurrentThread()) keyStrokesLock.lock();
         retrievedStatusBeforeEnqueue = true;
+        moveOfferedKeyStrokes();
     }
 
     /**
@@ -136,6 +191,7 @@ public class ClientStateModel implements Serializable {
         if (analysisResultLock.isHeldByCurrentThread()) analysisResultLock.unlock();
         if (keyStrokesLock.isHeldByCurrentThread()) keyStrokesLock.unlock();
         retrievedStatusBeforeEnqueue = false;
+        drainOfferedKeyStrokes();
     }
 
     /**
@@ -144,10 +200,7 @@ public class ClientStateModel implements Serializable {
      * @param fromMemory client state to be loaded
      */
     public void loadStateFromMemory(@NonNull ClientStateModel fromMemory) {
-        if (!statusLock.isHeldByCurrentThread() ||
-                !keyStrokesLock.isHeldByCurrentThread() ||
-                !analysisResultLock.isHeldByCurrentThread())
-            throw new AccessControlException("Locks needs to be acquired by the thread");
+        checkAccessToModel();
 
         // Copy to the current ClientStateModel.
         this.currentStatus = fromMemory.currentStatus;
@@ -155,10 +208,72 @@ public class ClientStateModel implements Serializable {
         this.unsyncedKeyStrokes = fromMemory.unsyncedKeyStrokes;
         this.unsyncedAnalysisResults = fromMemory.unsyncedAnalysisResults;
         this.allKeyStrokes = fromMemory.allKeyStrokes;
+        if (journal != null) journal.modelReplaced(this);
 
         // Notify all the listeners?
     }
 
+    /**
+     * Loads only the statuses from another instance of ClientStateModel, leaving the key strokes and analysis results
+     * to {@link #loadBacklogFromMemory(ClientStateModel)}. The statuses are not journaled, they must already be saved.
+     *
+     * @param fromMemory client state holding the statuses to be loaded
+     */
+    public void loadStatusFromMemory(@NonNull ClientStateModel fromMemory) {
+        checkAccess(statusLock, "statusLock");
+
+        this.currentStatus = fromMemory.currentStatus;
+        this.unsyncedStatuses = fromMemory.unsyncedStatuses;
+    }
+
+    /**
+     * Loads the key strokes and analysis results from another instance of ClientStateModel, in front of any that were
+     * enqueued since the statuses were loaded.
+     *
+     * @param fromMemory client state holding the key strokes and analysis results to be loaded
+     */
+    public void loadBacklogFromMemory(@NonNull ClientStateModel fromMemory) {
+        checkAccessToModel();
+
+        fromMemory.unsyncedKeyStrokes.addAll(this.unsyncedKeyStrokes);
+        fromMemory.unsyncedAnalysisResults.addAll(this.unsyncedAnalysisResults);
+        fromMemory.allKeyStrokes.addAll(this.allKeyStrokes);
+        this.unsyncedKeyStrokes = fromMemory.unsyncedKeyStrokes;
+        this.unsyncedAnalysisResults = fromMemory.unsyncedAnalysisResults;
+        this.allKeyStrokes = fromMemory.allKeyStrokes;
+        if (journal != null) journal.modelReplaced(this);
+    }
+
+    /**
+     * Make a model sharing only the statuses of this one, to save them apart from the rest of the model.
+     *
+     * @return a model holding the statuses of this one and no key strokes or analysis results
+     */
+    public ClientStateModel copyStatus() {
+        checkAccess(statusLock, "statusLock");
+
+        ClientStateModel copy = new ClientStateModel(null);
+        copy.currentStatus = this.currentStatus;
+        copy.unsyncedStatuses = this.unsyncedStatuses;
+        return copy;
+    }
+
+    /**
+     * Make a model sharing only the key strokes and analysis results of this one, to save them apart from the statuses.
+     *
+     * @return a model holding the key strokes and analysis results of this one and no statuses
+     */
+    public ClientStateModel copyBacklog() {
+        checkAccess(keyStrokesLock, "keyStrokesLock");
+        checkAccess(analysisResultLock, "analysisResultLock");
+
+        ClientStateModel copy = new ClientStateModel(null);
+        copy.unsyncedKeyStrokes = this.unsyncedKeyStrokes;
+        copy.unsyncedAnalysisResults = this.unsyncedAnalysisResults;
+        copy.allKeyStrokes = this.allKeyStrokes;
+        return copy;
+    }
+
     /**
      * Checks if the client state model read from memory is valid.
      *
@@ -179,16 +294,14 @@ public class ClientStateModel implements Serializable {
      * Clear all the data from the model.
      */
     public void clear() {
-        if (!statusLock.isHeldByCurrentThread() ||
-                !keyStrokesLock.isHeldByCurrentThread() ||
-                !analysisResultLock.isHeldByCurrentThread())
-            throw new AccessControlException("Locks needs to be acquired by the thread");
+        checkAccessToModel();
 
         this.unsyncedStatuses.clear();
         this.unsyncedKeyStrokes.clear();
         this.unsyncedAnalysisResults.clear();
         this.allKeyStrokes.clear();
         this.currentStatus = null;
+        if (journal != null) journal.modelReplaced(this);
     }
 
     /**
@@ -197,23 +310,34 @@ public class ClientStateModel implements Serializable {
      * @return current status
      */
     public ClientStatusPojo getCurrentStatus() {
-        if (!statusLock.isHeldByCurrentThread()) throw new AccessControlException("statusLock needs to be acquired by the thread");
+        checkAccess(statusLock, "statusLock");
         retrievedStatusBeforeEnqueue = true;
         return currentStatus;
     }
 
+    /**
+     * Read the current status without holding the status lock. The status may be replaced right after, so it must not
+     * be used to decide on a new status, which needs {@link #getCurrentStatus()}.
+     *
+     * @return current status
+     */
+    public ClientStatusPojo peekCurrentStatus() {
+        return currentStatus;
+    }
+
     /**
      * Add a new (immutable) status to unsynced queue.
      *
      * @param status new status to add to queue
      */
     public void enqueueStatus(@NonNull ClientStatusPojo status) {
-        if (!statusLock.isHeldByCurrentThread() || !retrievedStatusBeforeEnqueue)
+        if (CHECK_MODEL_ACCESS && (!statusLock.isHeldByCurrentThread() || !retrievedStatusBeforeEnqueue))
             throw new AccessControlException("statusLock needs to be acquired by the thread");
 
         // ClientStatusPojo oldStatus = currentStatus;
         unsyncedStatuses.add(status);
         currentStatus = status;
+        if (journal != null) journal.statusEnqueued(status);
         // notifyStatusChange(oldStatus, currentStatus);
     }
 
@@ -223,9 +347,10 @@ public class ClientStateModel implements Serializable {
      * @return true if the oldest status in the queue has been removed
      */
     public boolean dequeueStatus() {
-        if (!statusLock.isHeldByCurrentThread()) throw new AccessControlException("statusLock needs to be acquired by the thread");
+        checkAccess(statusLock, "statusLock");
         if (unsyncedStatuses.isEmpty()) return false;
         unsyncedStatuses.remove();
+        if (journal != null) journal.statusDequeued();
         return true;
     }
 
@@ -235,7 +360,7 @@ public class ClientStateModel implements Serializable {
      * @return the oldest status
      */
     public ClientStatusPojo getOldestStatus() {
-        if (!statusLock.isHeldByCurrentThread()) throw new AccessControlException("statusLock needs to be acquired by the thread");
+        checkAccess(statusLock, "statusLock");
         return unsyncedStatuses.peek();
     }
 
@@ -245,9 +370,10 @@ public class ClientStateModel implements Serializable {
      * @param result new (immutable) analysis result that will be enqueued
      */
     public void enqueueAnalysisResult(@NonNull AnalysisResultPojo result) {
-        if (!analysisResultLock.isHeldByCurrentThread()) throw new AccessControlException("analysisResultLock needs to be acquired by the thread");
+        checkAccess(analysisResultLock, "analysisResultLock");
         if (unsyncedAnalysisResults.isEmpty()) unsyncedAnalysisResults.add(new AnalysisResultsPojo());
         unsyncedAnalysisResults.getLast().getAnalysisResults().add(result);
+        if (journal != null) journal.analysisResultEnqueued(result);
         // notifyAnalysisResultQueueChange(result);
     }
 
@@ -258,9 +384,10 @@ public class ClientStateModel implements Serializable {
      * @return true if the oldest analysis results in the queue has been removed
      */
     public boolean dequeueAnalysisResults() {
-        if (!analysisResultLock.isHeldByCurrentThread()) throw new AccessControlException("analysisResultLock needs to be acquired by the thread");
+        checkAccess(analysisResultLock, "analysisResultLock");
         if (unsyncedAnalysisResults.isEmpty()) return false;
         unsyncedAnalysisResults.remove();
+        if (journal != null) journal.analysisResultsDequeued();
         return true;
     }
 
@@ -269,8 +396,9 @@ public class ClientStateModel implements Serializable {
      * dequeueAnalysisResults() will dequeue the last bundle.
      */
     public void divideAnalysisResults() {
-        if (!analysisResultLock.isHeldByCurrentThread()) throw new AccessControlException("analysisResultLock needs to be acquired by the thread");
+        checkAccess(analysisResultLock, "analysisResultLock");
         unsyncedAnalysisResults.add(new AnalysisResultsPojo());
+        if (journal != null) journal.analysisResultsDivided();
     }
 
     /**
@@ -279,7 +407,7 @@ public class ClientStateModel implements Serializable {
      * @return the oldest analysis results
      */
     public AnalysisResultsPojo getOldestAnalysisResults() {
-        if (!analysisResultLock.isHeldByCurrentThread()) throw new AccessControlException("analysisResultLock needs to be acquired by the thread");
+        checkAccess(analysisResultLock, "analysisResultLock");
         return unsyncedAnalysisResults.peek();
     }
 
@@ -289,20 +417,65 @@ public class ClientStateModel implements Serializable {
      * @param keyStroke new key stroke that will be enqueued
      */
     public void enqueueKeyStroke(@NonNull KeyStrokePojo keyStroke) {
-        if (!keyStrokesLock.isHeldByCurrentThread()) throw new AccessControlException("keyStrokesLock needs to be acquired by the thread");
+        checkAccess(keyStrokesLock, "keyStrokesLock");
         if (unsyncedKeyStrokes.isEmpty()) unsyncedKeyStrokes.add(new KeyStrokesPojo());
         unsyncedKeyStrokes.getLast().getKeyStrokes().add(keyStroke);
         allKeyStrokes.add(keyStroke);
+        if (journal != null) journal.keyStrokeEnqueued(keyStroke);
         // notifyKeyQueueChange(keyStroke);
     }
 
+    /**
+     * Add a new (immutable) key stroke without waiting for the key stroke lock. If another thread holds the lock, it
+     * moves the key stroke to the queues before releasing it. Key strokes offered by one thread keep their order, and
+     * a new window is started when the newest one is full or the key stroke comes long after it.
+     *
+     * @param keyStroke new key stroke that will be enqueued
+     */
+    public void offerKeyStroke(@NonNull KeyStrokePojo keyStroke) {
+        offeredKeyStrokes.offer(keyStroke);
+        drainOfferedKeyStrokes();
+    }
+
+    /**
+     * Move the offered key strokes to the queues if the key stroke lock is free. Called after releasing the lock,
+     * since a key stroke offered while the lock was held would otherwise wait for the next holder.
+     */
+    private void drainOfferedKeyStrokes() {
+        while (!offeredKeyStrokes.isEmpty() && keyStrokesLock.tryLock()) {
+            try {
+                moveOfferedKeyStrokes();
+            } finally {
+                keyStrokesLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Move the offered key strokes to the queues. The caller must hold the key stroke lock.
+     */
+    private void moveOfferedKeyStrokes() {
+        KeyStrokePojo keyStroke;
+        while ((keyStroke = offeredKeyStrokes.poll()) != null) {
+            // If the newest window of keystrokes is too long (by keys or by time) then create a new window.
+            KeyStrokesPojo newestKeyStrokes = unsyncedKeyStrokes.peekLast();
+            if (newestKeyStrokes != null && !newestKeyStrokes.getKeyStrokes().isEmpty() &&
+                    (newestKeyStrokes.getKeyStrokes().size() >= KEYSTROKE_WINDOW_SIZE_PER_REQUEST ||
+                    keyStroke.getTimeStamp() - newestKeyStrokes.getKeyStrokes().peekLast().getTimeStamp() > KEYSTROKE_TIME_INTERVAL_PER_WINDOW)) {
+                divideKeyStrokes();
+            }
+            enqueueKeyStroke(keyStroke);
+        }
+    }
+
     /**
      * Divides the unsynced key strokes queue and bundles all the key strokes since last division together.
      * dequeueOneFromUnsyncedKeyStrokes() will dequeue the last bundle.
      */
     public void divideKeyStrokes() {
-        if (!keyStrokesLock.isHeldByCurrentThread()) throw new AccessControlException("keyStrokesLock needs to be acquired by the thread");
+        checkAccess(keyStrokesLock, "keyStrokesLock");
         unsyncedKeyStrokes.add(new KeyStrokesPojo());
+        if (journal != null) journal.keyStrokesDivided();
     }
 
     /**
@@ -311,9 +484,10 @@ public class ClientStateModel implements Serializable {
      * @return true if the oldest key strokes in the queue has been removed
      */
     public boolean dequeueOneFromUnsyncedKeyStrokes() {
-        if (!keyStrokesLock.isHeldByCurrentThread()) throw new AccessControlException("keyStrokesLock needs to be acquired by the thread");
+        checkAccess(keyStrokesLock, "keyStrokesLock");
         if (unsyncedKeyStrokes.isEmpty()) return false;
         unsyncedKeyStrokes.remove();
+        if (journal != null) journal.unsyncedKeyStrokesDequeued();
         return true;
     }
 
@@ -323,19 +497,58 @@ public class ClientStateModel implements Serializable {
      * @return true if the oldest key stroke in the queue has been removed
      */
     public boolean dequeueOneFromAllKeyStrokes() {
-        if (!keyStrokesLock.isHeldByCurrentThread()) throw new AccessControlException("keyStrokesLock needs to be acquired by the thread");
+        checkAccess(keyStrokesLock, "keyStrokesLock");
         if (allKeyStrokes.isEmpty()) return false;
         allKeyStrokes.remove();
+        if (journal != null) journal.allKeyStrokesDequeued();
         return true;
     }
 
+    /**
+     * Record that the analysis engine is done with the key strokes up to the time stamp, so that they may be dropped
+     * from the all key strokes queue. Can be called without holding the key stroke lock.
+     *
+     * @param timeStamp time stamp of the newest key stroke consumed
+     */
+    public void keyStrokesConsumed(long timeStamp) {
+        if (timeStamp > keyStrokesConsumedUpTo) keyStrokesConsumedUpTo = timeStamp;
+    }
+
+    /**
+     * Drop the oldest key strokes from the all key strokes queue while it holds more than maxCount key strokes or its
+     * oldest key stroke is older than oldestTimeStamp. Stops at the first key stroke that is still in an unsynced
+     * window or that the analysis engine has not consumed.
+     *
+     * @param maxCount the number of key strokes to keep
+     * @param oldestTimeStamp the time stamp of the oldest key stroke to keep
+     * @return the number of key strokes dropped
+     */
+    public int trimKeyStrokes(int maxCount, long oldestTimeStamp) {
+        checkAccess(keyStrokesLock, "keyStrokesLock");
+
+        // Key strokes are enqueued to both queues in the same order, so the oldest ones past the unsynced count are synced.
+        int unsyncedCount = 0;
+        for (KeyStrokesPojo window : unsyncedKeyStrokes) unsyncedCount += window.getKeyStrokes().size();
+        long consumedUpTo = keyStrokesConsumedUpTo;
+
+        int dropped = 0;
+        while (allKeyStrokes.size() > unsyncedCount) {
+            KeyStrokePojo oldest = allKeyStrokes.peek();
+            if (oldest.getTimeStamp() > consumedUpTo) break;
+            if (allKeyStrokes.size() <= maxCount && oldest.getTimeStamp() >= oldestTimeStamp) break;
+            dequeueOneFromAllKeyStrokes();
+            dropped++;
+        }
+        return dropped;
+    }
+
     /**
      * Peek at the oldest window of key strokes from the unsynced queue.
      *
      * @return the oldest key strokes
      */
     public KeyStrokesPojo getOldestUnsyncedKeyStrokes() {
-        if (!keyStrokesLock.isHeldByCurrentThread()) throw new AccessControlException("keyStrokesLock needs to be acquired by the thread");
+        checkAccess(keyStrokesLock, "keyStrokesLock");
         return unsyncedKeyStrokes.peek();
     }
 
@@ -345,20 +558,47 @@ public class ClientStateModel implements Serializable {
      * @return the oldest key strokes
      */
     public KeyStrokesPojo getNewestUnsyncedKeyStrokes() {
-        if (!keyStrokesLock.isHeldByCurrentThread()) throw new AccessControlException("keyStrokesLock needs to be acquired by the thread");
+        checkAccess(keyStrokesLock, "keyStrokesLock");
         return unsyncedKeyStrokes.peekLast();
     }
 
+    /**
+     * Get the windows of keystrokes not yet synced, oldest first. The newest window is still being filled.
+     *
+     * @return the windows of unsynced keystrokes
+     */
+    public Queue<KeyStrokesPojo> getUnsyncedKeyStrokes() {
+        checkAccess(keyStrokesLock, "keyStrokesLock");
+        return unsyncedKeyStrokes;
+    }
+
     /**
      * Get all the keystrokes in client memory.
      *
      * @return all the keystrokes in client memory
      */
     public Queue<KeyStrokePojo> getKeyStrokes() {
-        if (!keyStrokesLock.isHeldByCurrentThread()) throw new AccessControlException("keyStrokesLock needs to be acquired by the thread");
+        checkAccess(keyStrokesLock, "keyStrokesLock");
         return allKeyStrokes;
     }
 
+    /**
+     * Throw if the thread does not hold the lock, when CHECK_MODEL_ACCESS is on.
+     */
+    private static void checkAccess(ReentrantLock lock, String name) {
+        if (CHECK_MODEL_ACCESS && !lock.isHeldByCurrentThread()) throw new AccessControlException(name + " needs to be acquired by the thread");
+    }
+
+    /**
+     * Throw if the thread does not hold the locks of the entire model, when CHECK_MODEL_ACCESS is on.
+     */
+    private void checkAccessToModel() {
+        if (CHECK_MODEL_ACCESS && (!statusLock.isHeldByCurrentThread() ||
+                !keyStrokesLock.isHeldByCurrentThread() ||
+                !analysisResultLock.isHeldByCurrentThread()))
+            throw new AccessControlException("Locks needs to be acquired by the thread");
+    }
+
     /**
      * Notifies all the listeners of a status change.
      *
@@ -380,7 +620,8 @@ public class ClientStateModel implements Serializable {
      */
     public void notifyKeyQueueChange(KeyStrokePojo newKey, boolean isDeleteEvent) {
         for (IClientKeyListener listener : keyQueueListeners) {
-            executor.execute(() -> listener.keystrokeQueueChanged(newKey, isDeleteEvent));
+            if (listener instanceof IClientOrderedKeyListener) listener.keystrokeQueueChanged(newKey, isDeleteEvent);
+            else executor.execute(() -> listener.keystrokeQueueChanged(newKey, isDeleteEvent));
         }
     }
 
@@ -8,13 +8,26 @@ import lombok.NonNull;
 import java.io.Serializable;
 import java.util.Deque;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 @Data
 @JsonIgnoreProperties(value = { "syncedWithServer" })
 public class AnalysisResultsPojo implements Serializable {
 
+    private static final AtomicReferenceFieldUpdater<AnalysisResultsPojo, SyncStatusConstants> SYNCED_WITH_SERVER =
+            AtomicReferenceFieldUpdater.newUpdater(AnalysisResultsPojo.class, SyncStatusConstants.class, "syncedWithServer");
+
     private static final long serialVersionUID = 210;
 
     @NonNull private Deque<AnalysisResultPojo> analysisResults = new LinkedBlockingDeque<>();
-    @NonNull private SyncStatusConstants syncedWithServer = SyncStatusConstants.UNSYNCED;
+    @NonNull private volatile SyncStatusConstants syncedWithServer = SyncStatusConstants.UNSYNCED;
+
+    /**
+     * Change the sync status only if no other thread has changed it since it was expected.
+     *
+     * @return true if the sync status was expect and is now update
+     */
+    public boolean compareAndSetSyncedWithServer(@NonNull SyncStatusConstants expect, @NonNull SyncStatusConstants update) {
+        return SYNCED_WITH_SERVER.compareAndSet(this, expect, update);
+    }
 }
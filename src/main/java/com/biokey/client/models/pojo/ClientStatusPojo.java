@@ -8,11 +8,15 @@ import lombok.Data;
 import lombok.NonNull;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 @Data
 @JsonIgnoreProperties(value = { "syncedWithServer" })
 public class ClientStatusPojo implements Serializable {
 
+    private static final AtomicReferenceFieldUpdater<ClientStatusPojo, SyncStatusConstants> SYNCED_WITH_SERVER =
+            AtomicReferenceFieldUpdater.newUpdater(ClientStatusPojo.class, SyncStatusConstants.class, "syncedWithServer");
+
     private static final long serialVersionUID = 230;
 
     @NonNull private final TypingProfilePojo profile;
@@ -22,5 +26,14 @@ public class ClientStatusPojo implements Serializable {
     @NonNull private final String phoneNumber;
     @NonNull private final String googleAuthKey;
     @NonNull private final long timeStamp;
-    @NonNull private SyncStatusConstants syncedWithServer = SyncStatusConstants.UNSYNCED;
+    @NonNull private volatile SyncStatusConstants syncedWithServer = SyncStatusConstants.UNSYNCED;
+
+    /**
+     * Change the sync status only if no other thread has changed it since it was expected.
+     *
+     * @return true if the sync status was expect and is now update
+     */
+    public boolean compareAndSetSyncedWithServer(@NonNull SyncStatusConstants expect, @NonNull SyncStatusConstants update) {
+        return SYNCED_WITH_SERVER.compareAndSet(this, expect, update);
+    }
 }
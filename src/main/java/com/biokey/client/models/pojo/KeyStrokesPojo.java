@@ -5,16 +5,37 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.Data;
 import lombok.NonNull;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Deque;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 @Data
 @JsonIgnoreProperties(value = { "syncedWithServer" })
 public class KeyStrokesPojo implements Serializable {
 
+    private static final AtomicReferenceFieldUpdater<KeyStrokesPojo, SyncStatusConstants> SYNCED_WITH_SERVER =
+            AtomicReferenceFieldUpdater.newUpdater(KeyStrokesPojo.class, SyncStatusConstants.class, "syncedWithServer");
+
     private static final long serialVersionUID = 270;
 
     @NonNull private Deque<KeyStrokePojo> keyStrokes = new LinkedBlockingDeque<>();
-    @NonNull private SyncStatusConstants syncedWithServer = SyncStatusConstants.UNSYNCED;
+    @NonNull private volatile SyncStatusConstants syncedWithServer = SyncStatusConstants.UNSYNCED;
+
+    /**
+     * Change the sync status only if no other thread has changed it since it was expected.
+     *
+     * @return true if the sync status was expect and is now update
+     */
+    public boolean compareAndSetSyncedWithServer(@NonNull SyncStatusConstants expect, @NonNull SyncStatusConstants update) {
+        return SYNCED_WITH_SERVER.compareAndSet(this, expect, update);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // A request that was sending the window when it was saved did not survive the restart.
+        if (syncedWithServer == SyncStatusConstants.SYNCING) syncedWithServer = SyncStatusConstants.UNSYNCED;
+    }
 }
@@ -1,6 +1,9 @@
 package com.biokey.client.providers;
 
 import com.biokey.client.controllers.ClientStateController;
+import com.biokey.client.helpers.ClientStateJournalHelper;
+import com.biokey.client.helpers.ClientStatePersisterHelper;
+import com.biokey.client.helpers.KeyStrokeRetentionHelper;
 import com.biokey.client.helpers.RequestBuilderHelper;
 import com.biokey.client.helpers.ServerRequestExecutorHelper;
 import com.biokey.client.models.ClientStateModel;
@@ -9,8 +12,17 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
+import java.nio.file.Paths;
 import java.util.concurrent.Executors;
 
+import static com.biokey.client.constants.AppConstants.KEYSTROKE_ARCHIVE_CAPACITY;
+import static com.biokey.client.constants.AppConstants.KEYSTROKE_ARCHIVE_ENABLED;
+import static com.biokey.client.constants.AppConstants.KEYSTROKE_ARCHIVE_FILE;
+import static com.biokey.client.constants.AppConstants.KEYSTROKE_RETENTION_AGE;
+import static com.biokey.client.constants.AppConstants.KEYSTROKE_RETENTION_COUNT;
+import static com.biokey.client.constants.AppConstants.SAVE_MAX_DELAY;
+import static com.biokey.client.constants.EngineConstants.WARM_UP_MAX_AGE;
+
 
 /**
  * Configuration class that provides the singleton instances relating to the client state.
@@ -21,12 +33,35 @@ public class ClientStateProvider {
 
     @Bean
     @Autowired
-    public ClientStateController clientStateController(ServerRequestExecutorHelper serverRequestExecutorHelper) {
-        return new ClientStateController(clientStateModel(), serverRequestExecutorHelper);
+    public ClientStateController clientStateController(ClientStateModel clientStateModel,
+                                                       ServerRequestExecutorHelper serverRequestExecutorHelper) {
+        ClientStateController clientStateController = new ClientStateController(clientStateModel, serverRequestExecutorHelper);
+        if (KEYSTROKE_ARCHIVE_ENABLED) {
+            clientStateController.archiveKeyStrokes(Paths.get(KEYSTROKE_ARCHIVE_FILE), KEYSTROKE_ARCHIVE_CAPACITY, WARM_UP_MAX_AGE);
+            Runtime.getRuntime().addShutdownHook(new Thread(clientStateController::closeKeyStrokeArchive));
+        }
+        return clientStateController;
+    }
+
+    @Bean
+    @Autowired
+    public ClientStateModel clientStateModel(ClientStateJournalHelper clientStateJournalHelper) {
+        ClientStateModel clientStateModel = new ClientStateModel(Executors.newFixedThreadPool(5));
+        clientStateModel.setJournal(clientStateJournalHelper);
+        return clientStateModel;
     }
 
     @Bean
-    public ClientStateModel clientStateModel() {
-        return new ClientStateModel(Executors.newFixedThreadPool(5));
+    @Autowired
+    public KeyStrokeRetentionHelper keyStrokeRetentionHelper(ClientStateModel clientStateModel) {
+        return new KeyStrokeRetentionHelper(clientStateModel, KEYSTROKE_RETENTION_COUNT, KEYSTROKE_RETENTION_AGE);
+    }
+
+    @Bean
+    @Autowired
+    public ClientStatePersisterHelper clientStatePersisterHelper(ClientStateJournalHelper clientStateJournalHelper,
+                                                                 ClientStateModel clientStateModel,
+                                                                 KeyStrokeRetentionHelper keyStrokeRetentionHelper) {
+        return new ClientStatePersisterHelper(clientStateJournalHelper, clientStateModel, keyStrokeRetentionHelper, SAVE_MAX_DELAY);
     }
 }
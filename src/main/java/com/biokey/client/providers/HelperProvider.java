@@ -1,10 +1,16 @@
 package com.biokey.client.providers;
 
+import com.biokey.client.helpers.ClientStateJournalHelper;
 import com.biokey.client.helpers.ServerRequestExecutorHelper;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.Executors;
+import java.nio.file.Paths;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.biokey.client.constants.AppConstants.*;
 
 /**
  * Configuration class that provides the singleton instances of any helpers.
@@ -14,7 +20,16 @@ public class HelperProvider {
 
     @Bean
     public ServerRequestExecutorHelper serverRequestExecutorHelper() {
-        // Use a cached thread pool to save resources by reusing threads and also terminating threads if client is idle.
-        return new ServerRequestExecutorHelper(Executors.newCachedThreadPool());
+        // Use a bounded thread pool, so that an outage queues requests instead of starting a thread for each of them.
+        // Threads still terminate if the client is idle.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(SERVER_REQUEST_THREADS, SERVER_REQUEST_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(SERVER_REQUEST_QUEUE_SIZE));
+        executor.allowCoreThreadTimeOut(true);
+        return new ServerRequestExecutorHelper(executor);
+    }
+
+    @Bean
+    public ClientStateJournalHelper clientStateJournalHelper() {
+        return new ClientStateJournalHelper(Paths.get(CLIENT_STATE_DIRECTORY));
     }
 }
@@ -2,6 +2,8 @@ package com.biokey.client.providers;
 
 import com.biokey.client.controllers.ClientStateController;
 import com.biokey.client.controllers.challenges.IChallengeStrategy;
+import com.biokey.client.helpers.ClientStateJournalHelper;
+import com.biokey.client.helpers.ClientStatePersisterHelper;
 import com.biokey.client.models.ClientStateModel;
 import com.biokey.client.services.*;
 import com.biokey.client.views.frames.LockFrameView;
@@ -37,9 +39,11 @@ public class ServiceProvider {
     @Autowired
     public ClientInitService clientInitService(
             ClientStateController clientStateController, ClientStateModel clientStateModel,
+            ClientStateJournalHelper clientStateJournalHelper, ClientStatePersisterHelper clientStatePersisterHelper,
             LockFrameView lockFrameView, LoginPanelView loginPanelView, TrayFrameView trayFrameView) {
 
-        return new ClientInitService(clientStateController, clientStateModel, lockFrameView, loginPanelView, trayFrameView);
+        return new ClientInitService(clientStateController, clientStateModel, clientStateJournalHelper,
+                clientStatePersisterHelper, lockFrameView, loginPanelView, trayFrameView);
     }
 
     @Bean
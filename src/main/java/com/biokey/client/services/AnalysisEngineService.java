@@ -6,23 +6,26 @@ import com.biokey.client.constants.SecurityConstants;
 import com.biokey.client.controllers.ClientStateController;
 import com.biokey.client.models.ClientStateModel;
 import com.biokey.client.models.pojo.*;
+import com.biokey.client.services.engine.CompiledProfile;
+import com.biokey.client.services.engine.FeaturePipeline;
+import com.biokey.client.services.engine.IAnalysisModel;
+import com.biokey.client.services.engine.KerasProcessModel;
+import com.biokey.client.services.engine.KeyEventRing;
+import com.biokey.client.services.engine.LstmEnsembleModel;
+import com.biokey.client.services.engine.PredictionScheduler;
+import com.biokey.client.services.engine.SlidingFeatureEngine;
 import com.biokey.client.views.frames.TrayFrameView;
 import com.biokey.client.views.panels.AnalysisResultTrayPanelView;
 
-import com.google.common.collect.EvictingQueue;
-
-import com.google.common.collect.Queues;
-import lombok.Data;
 import org.apache.log4j.Logger;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 import java.io.*;
 
@@ -30,142 +33,33 @@ import java.io.*;
  * Service that runs the analysis model and reports analysis results that represent the likelihood that the user's
  * typing matches their current profile.
  */
-public class AnalysisEngineService implements ClientStateModel.IClientStatusListener, ClientStateModel.IClientKeyListener {
+public class AnalysisEngineService implements ClientStateModel.IClientStatusListener, ClientStateModel.IClientOrderedKeyListener {
 
     private static Logger log = Logger.getLogger(AnalysisEngineService.class);
 
-    @Data
-    private class KeyDownEvent {
-        private long downTime;
-        private long seqNumber;
-        private int key;
-
-        public KeyDownEvent(int key, long downTime) {
-            this.key = key;
-            this.downTime = downTime;
-            this.seqNumber = engineSeqNumber++;
-        }
-    }
-
-    @Data
-    private class KeySequence {
-        private String sequence;
-        private long duration;
-        private long indexStart;
-        private long indexEnd;
-        private double score;
-
-        public KeySequence(String sequence, long duration, long indexStart, long indexEnd, double score) {
-            this.sequence = sequence;
-            this.duration = duration;
-            this.indexStart = indexStart;
-            this.indexEnd = indexEnd;
-            this.score = score;
-        }
-
-        public String toString() {
-            return sequence + "( " + duration + "ms, " + indexStart + " - " + indexEnd + " ) | " + score;
-        }
-    }
-
-    private class KerasModel {
-        private BufferedReader in;
-        private BufferedWriter out;
-        private boolean initialized = false;
-        private Process p;
-
-        public KerasModel() {
-            try {
-                ProcessBuilder pb = new ProcessBuilder("python", "D:\\Documents\\GitHub\\biokey-client\\src\\main\\resources\\com\\biokey\\client\\services\\model.py");
-                p = pb.start();
-                in = new BufferedReader(new InputStreamReader(p.getInputStream()));
-                out = new BufferedWriter(new OutputStreamWriter(p.getOutputStream()));
-
-                BufferedReader err = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-
-                Runnable logErrors = () -> {
-                    String error;
-                    try {
-                        while((error = err.readLine()) != null) {
-                            log.error(error);
-                        }
-                    }
-                    catch (Exception e) {
-                        log.error("Keras error", e);
-                    }
-                };
-                (new Thread(logErrors)).start();
-            } catch(Exception e) {
-                log.error("Keras error", e);
-            }
-        }
-
-        public boolean init(String payload) {
-            try {
-                out.write("init: " + payload);
-                out.newLine();
-                out.flush();
-                String result = in.readLine();
-                log.debug(result);
-                initialized = result.equals("INIT: true");
-                return initialized;
-            }
-            catch(Exception e) {
-                log.error("Could not init.", e);
-            }
-            return false;
-
-        }
-
-        public double predict(String payload) {
-            if (!initialized) {
-                log.error("Model must be initialized before predictions can be made");
-                return -1;
-            }
-            try {
-                out.write("predict: " + payload);
-                out.newLine();
-                out.flush();
-                String response = in.readLine();
-                log.debug(response + " ("+engineSeqNumber+")");
-                double result = Double.parseDouble(response.replaceFirst("PREDICT: ", ""));
-                return result;
-            }
-            catch(Exception e) {
-                log.error("Could not predict.", e);
-            }
-            return -1;
-
-        }
-
-        public void kill() {
-            if (p != null) p.destroy();
-        }
-
-        public boolean isRunning() {
-            return (p != null && p.isAlive());
-        }
-    }
-
     private final ClientStateController controller;
     private final ClientStateModel state;
     private final AnalysisResultTrayPanelView analysisResultTrayPanelView;
 
     // Buffer Variables
-    private static long engineSeqNumber = 0;
-    private Stack<KeyDownEvent> currentSequence;
-    private HashMap<Integer, Stack<KeyDownEvent>> runningSequences;
-    private ArrayList<KeySequence> completedSequences;
-
     private int sizeOfEvictingQueue = 100;
-    private int featureSize;
-    private Queue<List<Double>> rawQueue;
-    private Queue<List<Double>> queue40;
-    private Queue<List<Double>> queue100;
-
-    private KerasModel model;
-
-    private final Lock lock = new ReentrantLock(true);
+    private final FeaturePipeline features = new FeaturePipeline(sizeOfEvictingQueue);
+    // Snapshot of the current engine model, replaced when a status with a new model arrives.
+    private volatile CompiledProfile profile;
+    // Profile the feature engine and model were started with, owned by the pipeline thread.
+    private CompiledProfile analysisProfile;
+
+    private final Supplier<IAnalysisModel> modelFactory;
+    private IAnalysisModel model;
+
+    // Key events and status changes are handed to a single pipeline thread that owns all of the engine state.
+    private final KeyEventRing keyEvents = new KeyEventRing(EngineConstants.KEY_EVENT_RING_SIZE);
+    private final KeyEventRing.IKeyEventHandler keyEventHandler = this::onKeyEvent;
+    private final Queue<Runnable> statusTasks = new ConcurrentLinkedQueue<>();
+    private final Thread pipeline;
+    private volatile boolean isStopped = false;
+    private long reportedDrops = 0;
+    private final PredictionScheduler scheduler = new PredictionScheduler(EngineConstants.BACKPRESSURE_POLICY);
 
     // TODO: delete once the fake is no longer needed.
     // private FakeAnalysisFrameView frame = new FakeAnalysisFrameView();
@@ -175,13 +69,7 @@ public class AnalysisEngineService implements ClientStateModel.IClientStatusList
     @Autowired
     public AnalysisEngineService(ClientStateController controller, ClientStateModel state, TrayFrameView trayFrameView,
                                  AnalysisResultTrayPanelView analysisResultTrayPanelView) {
-        this.controller = controller;
-        this.state = state;
-        this.analysisResultTrayPanelView = analysisResultTrayPanelView;
-
-        currentSequence = new Stack<>();
-        runningSequences = new HashMap<>();
-        completedSequences = new ArrayList<>();
+        this(controller, state, AnalysisEngineService::createModel, analysisResultTrayPanelView);
 
         trayFrameView.addPanel(analysisResultTrayPanelView.getAnalysisResultTrayPanel());
 
@@ -204,6 +92,36 @@ public class AnalysisEngineService implements ClientStateModel.IClientStatusList
 
     }
 
+    /**
+     * Create an engine without any view, which only reports its results to the controller. Used by tools that replay
+     * recorded key strokes without a display.
+     */
+    public AnalysisEngineService(ClientStateController controller, ClientStateModel state) {
+        this(controller, state, AnalysisEngineService::createModel, null);
+    }
+
+    /**
+     * Create an engine without any view that runs the models made by the factory, so that inference backends can be
+     * compared on the same key strokes.
+     */
+    public AnalysisEngineService(ClientStateController controller, ClientStateModel state,
+                                 Supplier<IAnalysisModel> modelFactory) {
+        this(controller, state, modelFactory, null);
+    }
+
+    private AnalysisEngineService(ClientStateController controller, ClientStateModel state,
+                                  Supplier<IAnalysisModel> modelFactory,
+                                  AnalysisResultTrayPanelView analysisResultTrayPanelView) {
+        this.controller = controller;
+        this.state = state;
+        this.modelFactory = modelFactory;
+        this.analysisResultTrayPanelView = analysisResultTrayPanelView;
+
+        pipeline = new Thread(this::runPipeline, "analysis-engine");
+        pipeline.setDaemon(true);
+        pipeline.start();
+    }
+
     /**
      * Implementation of listener to the ClientStateModel's status. The status will contain the details
      * on the analysis model to run through the typing profile.
@@ -214,16 +132,94 @@ public class AnalysisEngineService implements ClientStateModel.IClientStatusList
                 newStatus.getAuthStatus() == AuthConstants.AUTHENTICATED &&
                 newStatus.getSecurityStatus() == SecurityConstants.UNLOCKED &&
                 newStatus.getProfile() != null && newStatus.getProfile().getModel() != null)  {
-            start();
+            // Compile the profile here so that the pipeline never has to read the status.
+            EngineModelPojo modelDef = newStatus.getProfile().getModel();
+            CompiledProfile current = profile;
+            CompiledProfile compiled = (current == null || current.getModel() != modelDef) ? CompiledProfile.compile(modelDef) : current;
+            profile = compiled;
+            statusTasks.add(() -> startAnalysis(compiled));
         }
-        else stop();
+        else statusTasks.add(this::stopAnalysis);
+        LockSupport.unpark(pipeline);
     }
 
     /**
      * Implementation of listener to the ClientStateModel's keystroke queues. New keys need to be fed into the model.
+     * Called on the thread that enqueued the key, possibly several at once, so the key is only queued for the pipeline
+     * thread.
      */
     public void keystrokeQueueChanged(KeyStrokePojo e, boolean isDeleteEvent) {
-        if (isDeleteEvent) return;
+        if (isDeleteEvent || e == null) return;
+        keyEvents.publish(e.getKey(), e.isKeyDown(), e.getTimeStamp());
+    }
+
+    /**
+     * Stop the engine for good and end its pipeline thread, waiting for the thread to finish. Key events still queued
+     * are not analyzed.
+     */
+    public void stop() {
+        isStopped = true;
+        LockSupport.unpark(pipeline);
+        if (Thread.currentThread() == pipeline) return;
+        try {
+            pipeline.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of predictions made, each reported as one analysis result.
+     */
+    public long getPredictions() {
+        return scheduler.getPredictions();
+    }
+
+    /**
+     * @return the number of updates of the model inputs that did not get an analysis result of their own, because
+     *         they were coalesced into the prediction for a later key.
+     */
+    public long getCoalescedUpdates() {
+        return scheduler.getCoalescedUpdates();
+    }
+
+    /**
+     * Run status changes and key events on the pipeline thread, waiting for more when there are none, until the engine
+     * is stopped or the thread interrupted.
+     */
+    private void runPipeline() {
+        while (!isStopped && !Thread.currentThread().isInterrupted()) {
+            try {
+                Runnable task;
+                while ((task = statusTasks.poll()) != null) task.run();
+
+                if (keyEvents.drain(keyEventHandler) == 0) keyEvents.awaitEvents(EngineConstants.PIPELINE_IDLE_WAIT, TimeUnit.MILLISECONDS);
+
+                if (keyEvents.getDropped() != reportedDrops) {
+                    log.warn("Analysis engine fell behind and dropped " + (keyEvents.getDropped() - reportedDrops) + " key events");
+                    reportedDrops = keyEvents.getDropped();
+                }
+            }
+            catch (Exception e) {
+                log.error("Analysis engine could not process key events.", e);
+            }
+        }
+        stopAnalysis();
+    }
+
+    /**
+     * Handle a key event on the pipeline thread. The model is then told the engine is done with the key.
+     */
+    private void onKeyEvent(int key, boolean keyDown, long timeStamp, boolean endOfBatch) {
+        processKeyEvent(key, keyDown, timeStamp);
+        if (scheduler.isPredictionDue(endOfBatch)) predict();
+        state.keyStrokesConsumed(timeStamp);
+    }
+
+    /**
+     * Feed a key event into the model.
+     */
+    private void processKeyEvent(int key, boolean keyDown, long timeStamp) {
 
         /*
         try {
@@ -236,62 +232,28 @@ public class AnalysisEngineService implements ClientStateModel.IClientStatusList
         }
         */
 
-        if (e.isKeyDown()) {
-            KeyDownEvent lastKey = (currentSequence.isEmpty() ? null : currentSequence.peek());
-            KeyDownEvent newKey = new KeyDownEvent(e.getKey(), e.getTimeStamp());
-
-            if (lastKey != null && newKey.getDownTime() - lastKey.getDownTime() > EngineConstants.SEQ_THRESHOLD) {
-                // If a new sequence should start
-                currentSequence = new Stack<>();
-            }
-
-            currentSequence.add(newKey);
-            runningSequences.put(newKey.key, (Stack<KeyDownEvent>)currentSequence.clone());
-        }
-        else {
-            Stack<KeyDownEvent> sequencesToFinish = runningSequences.replace(e.getKey(), null);
-            if (sequencesToFinish == null) return;
-
-            String runningSequence = "";
-            long finishTime = e.getTimeStamp();
-
-            KeyDownEvent lastKey = (sequencesToFinish.isEmpty() ? null : sequencesToFinish.peek());
-            if (lastKey == null) return;
-            while(!sequencesToFinish.isEmpty()) {
-                KeyDownEvent startKey = sequencesToFinish.pop();
-
-                runningSequence = startKey.getKey() + (runningSequence.length() == 0 ? "" : "-" + runningSequence);
-                long duration = finishTime - startKey.getDownTime();
-
-                state.obtainAccessToStatus();
-                GaussianFeaturePojo stats = state.getCurrentStatus().getProfile().getModel().getGaussianProfile().get(runningSequence);
-                state.releaseAccessToStatus();
-                if (stats != null) {
-                    double mean = stats.getMean();
-                    double stdev = stats.getStdev();
-                    double score = Math.exp(-Math.pow(Math.log(duration)-mean, 2)/(2*Math.pow(stdev, 2)));
-                    KeySequence newSequence = new KeySequence(runningSequence, duration, startKey.getSeqNumber(), engineSeqNumber, score);
-                    completedSequences.add(newSequence);
-                }
-            }
-            analyze();
-        }
+        if (features.keyEvent(analysisProfile, key, keyDown, timeStamp)) analyze(timeStamp);
     }
 
     /**
-     * Start running the analysis engine.
+     * Start running the analysis engine with the profile, restarting it if it runs another one.
+     *
+     * @param profile the compiled profile of the status that started the analysis
      */
-    private void start() {
-        if (isRunning) return;
+    private void startAnalysis(CompiledProfile profile) {
+        if (isRunning) {
+            if (profile == analysisProfile) return;
+            stopAnalysis();
+        }
 
-        state.obtainAccessToStatus();
-        featureSize = state.getCurrentStatus().getProfile().getModel().getGaussianProfile().keySet().size();
-        EngineModelPojo modelDef = state.getCurrentStatus().getProfile().getModel();
-        state.releaseAccessToStatus();
+        analysisProfile = profile;
+        EngineModelPojo modelDef = profile.getModel();
 
-        rawQueue = Queues.synchronizedQueue(EvictingQueue.create(sizeOfEvictingQueue));
-        queue40 = Queues.synchronizedQueue(EvictingQueue.create(sizeOfEvictingQueue));
-        queue100 = Queues.synchronizedQueue(EvictingQueue.create(sizeOfEvictingQueue));
+        // Keep the sequences completed so far unless the profile has a different number of features.
+        if (features.reset(profile.getFeatureSize())) {
+            // Before any key has been typed, pick up from the recent typing in the archive instead of starting cold.
+            if (features.getSeqNumber() == 0) warmUp();
+        }
 
 
         /*
@@ -311,33 +273,18 @@ public class AnalysisEngineService implements ClientStateModel.IClientStatusList
         */
 
         if (model != null && model.isRunning()) model.kill();
-        model = new KerasModel();
+        model = modelFactory.get();
 
         try {
             // Read in model
-            JSONParser parser = new JSONParser();
-            JSONObject payload = (JSONObject) parser.parse(new FileReader("D:\\Documents\\GitHub\\biokey-client\\src\\main\\resources\\com\\biokey\\client\\services\\ensemble-c-2.json"));
-
-            // Read in reset frames
-            JSONObject resetFrames = (JSONObject) parser.parse(new FileReader("D:\\Documents\\GitHub\\biokey-client\\src\\main\\resources\\com\\biokey\\client\\services\\reset-frames.json"));
-            ((JSONArray)resetFrames.get("x_raw")).forEach((raw) -> {
-                rawQueue.add((List<Double>)raw);
-            });
-            ((JSONArray)resetFrames.get("x_40")).forEach((raw) -> {
-                queue40.add((List<Double>)raw);
-            });
-            ((JSONArray)resetFrames.get("x_100")).forEach((raw) -> {
-                queue100.add((List<Double>)raw);
-            });
-
-/*
-            JSONObject payload = new JSONObject();
-            payload.put("model", parser.parse(modelDef.getModel()));
-            payload.put("weights", parser.parse(modelDef.getWeights()));
-
-*/
-            boolean initResult = model.init(payload.toJSONString());
-            log.debug("Initialized Python Server: " + initResult);
+            String payload = LstmEnsembleModel.payloadOf(modelDef);
+            if (payload == null) payload = new JSONParser().parse(new FileReader(EngineConstants.MODEL_PAYLOAD_PATH)).toString();
+
+            // Read in reset frames, the ones bundled with the client if there are none at the configured path.
+            features.pushFrames(FeaturePipeline.readResetFrames());
+
+            boolean initResult = model.init(payload);
+            log.debug("Initialized " + model.getClass().getSimpleName() + ": " + initResult);
         }
         catch (Exception e) {
             log.error("Could not parse model or frames.", e);
@@ -349,100 +296,70 @@ public class AnalysisEngineService implements ClientStateModel.IClientStatusList
         // frame.setVisible(true);
     }
 
+    /**
+     * @return the model the engine runs unless it is given another.
+     */
+    private static IAnalysisModel createModel() {
+        return EngineConstants.USE_NATIVE_INFERENCE ? new LstmEnsembleModel() : new KerasProcessModel();
+    }
+
+    /**
+     * Feed the most recent archived key strokes into the feature engine. No results are reported while the engine is
+     * not running, so only the sequences are kept.
+     */
+    private void warmUp() {
+        long oldest = System.currentTimeMillis() - EngineConstants.WARM_UP_MAX_AGE;
+        long from = Math.max(0, controller.getArchivedKeyStrokeCount() - EngineConstants.WARM_UP_KEYSTROKES);
+        long to = controller.readArchivedKeyStrokes(from, (int key, boolean keyDown, long timeStamp) -> {
+            if (timeStamp >= oldest) processKeyEvent(key, keyDown, timeStamp);
+        });
+        if (to > from) log.debug("Warmed up the feature engine with " + features.getFeatureEngine().getRetainedSequences() + " archived sequences");
+    }
+
     /**
      * Stop running the analysis engine.
      */
-    private void stop() {
+    private void stopAnalysis() {
         if (model != null && model.isRunning()) {
             model.kill();
             model = null;
         }
+        scheduler.reset();
+        if (isRunning) {
+            log.info("Analysis engine made " + scheduler.getPredictions() + " predictions, coalescing "
+                    + scheduler.getCoalescedUpdates() + " other input updates into them");
+        }
+        SlidingFeatureEngine featureEngine = features.getFeatureEngine();
+        if (featureEngine != null) {
+            log.debug("Feature engine retains " + featureEngine.getRetainedSequences() + " sequences in about "
+                    + featureEngine.getRetainedBytes() + " bytes");
+        }
         isRunning = false;
         // TODO: delete once the fake is no longer needed.
         // frame.setVisible(false);
     }
 
     /**
-     * Use the current keystroke data to generate the likelihood that the user's typing matches their current profile.
+     * Use the current keystroke data to update the model inputs. The prediction is left to the scheduler.
+     *
+     * @param timeStamp the time of the key that completed the sequences
      */
-    private void analyze() {
+    private void analyze(long timeStamp) {
         if (!isRunning) return;
-        // TODO: delete once the fake is no longer needed.
-        try {
-            lock.lock();
-            state.obtainAccessToStatus();
-            HashMap<String, GaussianFeaturePojo> gaussianProfile = state.getCurrentStatus().getProfile().getModel().getGaussianProfile();
-            state.releaseAccessToStatus();
-
-            List<Double> individualFeatureVector = new ArrayList<>();
-            List<Double> frame40FeatureVector = new ArrayList<>();
-            List<Double> frame100FeatureVector = new ArrayList<>();
-
-
-            for (int i = 0; i < featureSize; i++) {
-                individualFeatureVector.add(0.0);
-                frame40FeatureVector.add(0.5);
-                frame100FeatureVector.add(0.5);
-            }
-
-            Map<String, Double> frame100 = completedSequences
-                    .stream()
-                    .filter(s -> engineSeqNumber - s.getIndexStart() <= 100)
-                    .collect(
-                            Collectors.groupingBy(
-                                    KeySequence::getSequence,
-                                    Collectors.averagingDouble(KeySequence::getScore)));
-
-            Map<String, Double> frame40 = completedSequences
-                    .stream()
-                    .filter(s -> engineSeqNumber - s.getIndexStart() <= 40)
-                    .collect(
-                            Collectors.groupingBy(
-                                    KeySequence::getSequence,
-                                    Collectors.averagingDouble(KeySequence::getScore)));
-
-            Map<String, Double> frameRaw = completedSequences
-                    .stream()
-                    .filter(s -> engineSeqNumber-1  == s.getIndexEnd())
-                    .filter(s -> s.getDuration() > 0)
-                    .collect(Collectors.toMap(KeySequence::getSequence, s -> Math.log(s.getDuration())));
-
-            frameRaw.forEach((seq, score) -> {
-                individualFeatureVector.set(gaussianProfile.get(seq).getIndex(), score);
-            });
-
-            frame40.forEach((seq,score)->{
-                frame40FeatureVector.set(gaussianProfile.get(seq).getIndex(), score);
-            });
-
-            frame100.forEach((seq,score)->{
-                frame100FeatureVector.set(gaussianProfile.get(seq).getIndex(), score);
-            });
-
-
-            rawQueue.add(individualFeatureVector);
-            queue40.add(frame40FeatureVector);
-            queue100.add(frame100FeatureVector);
-
-
-            JSONObject inputs = new JSONObject();
-            inputs.put("x_raw", rawQueue);
-            inputs.put("x_40", queue40);
-            inputs.put("x_100", queue100);
-
-
-            if (model != null) {
-                float pred = (float)model.predict(inputs.toJSONString());
-                controller.enqueueAnalysisResult(new AnalysisResultPojo(System.currentTimeMillis(), pred));
-                analysisResultTrayPanelView.setAnalysisResultText(pred);
-            }   
+        features.updateWindows();
+        scheduler.inputsUpdated(timeStamp);
+    }
 
+    /**
+     * Generate the likelihood that the user's typing matches their current profile and report it.
+     */
+    private void predict() {
+        if (!isRunning || model == null) {
+            scheduler.reset();
+            return;
         }
-        finally {
-            lock.unlock();
-        }
-        // frame.informationLabel.setText("analyze() was called.");
-
-
+        AnalysisResultPojo result = scheduler.predict(model, features.getRawWindow(), features.getShortWindow(), features.getLongWindow());
+        controller.enqueueAnalysisResult(result);
+        if (analysisResultTrayPanelView != null) analysisResultTrayPanelView.setAnalysisResultText(result.getProbability());
     }
 }
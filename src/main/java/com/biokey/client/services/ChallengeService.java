@@ -24,6 +24,11 @@ import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
 
+import static com.biokey.client.constants.AppConstants.CHALLENGE_AVERAGE_THRESHOLD;
+import static com.biokey.client.constants.AppConstants.CHALLENGE_LONG_WINDOW;
+import static com.biokey.client.constants.AppConstants.CHALLENGE_LOW_SCORE;
+import static com.biokey.client.constants.AppConstants.CHALLENGE_LOW_SCORE_COUNT;
+import static com.biokey.client.constants.AppConstants.CHALLENGE_SHORT_WINDOW;
 import static com.biokey.client.constants.AppConstants.DEFAULT_THRESHOLD;
 import static com.biokey.client.constants.AppConstants.MAX_CHALLENGE_ATTEMPTS;
 
@@ -170,19 +175,20 @@ public class ChallengeService implements ClientStateModel.IClientStatusListener,
             if (newResult == null || state.getCurrentStatus() == null) return;
 
             previous20Results.add(newResult.getProbability());
-            if (previous20Results.size()>20) previous20Results.take();
+            if (previous20Results.size()>CHALLENGE_LONG_WINDOW) previous20Results.take();
             previous10Results.add(newResult.getProbability());
-            if (previous10Results.size()>10) previous10Results.take();
+            if (previous10Results.size()>CHALLENGE_SHORT_WINDOW) previous10Results.take();
             double sum20 = previous20Results.stream().mapToDouble(f -> f.doubleValue()).sum();
-            double average20 = sum20/20;
+            double average20 = sum20/CHALLENGE_LONG_WINDOW;
 
-            long countLast10Below20Percent = previous10Results.stream().filter(f -> f<=0.2).count();
+            long countLast10Below20Percent = previous10Results.stream().filter(f -> f<=CHALLENGE_LOW_SCORE).count();
 
-            if (previous20Results.size()<20) return; //this is the 20 key buffer
+            if (previous20Results.size()<CHALLENGE_LONG_WINDOW) return; //this is the 20 key buffer
 
             // If newResult does not meet the threshold then issueChallenges.
             // TODO: How the threshold works is largely up to the analysis engine.
-            if (newResult.getProbability() < 0 || average20 < 0.30 || countLast10Below20Percent >= 5) {
+            if (newResult.getProbability() < 0 || average20 < CHALLENGE_AVERAGE_THRESHOLD ||
+                    countLast10Below20Percent >= CHALLENGE_LOW_SCORE_COUNT) {
                 state.obtainAccessToStatus();
                 try {
                     ClientStatusPojo currentStatus = state.getCurrentStatus();
@@ -3,6 +3,8 @@ package com.biokey.client.services;
 import com.biokey.client.constants.AuthConstants;
 import com.biokey.client.constants.SecurityConstants;
 import com.biokey.client.controllers.ClientStateController;
+import com.biokey.client.helpers.ClientStateJournalHelper;
+import com.biokey.client.helpers.ClientStatePersisterHelper;
 import com.biokey.client.helpers.PojoHelper;
 import com.biokey.client.models.ClientStateModel;
 import com.biokey.client.models.pojo.AnalysisResultPojo;
@@ -39,6 +41,8 @@ public class ClientInitService implements
 
     private final ClientStateController controller;
     private final ClientStateModel state;
+    private final ClientStateJournalHelper journal;
+    private final ClientStatePersisterHelper persister;
     private final LockFrameView lockFrameView;
     private final LoginPanelView loginPanelView;
     private final TrayFrameView trayFrameView;
@@ -47,20 +51,29 @@ public class ClientInitService implements
     private int newKeyCount = 0;
     private int newResultCount = 0;
 
+    // Milliseconds taken by the last restore, NOT_MEASURED until each step is done.
+    private static final long NOT_MEASURED = -1;
+    private volatile long restoreStartTime = 0;
+    private volatile long statusRestoreTime = NOT_MEASURED;
+    private volatile long backlogRestoreTime = NOT_MEASURED;
+    private volatile long timeToFirstProtectedKeyStroke = NOT_MEASURED;
+
     private Timer heartbeatTimer = new Timer(true);
     private Timer loginTimer = new Timer(true);
 
     @Autowired
-    public ClientInitService(ClientStateController controller, ClientStateModel state,
-                             LockFrameView lockFrameView, LoginPanelView loginPanelView, TrayFrameView trayFrameView)  {
+    public ClientInitService(ClientStateController controller, ClientStateModel state, ClientStateJournalHelper journal,
+                             ClientStatePersisterHelper persister, LockFrameView lockFrameView, LoginPanelView loginPanelView, TrayFrameView trayFrameView)  {
 
         this.controller = controller;
         this.state = state;
+        this.journal = journal;
+        this.persister = persister;
         this.lockFrameView = lockFrameView;
         this.loginPanelView = loginPanelView;
         this.trayFrameView = trayFrameView;
 
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> saveClientState()));
+        Runtime.getRuntime().addShutdownHook(new Thread(persister::saveNow));
 
         // Add action to login loginPanelView on submit.
         loginPanelView.addSubmitAction((ActionEvent e) -> {
@@ -140,6 +153,10 @@ public class ClientInitService implements
      * The service will save the client state periodically.
      */
     public void keystrokeQueueChanged(KeyStrokePojo newKey, boolean isDeleteEvent) {
+        if (!isDeleteEvent && statusRestoreTime != NOT_MEASURED && timeToFirstProtectedKeyStroke == NOT_MEASURED) {
+            timeToFirstProtectedKeyStroke = elapsedSinceRestoreStart();
+            log.debug("First key stroke after the restore arrived " + timeToFirstProtectedKeyStroke + " ms after it started");
+        }
         if (isDeleteEvent || ++newKeyCount >= KEYSTROKE_WINDOW_SIZE_PER_SAVE) {
             newKeyCount = 0;
             saveClientState();
@@ -161,20 +178,31 @@ public class ClientInitService implements
     /**
      * Entry point into this service. Tries to retrieve the client state and in the process
      * calls the {@link #checkCorrupt()} and at least one of the login functions.
+     * Only the statuses are retrieved before returning, the key strokes and analysis results follow on another thread.
      */
     public void retrieveClientState() {
         ClientStateModel fromMemory;
+        boolean fromPreferences = false;
+        restoreStartTime = System.nanoTime();
+        statusRestoreTime = NOT_MEASURED;
+        backlogRestoreTime = NOT_MEASURED;
+        timeToFirstProtectedKeyStroke = NOT_MEASURED;
 
         // Ensure no saves are currently happening.
         state.obtainAccessToModel();
         try {
-            fromMemory = retrieveFromPreferences();
+            fromMemory = journal.readStatus();
+            // Older clients saved the whole state to Preferences, move it over to the journal.
+            if (fromMemory == null && prefs.getInt(CLIENT_STATE_PREFERENCES_ID + ".blocks", 0) > 0) {
+                fromMemory = retrieveFromPreferences();
+                fromPreferences = true;
+            }
             if (fromMemory == null) {
                 loginWithoutModel();
                 return;
             }
         } catch (Exception e) {
-            log.debug("Could not retrieve initial client state from preferences", e);
+            log.debug("Could not retrieve initial client state from disk", e);
             loginWithoutModel();
             return;
         } finally {
@@ -183,8 +211,21 @@ public class ClientInitService implements
 
         // TODO: checkCorrupt()
         if (controller.checkStateModel(fromMemory)) {
-            log.debug("Retrieved client state from preferences");
-            controller.passStateToModel(fromMemory);
+            if (fromPreferences) {
+                // Passing the state to the model also writes a snapshot of it, after which the preferences are not needed.
+                controller.passStateToModel(fromMemory);
+                statusRestoreTime = elapsedSinceRestoreStart();
+                backlogRestoreTime = statusRestoreTime;
+                journal.sync();
+                clearPreferences();
+            }
+            else {
+                controller.passStatusToModel(fromMemory);
+                // Measured before the backlog restore starts, so the status never looks slower than the backlog.
+                statusRestoreTime = elapsedSinceRestoreStart();
+                restoreBacklog();
+            }
+            log.debug("Retrieved client status from " + (fromPreferences ? "preferences" : "disk") + " in " + statusRestoreTime + " ms");
             // Don't try to login here because the retrieved model might lock the computer.
             // We should only try to login after the computer is unlocked.
         }
@@ -192,7 +233,54 @@ public class ClientInitService implements
     }
 
     /**
-     * Retrieve model from preferences.
+     * Read the saved key strokes and analysis results on a background thread and put them in front of the ones
+     * enqueued since the statuses were retrieved.
+     */
+    private void restoreBacklog() {
+        Thread restore = new Thread(() -> {
+            ClientStateModel backlog = null;
+            try {
+                backlog = journal.readBacklog();
+            } catch (Exception e) {
+                log.error("Could not retrieve the saved key strokes and analysis results, they will be dropped", e);
+            }
+            controller.passBacklogToModel(backlog);
+            backlogRestoreTime = elapsedSinceRestoreStart();
+            log.debug("Retrieved key strokes and analysis results from disk in " + backlogRestoreTime + " ms");
+        }, "client-state-restore");
+        restore.setDaemon(true);
+        restore.start();
+    }
+
+    /**
+     * @return milliseconds from the start of the last restore until its statuses were in the model, or -1 if not yet.
+     */
+    public long getStatusRestoreTime() {
+        return statusRestoreTime;
+    }
+
+    /**
+     * @return milliseconds from the start of the last restore until its key strokes and analysis results were in the
+     * model, or -1 if not yet.
+     */
+    public long getBacklogRestoreTime() {
+        return backlogRestoreTime;
+    }
+
+    /**
+     * @return milliseconds from the start of the last restore until the first key stroke was enqueued with the statuses
+     * in the model, or -1 if not yet.
+     */
+    public long getTimeToFirstProtectedKeyStroke() {
+        return timeToFirstProtectedKeyStroke;
+    }
+
+    private long elapsedSinceRestoreStart() {
+        return (System.nanoTime() - restoreStartTime) / 1000000;
+    }
+
+    /**
+     * Retrieve model from preferences, where clients saved it before the journal.
      *
      * @return model retrieved from preferences
      */
@@ -214,26 +302,17 @@ public class ClientInitService implements
     }
 
     /**
-     * Called when the status of the client changes. Saves the entire state to Preferences.
+     * Called when the status of the client changes. Every change is already in the journal, so saving waits for the
+     * changes to reach the disk and compacts the journal once it has grown large. The save runs on the persister
+     * thread, coalesced with other requests made within SAVE_MAX_DELAY.
      */
     public void saveClientState() {
-        Runnable r = () -> {
-            state.obtainAccessToModel();
-            try {
-                saveToPreferences(state);
-                // TODO: lockLocalSave()
-                log.debug("Saved client state to file.");
-            } catch (Exception e) {
-                log.debug("Could not save client state to file.", e);
-            } finally {
-                state.releaseAccessToModel();
-            }
-        };
-        r.run();
+        // TODO: lockLocalSave()
+        persister.requestSave();
     }
 
     /**
-     * Save model to preferences.
+     * Save model to preferences in the format used before the journal. Only used by tools that edit old saves.
      *
      * @param state the model to save to preferences
      */
@@ -410,12 +489,18 @@ public class ClientInitService implements
     }
 
     /**
-     * Clear both the model and Preferences.
+     * Clear both the model and the saved state.
      */
     private void clearClientData() {
-        // Clear ClientStateModel.
+        // Clear ClientStateModel, which also replaces the saved state with an empty snapshot.
         controller.clearModel();
-        // Clear save to Preferences.
+        clearPreferences();
+    }
+
+    /**
+     * Clear any state saved to Preferences by older clients.
+     */
+    private void clearPreferences() {
         try {
             prefs.clear();
         } catch (BackingStoreException e) {
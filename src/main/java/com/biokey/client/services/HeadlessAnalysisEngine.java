@@ -0,0 +1,119 @@
+package com.biokey.client.services;
+
+import com.biokey.client.constants.AuthConstants;
+import com.biokey.client.constants.SecurityConstants;
+import com.biokey.client.controllers.ClientStateController;
+import com.biokey.client.models.ClientStateModel;
+import com.biokey.client.models.pojo.*;
+import com.biokey.client.services.engine.IAnalysisModel;
+import lombok.NonNull;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Analysis engine without any view, native hook or server, for the tools, tests and benchmarks that replay recorded
+ * key strokes. The engine runs a typing profile of its own, key strokes go through the controller like typed ones and
+ * each analysis result is handed to a handler instead of being queued for the server.
+ *
+ * Must be closed to end its threads.
+ */
+public class HeadlessAnalysisEngine implements AutoCloseable {
+
+    /**
+     * Interface describing the contract for the receiver of the analysis results.
+     */
+    public interface IAnalysisResultHandler {
+        /**
+         * Called on the engine thread with each analysis result.
+         *
+         * @param analysisResult the result of the analysis
+         */
+        void handleAnalysisResult(AnalysisResultPojo analysisResult);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicLong consumed = new AtomicLong();
+    private final ClientStateController controller;
+    private final AnalysisEngineService engine;
+
+    /**
+     * Start an engine running the model the client runs.
+     *
+     * @param engineModel the engine model of the typing profile to analyse the key strokes against
+     * @param handler receives the analysis results
+     */
+    public HeadlessAnalysisEngine(@NonNull EngineModelPojo engineModel, @NonNull IAnalysisResultHandler handler) {
+        this(engineModel, null, handler);
+    }
+
+    /**
+     * Start an engine running the models made by the factory.
+     *
+     * @param engineModel the engine model of the typing profile to analyse the key strokes against
+     * @param backend makes the model the engine runs, or null for the model the client runs
+     * @param handler receives the analysis results
+     */
+    public HeadlessAnalysisEngine(@NonNull EngineModelPojo engineModel, Supplier<IAnalysisModel> backend,
+                                  @NonNull IAnalysisResultHandler handler) {
+        ClientStateModel state = new ClientStateModel(executor) {
+            @Override
+            public void keyStrokesConsumed(long timeStamp) {
+                super.keyStrokesConsumed(timeStamp);
+                consumed.incrementAndGet();
+            }
+        };
+        controller = new ClientStateController(state, null) {
+            @Override
+            public void enqueueAnalysisResult(@NonNull AnalysisResultPojo analysisResult) {
+                handler.handleAnalysisResult(analysisResult);
+            }
+        };
+        engine = (backend == null) ?
+                new AnalysisEngineService(controller, state) :
+                new AnalysisEngineService(controller, state, backend);
+        state.setStatusListeners(Collections.singleton(engine));
+        state.setKeyQueueListeners(Collections.singleton(engine));
+        state.setAnalysisResultQueueListeners(Collections.emptySet());
+
+        TypingProfilePojo profile = new TypingProfilePojo("headless", "headless", "headless", engineModel, new String[] {}, "");
+        engine.statusChanged(null, new ClientStatusPojo(profile, AuthConstants.AUTHENTICATED, SecurityConstants.UNLOCKED,
+                "", "", "", System.currentTimeMillis()), false);
+    }
+
+    /**
+     * Hand a key stroke to the engine the way the key logger does.
+     *
+     * @param keyStroke the key stroke to enqueue
+     */
+    public void enqueueKeyStroke(@NonNull KeyStrokePojo keyStroke) {
+        controller.enqueueKeyStroke(keyStroke);
+    }
+
+    /**
+     * @return the number of key strokes the engine is done with.
+     */
+    public long getConsumed() {
+        return consumed.get();
+    }
+
+    /**
+     * @return the engine, for its statistics or to hand it key events directly.
+     */
+    public AnalysisEngineService getEngine() {
+        return engine;
+    }
+
+    /**
+     * Stop the engine and wait for its thread to end, and end the threads of the controller and model.
+     */
+    @Override
+    public void close() {
+        engine.stop();
+        controller.cancelServerSyncs();
+        executor.shutdownNow();
+    }
+}
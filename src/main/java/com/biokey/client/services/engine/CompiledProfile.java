@@ -0,0 +1,152 @@
+package com.biokey.client.services.engine;
+
+import com.biokey.client.models.pojo.EngineModelPojo;
+import com.biokey.client.models.pojo.GaussianFeaturePojo;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Gaussian typing profile compiled into a trie of key codes for allocation free lookups.
+ *
+ * Profile keys such as "36-3675-42" name a sequence of key codes, oldest first. The engine completes sequences
+ * starting from the newest key and extending backwards, so the trie is built over the reversed key codes: walking from
+ * the root through 42, then 3675, then 36 reaches the node of "36-3675-42". Nodes that are a feature of the profile hold
+ * its index, mean, stdev and 1/(2*stdev^2) in parallel arrays. If a key has no child node, no longer sequence can be in the profile.
+ *
+ * Immutable once compiled, so it can be shared between threads as a snapshot of the engine model.
+ */
+public final class CompiledProfile {
+
+    private static Logger log = Logger.getLogger(CompiledProfile.class);
+
+    public static final int ROOT = 0;
+    public static final int NONE = LongIntHashMap.MISSING;
+
+    private final EngineModelPojo model;
+    private final LongIntHashMap children;
+    private final int[] featureIndexes;
+    private final double[] means;
+    private final double[] stdevs;
+    private final double[] inverseTwoVariances;
+    private final int featureSize;
+
+    private CompiledProfile(EngineModelPojo model, LongIntHashMap children, int[] featureIndexes, double[] means, double[] stdevs,
+                            int featureSize) {
+        this.model = model;
+        this.children = children;
+        this.featureIndexes = featureIndexes;
+        this.means = means;
+        this.stdevs = stdevs;
+        this.inverseTwoVariances = new double[stdevs.length];
+        for (int i = 0; i < stdevs.length; i++) inverseTwoVariances[i] = 1 / (2 * stdevs[i] * stdevs[i]);
+        this.featureSize = featureSize;
+    }
+
+    /**
+     * Compile the Gaussian profile of an engine model.
+     *
+     * @param model the engine model, which must not be modified afterwards
+     * @return the compiled profile
+     */
+    public static CompiledProfile compile(EngineModelPojo model) {
+        Map<String, GaussianFeaturePojo> gaussianProfile = model.getGaussianProfile();
+        int maxNodes = 1;
+        for (String sequence : gaussianProfile.keySet()) maxNodes += sequence.split("-").length;
+
+        LongIntHashMap children = new LongIntHashMap(maxNodes);
+        int[] featureIndexes = new int[maxNodes];
+        double[] means = new double[maxNodes];
+        double[] stdevs = new double[maxNodes];
+        Arrays.fill(featureIndexes, NONE);
+        int nodes = 1;
+
+        for (Map.Entry<String, GaussianFeaturePojo> feature : gaussianProfile.entrySet()) {
+            String[] keys = feature.getKey().split("-");
+            int node = ROOT;
+            try {
+                for (int i = keys.length - 1; i >= 0; i--) {
+                    long edge = edge(node, Integer.parseInt(keys[i]));
+                    int child = children.get(edge);
+                    if (child == NONE) {
+                        child = nodes++;
+                        children.put(edge, child);
+                    }
+                    node = child;
+                }
+            }
+            catch (NumberFormatException e) {
+                log.warn("Ignoring malformed profile sequence " + feature.getKey());
+                continue;
+            }
+            featureIndexes[node] = feature.getValue().getIndex();
+            means[node] = feature.getValue().getMean();
+            stdevs[node] = feature.getValue().getStdev();
+        }
+
+        return new CompiledProfile(model, children, Arrays.copyOf(featureIndexes, nodes),
+                Arrays.copyOf(means, nodes), Arrays.copyOf(stdevs, nodes), gaussianProfile.size());
+    }
+
+    /**
+     * @return the engine model the profile was compiled from.
+     */
+    public EngineModelPojo getModel() {
+        return model;
+    }
+
+    /**
+     * Extend a sequence one key further back.
+     *
+     * @param node node of the sequence, ROOT for the empty sequence
+     * @param key key code that precedes the sequence
+     * @return node of the extended sequence, or NONE if no sequence of the profile ends with it
+     */
+    public int child(int node, int key) {
+        return children.get(edge(node, key));
+    }
+
+    /**
+     * @param node node of a sequence
+     * @return the feature index of the sequence, or NONE if the sequence is not a feature of the profile
+     */
+    public int featureIndex(int node) {
+        return featureIndexes[node];
+    }
+
+    /**
+     * @param node node of a sequence that is a feature of the profile
+     * @return mean of the log duration of the sequence
+     */
+    public double mean(int node) {
+        return means[node];
+    }
+
+    /**
+     * @param node node of a sequence that is a feature of the profile
+     * @return standard deviation of the log duration of the sequence
+     */
+    public double stdev(int node) {
+        return stdevs[node];
+    }
+
+    /**
+     * @param node node of a sequence that is a feature of the profile
+     * @return 1/(2*stdev^2) of the log duration of the sequence, the factor of the squared distance in its score
+     */
+    public double inverseTwoVariance(int node) {
+        return inverseTwoVariances[node];
+    }
+
+    /**
+     * @return the number of features in the profile.
+     */
+    public int getFeatureSize() {
+        return featureSize;
+    }
+
+    private static long edge(int node, int key) {
+        return ((long) node << 32) | (key & 0xFFFFFFFFL);
+    }
+}
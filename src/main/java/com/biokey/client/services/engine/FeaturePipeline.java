@@ -0,0 +1,172 @@
+package com.biokey.client.services.engine;
+
+import com.biokey.client.constants.EngineConstants;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Turns key events into the three windows of feature frames the analysis model runs over.
+ *
+ * A key press is recorded in the key hold log. A release walks the profile back from the released key's press to the
+ * start of its run, each step making the sequence one key longer, scores the sequences that are features of the
+ * profile and adds them to the feature engine. The frames are then pushed into the windows when the caller updates
+ * them, so key events can be replayed without touching the windows.
+ *
+ * Not thread safe. The analysis engine owns one on its pipeline thread, offline tools one per replayed session.
+ */
+public class FeaturePipeline {
+
+    private static final String RESET_FRAMES_RESOURCE = "/com/biokey/client/services/reset-frames.json";
+
+    private final KeyHoldTracker keyHolds = new KeyHoldTracker(EngineConstants.KEY_HOLD_LOG_SIZE, EngineConstants.SEQ_THRESHOLD);
+    private final GaussianScorer scorer = new GaussianScorer(EngineConstants.KEY_HOLD_LOG_SIZE, EngineConstants.FAST_SCORING);
+    private final int windowSize;
+    private SlidingFeatureEngine featureEngine;
+
+    private FrameTensor rawWindow;
+    private FrameTensor shortWindow;
+    private FrameTensor longWindow;
+
+    /**
+     * @param windowSize the number of frames in each window
+     */
+    public FeaturePipeline(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Read the frames the model starts from, from the configured path or else the ones bundled with the client.
+     *
+     * @return JSON object holding the rows of each window under "x_raw", "x_40" and "x_100"
+     */
+    public static JSONObject readResetFrames() throws IOException, ParseException {
+        try (Reader reader = new File(EngineConstants.RESET_FRAMES_PATH).exists() ?
+                new FileReader(EngineConstants.RESET_FRAMES_PATH) :
+                new InputStreamReader(FeaturePipeline.class.getResourceAsStream(RESET_FRAMES_RESOURCE), StandardCharsets.UTF_8)) {
+            return (JSONObject) new JSONParser().parse(reader);
+        }
+    }
+
+    /**
+     * Start empty windows for a profile with the given number of features. The sequences completed so far are kept
+     * unless the number of features changes.
+     *
+     * @param featureSize the number of features of the profile
+     * @return true if the feature engine was replaced and holds no sequences
+     */
+    public boolean reset(int featureSize) {
+        boolean replaced = false;
+        if (featureEngine == null || featureEngine.getFeatureSize() != featureSize) {
+            featureEngine = new SlidingFeatureEngine(featureSize);
+            replaced = true;
+        }
+        rawWindow = new FrameTensor(windowSize, featureSize);
+        shortWindow = new FrameTensor(windowSize, featureSize);
+        longWindow = new FrameTensor(windowSize, featureSize);
+        return replaced;
+    }
+
+    /**
+     * Push saved frames into the windows.
+     *
+     * @param frames JSON object holding the rows of each window under "x_raw", "x_40" and "x_100"
+     */
+    @SuppressWarnings("unchecked")
+    public void pushFrames(JSONObject frames) {
+        ((JSONArray) frames.get("x_raw")).forEach((raw) -> rawWindow.push((List<Number>) raw));
+        ((JSONArray) frames.get("x_40")).forEach((raw) -> shortWindow.push((List<Number>) raw));
+        ((JSONArray) frames.get("x_100")).forEach((raw) -> longWindow.push((List<Number>) raw));
+    }
+
+    /**
+     * Feed a key event into the key hold log and, on release, the feature engine.
+     *
+     * @param profile the compiled profile, or null if there is none yet
+     * @return true if a held key was released and the windows should be updated
+     */
+    public boolean keyEvent(CompiledProfile profile, int key, boolean keyDown, long timeStamp) {
+        if (keyDown) {
+            keyHolds.keyDown(key, timeStamp);
+            return false;
+        }
+
+        long lastPosition = keyHolds.keyUp(key);
+        if (lastPosition == KeyHoldTracker.NONE) return false;
+
+        long finishTime = timeStamp;
+        long engineSeqNumber = keyHolds.getSeqNumber();
+
+        if (profile == null) return false;
+        int node = CompiledProfile.ROOT;
+        scorer.clear();
+        // Walk back from the released key's press to the start of its run, each step making the sequence one key longer.
+        for (long position = lastPosition; position >= keyHolds.getReleasedRunStart(); position--) {
+
+            // Extend the sequence back by one key. If the profile has no such sequence, it has no longer ones either.
+            node = profile.child(node, keyHolds.key(position));
+            if (node == CompiledProfile.NONE) break;
+            int feature = profile.featureIndex(node);
+            if (feature == CompiledProfile.NONE || featureEngine == null) continue;
+
+            long duration = finishTime - keyHolds.downTime(position);
+            scorer.add(feature, position, duration, profile.mean(node), profile.stdev(node), profile.inverseTwoVariance(node));
+        }
+
+        scorer.score();
+        for (int i = 0; i < scorer.size(); i++) {
+            featureEngine.addSequence(engineSeqNumber, scorer.feature(i), scorer.duration(i), scorer.start(i), scorer.score(i));
+        }
+        return true;
+    }
+
+    /**
+     * Bring the frames up to date and push them into the windows.
+     */
+    public void updateWindows() {
+        featureEngine.update(keyHolds.getSeqNumber());
+        rawWindow.push(featureEngine.getRawFrame());
+        shortWindow.push(featureEngine.getShortFrame());
+        longWindow.push(featureEngine.getLongFrame());
+    }
+
+    /**
+     * @return the engine sequence number the next key press will get.
+     */
+    public long getSeqNumber() {
+        return keyHolds.getSeqNumber();
+    }
+
+    /**
+     * @return the feature engine, or null before the first reset.
+     */
+    public SlidingFeatureEngine getFeatureEngine() {
+        return featureEngine;
+    }
+
+    /**
+     * @return window of individual feature vectors.
+     */
+    public FrameTensor getRawWindow() {
+        return rawWindow;
+    }
+
+    /**
+     * @return window of 40 keystroke frame feature vectors.
+     */
+    public FrameTensor getShortWindow() {
+        return shortWindow;
+    }
+
+    /**
+     * @return window of 100 keystroke frame feature vectors.
+     */
+    public FrameTensor getLongWindow() {
+        return longWindow;
+    }
+}
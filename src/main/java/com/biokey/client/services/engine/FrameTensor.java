@@ -0,0 +1,108 @@
+package com.biokey.client.services.engine;
+
+import java.util.List;
+
+/**
+ * Fixed capacity window of feature frames stored as a circular float[capacity][width] tensor.
+ * Pushing a frame overwrites the oldest row in place, so updating the window allocates nothing.
+ *
+ * Rows are handed out as views on the underlying storage and must not be modified by the reader.
+ * Each row also carries a stamp that increases with every push, so a reader can tell whether a row it has already
+ * seen still holds the same frame.
+ *
+ * Not thread safe, callers must serialize access.
+ */
+public class FrameTensor {
+
+    private final float[][] rows;
+    private final int capacity;
+    private final int width;
+    private int head = 0; // physical index of the oldest row
+    private int size = 0;
+    private long pushes = 0;
+
+    public FrameTensor(int capacity, int width) {
+        this.capacity = capacity;
+        this.width = width;
+        rows = new float[capacity][width];
+    }
+
+    /**
+     * Append a frame to the window, evicting the oldest frame if the window is full.
+     *
+     * @param frame feature values of the new frame
+     */
+    public void push(double[] frame) {
+        if (frame.length != width) throw new IllegalArgumentException("Expected " + width + " features but got " + frame.length);
+        float[] row = nextRow();
+        for (int i = 0; i < width; i++) row[i] = (float) frame[i];
+    }
+
+    /**
+     * Append a frame to the window, evicting the oldest frame if the window is full.
+     *
+     * @param frame feature values of the new frame
+     */
+    public void push(List<? extends Number> frame) {
+        if (frame.size() != width) throw new IllegalArgumentException("Expected " + width + " features but got " + frame.size());
+        float[] row = nextRow();
+        int i = 0;
+        for (Number value : frame) row[i++] = value.floatValue();
+    }
+
+    /**
+     * @param i position in the window, 0 being the oldest frame
+     * @return view of the frame at that position
+     */
+    public float[] row(int i) {
+        return rows[physical(i)];
+    }
+
+    /**
+     * @param i position in the window, 0 being the oldest frame
+     * @return stamp of the frame at that position, unique for the lifetime of the tensor
+     */
+    public long stamp(int i) {
+        return pushes - size + i;
+    }
+
+    /**
+     * @return the number of frames in the window.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the maximum number of frames in the window.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of features in each frame.
+     */
+    public int width() {
+        return width;
+    }
+
+    private float[] nextRow() {
+        float[] row;
+        if (size < capacity) {
+            row = rows[(head + size) % capacity];
+            size++;
+        }
+        else {
+            row = rows[head];
+            head = (head + 1) % capacity;
+        }
+        pushes++;
+        return row;
+    }
+
+    private int physical(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Row " + i + " of " + size);
+        return (head + i) % capacity;
+    }
+}
@@ -0,0 +1,162 @@
+package com.biokey.client.services.engine;
+
+/**
+ * Scores the sequences completed by a key release against the Gaussian profile, as
+ * exp(-(log(duration) - mean)^2 / (2*stdev^2)).
+ *
+ * The sequences are first added to a batch of primitive arrays, then all of them are scored in one loop. Durations are
+ * whole milliseconds, so the log of common durations is read from a table of Math.log values. Exact scores evaluate the
+ * formula exactly as written with Math.pow and Math.exp, so they are bit for bit the scores computed one at a time. Fast
+ * scores multiply by the precomputed 1/(2*stdev^2) and use a polynomial approximation of the exponential with a
+ * relative error below FAST_EXP_ERROR.
+ *
+ * Not thread safe, callers must serialize access.
+ */
+public class GaussianScorer {
+
+    public static final double FAST_EXP_ERROR = 1e-9;
+
+    private static final int LOG_TABLE_SIZE = 4096;
+    private static final double[] LOG_TABLE = new double[LOG_TABLE_SIZE];
+    static {
+        for (int i = 0; i < LOG_TABLE_SIZE; i++) LOG_TABLE[i] = Math.log(i);
+    }
+
+    private static final double LOG2E = 1 / Math.log(2);
+    private static final double LN2 = Math.log(2);
+    private static final double FAST_EXP_MIN = -708; // below this the result is subnormal and rounded to zero
+    private static final double FAST_EXP_MAX = 709;
+
+    private final boolean fast;
+
+    private final int[] features;
+    private final long[] starts;
+    private final long[] durations;
+    private final double[] means;
+    private final double[] stdevs;
+    private final double[] inverseTwoVariances;
+    private final double[] scores;
+    private int size = 0;
+
+    /**
+     * @param capacity the maximum number of sequences in a batch
+     * @param fast true to approximate the exponential
+     */
+    public GaussianScorer(int capacity, boolean fast) {
+        this.fast = fast;
+        features = new int[capacity];
+        starts = new long[capacity];
+        durations = new long[capacity];
+        means = new double[capacity];
+        stdevs = new double[capacity];
+        inverseTwoVariances = new double[capacity];
+        scores = new double[capacity];
+    }
+
+    /**
+     * Empty the batch.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Add a completed sequence to the batch.
+     *
+     * @param feature feature index of the sequence
+     * @param start sequence number of the first key of the sequence
+     * @param duration time from the first key press to the release of the last key
+     * @param mean mean of the log duration of the sequence in the profile
+     * @param stdev stdev of the log duration of the sequence in the profile
+     * @param inverseTwoVariance 1/(2*stdev^2) of the log duration of the sequence in the profile
+     */
+    public void add(int feature, long start, long duration, double mean, double stdev, double inverseTwoVariance) {
+        features[size] = feature;
+        starts[size] = start;
+        durations[size] = duration;
+        means[size] = mean;
+        stdevs[size] = stdev;
+        inverseTwoVariances[size] = inverseTwoVariance;
+        size++;
+    }
+
+    /**
+     * Score every sequence in the batch.
+     */
+    public void score() {
+        if (fast) {
+            for (int i = 0; i < size; i++) {
+                double distance = log(durations[i]) - means[i];
+                scores[i] = fastExp(-distance * distance * inverseTwoVariances[i]);
+            }
+        }
+        else {
+            for (int i = 0; i < size; i++) {
+                scores[i] = Math.exp(-Math.pow(log(durations[i]) - means[i], 2) / (2 * Math.pow(stdevs[i], 2)));
+            }
+        }
+    }
+
+    /**
+     * @return the number of sequences in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i position of the sequence in the batch
+     * @return the feature index of the sequence
+     */
+    public int feature(int i) {
+        return features[i];
+    }
+
+    /**
+     * @param i position of the sequence in the batch
+     * @return the sequence number of the first key of the sequence
+     */
+    public long start(int i) {
+        return starts[i];
+    }
+
+    /**
+     * @param i position of the sequence in the batch
+     * @return the duration of the sequence
+     */
+    public long duration(int i) {
+        return durations[i];
+    }
+
+    /**
+     * @param i position of the sequence in the batch
+     * @return the score of the sequence, once the batch is scored
+     */
+    public double score(int i) {
+        return scores[i];
+    }
+
+    /**
+     * @param duration duration in milliseconds
+     * @return the natural log of the duration, the same as Math.log
+     */
+    static double log(long duration) {
+        return (duration >= 0 && duration < LOG_TABLE_SIZE) ? LOG_TABLE[(int) duration] : Math.log(duration);
+    }
+
+    /**
+     * Approximate e^x as 2^k * e^r with |r| <= ln(2)/2, using a degree 8 Taylor polynomial for e^r.
+     *
+     * @param x the exponent
+     * @return e^x within a relative error of FAST_EXP_ERROR, 0 for x below -708
+     */
+    static double fastExp(double x) {
+        if (x < FAST_EXP_MIN) return 0.0;
+        if (x > FAST_EXP_MAX) return Double.POSITIVE_INFINITY;
+        double k = Math.rint(x * LOG2E);
+        double r = x - k * LN2;
+        double p = 1 + r * (1 + r * (1.0 / 2 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120
+                + r * (1.0 / 720 + r * (1.0 / 5040 + r * (1.0 / 40320))))))));
+        return p * Double.longBitsToDouble(((long) k + 1023) << 52);
+    }
+}
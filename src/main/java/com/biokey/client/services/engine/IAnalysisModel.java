@@ -0,0 +1,35 @@
+package com.biokey.client.services.engine;
+
+/**
+ * Interface describing the contract that every inference backend of the analysis engine must provide.
+ */
+public interface IAnalysisModel {
+
+    /**
+     * Load the model definition and weights.
+     *
+     * @param payload JSON string holding the Keras model config under "model" and its weights under "weights"
+     * @return true if the model is ready to make predictions
+     */
+    boolean init(String payload);
+
+    /**
+     * Run the model over the three feature windows.
+     *
+     * @param xRaw window of individual feature vectors
+     * @param x40 window of 40 keystroke frame feature vectors
+     * @param x100 window of 100 keystroke frame feature vectors
+     * @return the likelihood that the typing matches the profile, or -1 if no prediction could be made
+     */
+    double predict(FrameTensor xRaw, FrameTensor x40, FrameTensor x100);
+
+    /**
+     * Release any resources held by the model.
+     */
+    void kill();
+
+    /**
+     * @return true if the model can still be used.
+     */
+    boolean isRunning();
+}
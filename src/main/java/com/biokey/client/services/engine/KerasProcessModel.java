@@ -0,0 +1,162 @@
+package com.biokey.client.services.engine;
+
+import com.biokey.client.constants.EngineConstants;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Inference backend that runs the Keras model in a Python subprocess and talks to it over stdin and stdout.
+ *
+ * Messages in both directions are framed as a little-endian int32 length followed by a one byte message type and
+ * the body. A prediction carries, for each input window, only the frames pushed since the previous prediction as raw
+ * float32 values. The subprocess keeps its own copy of each window and appends the new frames to it.
+ */
+public class KerasProcessModel implements IAnalysisModel {
+
+    private static Logger log = Logger.getLogger(KerasProcessModel.class);
+
+    private static final byte INIT = 1;
+    private static final byte PREDICT = 2;
+    private static final String[] INPUT_NAMES = {"x_raw", "x_40", "x_100"};
+
+    private DataInputStream in;
+    private OutputStream out;
+    private boolean initialized = false;
+    private Process p;
+
+    // Window and stamp of the newest frame the subprocess has of each input.
+    private final FrameTensor[] sentWindows = new FrameTensor[INPUT_NAMES.length];
+    private final long[] sentStamps = new long[INPUT_NAMES.length];
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    public KerasProcessModel() {
+        try {
+            ProcessBuilder pb = new ProcessBuilder("python", EngineConstants.MODEL_SCRIPT_PATH);
+            p = pb.start();
+            in = new DataInputStream(new BufferedInputStream(p.getInputStream()));
+            out = new BufferedOutputStream(p.getOutputStream());
+
+            BufferedReader err = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+
+            Runnable logErrors = () -> {
+                String error;
+                try {
+                    while((error = err.readLine()) != null) {
+                        log.error(error);
+                    }
+                }
+                catch (Exception e) {
+                    log.error("Keras error", e);
+                }
+            };
+            (new Thread(logErrors)).start();
+        } catch(Exception e) {
+            log.error("Keras error", e);
+        }
+    }
+
+    public boolean init(String payload) {
+        try {
+            byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+            buffer.clear();
+            ensureCapacity(body.length);
+            buffer.put(body);
+            ByteBuffer response = send(INIT);
+            initialized = response.get() == 1;
+            Arrays.fill(sentWindows, null);
+            log.debug("INIT: " + initialized);
+            return initialized;
+        }
+        catch(Exception e) {
+            log.error("Could not init.", e);
+        }
+        return false;
+    }
+
+    public double predict(FrameTensor xRaw, FrameTensor x40, FrameTensor x100) {
+        if (!initialized) {
+            log.error("Model must be initialized before predictions can be made");
+            return -1;
+        }
+        try {
+            FrameTensor[] windows = {xRaw, x40, x100};
+            buffer.clear();
+            for (int i = 0; i < windows.length; i++) putNewFrames(i, windows[i]);
+            double result = send(PREDICT).getDouble();
+            log.debug("PREDICT: " + result);
+            return result;
+        }
+        catch(Exception e) {
+            // The subprocess may have missed frames, so send the full windows next time.
+            Arrays.fill(sentWindows, null);
+            log.error("Could not predict.", e);
+        }
+        return -1;
+    }
+
+    public void kill() {
+        if (p != null) p.destroy();
+    }
+
+    public boolean isRunning() {
+        return (p != null && p.isAlive());
+    }
+
+    /**
+     * Add the frames of the window that the subprocess does not have yet to the request body.
+     * Each input is written as its name, whether the subprocess should drop the frames it has, the window capacity and
+     * width, the number of frames and the frame values.
+     */
+    private void putNewFrames(int input, FrameTensor window) {
+        int first = 0;
+        if (sentWindows[input] == window) {
+            first = (int) Math.max(0, Math.min(window.size(), sentStamps[input] + 1 - window.stamp(0)));
+        }
+        int frames = window.size() - first;
+
+        byte[] name = INPUT_NAMES[input].getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(2 + name.length + 12 + 4 * frames * window.width());
+        buffer.put((byte) name.length).put(name).put((byte) (first == 0 ? 1 : 0));
+        buffer.putInt(window.capacity()).putInt(window.width()).putInt(frames);
+        for (int i = first; i < window.size(); i++) {
+            for (float value : window.row(i)) buffer.putFloat(value);
+        }
+
+        sentWindows[input] = window;
+        sentStamps[input] = window.stamp(window.size() - 1);
+    }
+
+    /**
+     * Send the request body in the buffer as a message of the given type and return the body of the response.
+     */
+    private ByteBuffer send(byte type) throws IOException {
+        byte[] header = ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN).putInt(buffer.position() + 1).put(type).array();
+        out.write(header);
+        out.write(buffer.array(), 0, buffer.position());
+        out.flush();
+
+        byte[] lengthBytes = new byte[4];
+        in.readFully(lengthBytes);
+        int length = ByteBuffer.wrap(lengthBytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        byte[] response = new byte[length];
+        in.readFully(response);
+        if (length == 0 || response[0] != type) throw new IOException("Unexpected response to message " + type);
+        ByteBuffer body = ByteBuffer.wrap(response).order(ByteOrder.LITTLE_ENDIAN);
+        body.position(1);
+        return body;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (buffer.remaining() >= additional) return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + additional))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+}
@@ -0,0 +1,146 @@
+package com.biokey.client.services.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, preallocated ring of key events between any number of producer threads and one consumer thread.
+ * Events are stored in primitive arrays, so publishing and consuming allocate nothing and take no locks.
+ *
+ * Producers claim a sequence each and mark the slot with it once the event is written, so the consumer only reads
+ * events that are complete and in the order they were claimed. When the ring is full the producer discards the oldest
+ * event, so the thread typing the keys is never held up by the consumer.
+ */
+public class KeyEventRing {
+
+    /**
+     * Interface describing the contract for the consumer of the key events.
+     */
+    public interface IKeyEventHandler {
+        /**
+         * @param key the key code
+         * @param keyDown true if the key was pressed, false if it was released
+         * @param timeStamp the time of the event
+         * @param endOfBatch true if no other event was waiting when this one was consumed
+         */
+        void onKeyEvent(int key, boolean keyDown, long timeStamp, boolean endOfBatch);
+    }
+
+    private final int capacity;
+    private final int mask;
+
+    private final int[] keys;
+    private final boolean[] keyDowns;
+    private final long[] timeStamps;
+
+    // Sequence the next producer will claim.
+    private final AtomicLong claimed = new AtomicLong();
+    // Sequence of the event last written to each slot, the slot is ready to be read once it holds the one wanted.
+    private final AtomicLongArray published;
+    // Sequence of the next event the consumer will read. Producers also move it when they drop the oldest event.
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+
+    public KeyEventRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two");
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        keys = new int[capacity];
+        keyDowns = new boolean[capacity];
+        timeStamps = new long[capacity];
+        published = new AtomicLongArray(capacity);
+        // Each slot starts as if it held the event one lap before the first one written to it.
+        for (int slot = 0; slot < capacity; slot++) published.set(slot, slot - capacity);
+    }
+
+    /**
+     * Add a key event to the ring. May be called by several threads at once.
+     *
+     * @param key the key code
+     * @param keyDown true if the key was pressed, false if it was released
+     * @param timeStamp the time of the event
+     */
+    public void publish(int key, boolean keyDown, long timeStamp) {
+        long sequence = claimed.getAndIncrement();
+        int slot = (int) (sequence & mask);
+
+        // Another producer may still be writing the event a lap earlier to the same slot. It is only a few stores
+        // away from done, and never waits on anything itself.
+        while (published.get(slot) != sequence - capacity) Thread.yield();
+
+        long oldest;
+        while (sequence - (oldest = consumed.get()) >= capacity) {
+            if (consumed.compareAndSet(oldest, oldest + 1)) dropped.incrementAndGet();
+        }
+
+        // The slot is free: the consumer has moved past it, or a producer has just dropped it.
+        keys[slot] = key;
+        keyDowns[slot] = keyDown;
+        timeStamps[slot] = timeStamp;
+        published.set(slot, sequence);
+        wakeConsumer();
+    }
+
+    /**
+     * Hand every waiting event to the handler, oldest first. Must only be called by the consumer thread.
+     *
+     * @param handler the consumer of the events
+     * @return the number of events handled
+     */
+    public int drain(IKeyEventHandler handler) {
+        int handled = 0;
+        long sequence;
+        while (isPublished(sequence = consumed.get())) {
+            int slot = (int) (sequence & mask);
+            int key = keys[slot];
+            boolean keyDown = keyDowns[slot];
+            long timeStamp = timeStamps[slot];
+
+            // Only keep the copy if no producer dropped the event, and reused its slot, while it was being read.
+            if (!consumed.compareAndSet(sequence, sequence + 1)) continue;
+
+            handler.onKeyEvent(key, keyDown, timeStamp, !isPublished(sequence + 1));
+            handled++;
+        }
+        return handled;
+    }
+
+    /**
+     * Park the consumer thread until an event is published or the timeout elapses.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     */
+    public void awaitEvents(long timeout, TimeUnit unit) {
+        waitingConsumer = Thread.currentThread();
+        if (!isPublished(consumed.get())) LockSupport.parkNanos(this, unit.toNanos(timeout));
+        waitingConsumer = null;
+    }
+
+    /**
+     * @return the number of events waiting to be consumed, counting those still being published.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity, claimed.get() - consumed.get()));
+    }
+
+    /**
+     * @return the number of events dropped because the ring was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private boolean isPublished(long sequence) {
+        return published.get((int) (sequence & mask)) == sequence;
+    }
+
+    private void wakeConsumer() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+}
@@ -0,0 +1,128 @@
+package com.biokey.client.services.engine;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the keys being held down and the run of key presses that each of them completes when released.
+ *
+ * Every key press gets the next engine sequence number and is written to a ring of primitive arrays at that position.
+ * A new run starts when a key is pressed more than the sequence threshold after the previous press. For each held
+ * key only the position of its press and the start of its run are kept, so releasing a key walks the log backwards
+ * from its press to the start of its run without copying anything.
+ *
+ * Runs longer than the capacity of the log are cut to the presses still in it. Not thread safe.
+ */
+public class KeyHoldTracker {
+
+    public static final long NONE = -1;
+
+    private final int capacity;
+    private final int mask;
+    private final int sequenceThreshold;
+
+    private final int[] keys;
+    private final long[] downTimes;
+    private long seqNumber = 0;
+    private long runStart = 0;
+    private long releasedRunStart = 0;
+
+    // Held state per key code, in slots assigned the first time a key is seen.
+    private final LongIntHashMap keySlots = new LongIntHashMap(128);
+    private long[] heldPositions = new long[128];
+    private long[] heldRunStarts = new long[128];
+
+    public KeyHoldTracker(int capacity, int sequenceThreshold) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two");
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.sequenceThreshold = sequenceThreshold;
+        keys = new int[capacity];
+        downTimes = new long[capacity];
+        Arrays.fill(heldPositions, NONE);
+    }
+
+    /**
+     * Record a key press.
+     *
+     * @param key the key code
+     * @param downTime the time of the press
+     * @return the engine sequence number of the press
+     */
+    public long keyDown(int key, long downTime) {
+        long position = seqNumber++;
+        if (position > 0 && downTime - downTimes[(int) ((position - 1) & mask)] > sequenceThreshold) {
+            // If a new sequence should start
+            runStart = position;
+        }
+        keys[(int) (position & mask)] = key;
+        downTimes[(int) (position & mask)] = downTime;
+
+        int slot = slot(key);
+        heldPositions[slot] = position;
+        heldRunStarts[slot] = runStart;
+        return position;
+    }
+
+    /**
+     * Stop tracking a released key.
+     *
+     * @param key the key code
+     * @return the position of the key's press, or NONE if the key was not held or its press is no longer in the log
+     */
+    public long keyUp(int key) {
+        int slot = keySlots.get(key);
+        if (slot == LongIntHashMap.MISSING) return NONE;
+        long position = heldPositions[slot];
+        heldPositions[slot] = NONE;
+        if (position < oldestPosition()) return NONE;
+        releasedRunStart = Math.max(heldRunStarts[slot], oldestPosition());
+        return position;
+    }
+
+    /**
+     * @return the position of the first press in the run of the key last released by keyUp.
+     */
+    public long getReleasedRunStart() {
+        return releasedRunStart;
+    }
+
+    /**
+     * @param position position of a press still in the log
+     * @return the key code of the press
+     */
+    public int key(long position) {
+        return keys[(int) (position & mask)];
+    }
+
+    /**
+     * @param position position of a press still in the log
+     * @return the time of the press
+     */
+    public long downTime(long position) {
+        return downTimes[(int) (position & mask)];
+    }
+
+    /**
+     * @return the engine sequence number the next press will get.
+     */
+    public long getSeqNumber() {
+        return seqNumber;
+    }
+
+    private long oldestPosition() {
+        return Math.max(0, seqNumber - capacity);
+    }
+
+    private int slot(int key) {
+        int slot = keySlots.get(key);
+        if (slot != LongIntHashMap.MISSING) return slot;
+        slot = keySlots.size();
+        if (slot == heldPositions.length) {
+            heldPositions = Arrays.copyOf(heldPositions, slot * 2);
+            heldRunStarts = Arrays.copyOf(heldRunStarts, slot * 2);
+            Arrays.fill(heldPositions, slot, slot * 2, NONE);
+        }
+        keySlots.put(key, slot);
+        return slot;
+    }
+}
@@ -0,0 +1,423 @@
+package com.biokey.client.services.engine;
+
+import com.biokey.client.models.pojo.EngineModelPojo;
+import org.apache.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Inference backend that runs the Keras LSTM ensemble inside the JVM.
+ * Supports the layers the analysis model is built from: InputLayer, LSTM, Concatenate and Dense.
+ *
+ * Rows of the input windows do not change once pushed, so each LSTM caches the input projection of every row and only
+ * projects the frames that are new since the last prediction. Not thread safe, predictions must be serialized.
+ */
+public class LstmEnsembleModel implements IAnalysisModel {
+
+    private static Logger log = Logger.getLogger(LstmEnsembleModel.class);
+
+    /**
+     * Activation functions as implemented by the Keras backend.
+     */
+    enum Activation {
+        LINEAR, TANH, SIGMOID, HARD_SIGMOID, RELU;
+
+        static Activation fromKeras(String name) {
+            switch (name) {
+                case "linear": return LINEAR;
+                case "tanh": return TANH;
+                case "sigmoid": return SIGMOID;
+                case "hard_sigmoid": return HARD_SIGMOID;
+                case "relu": return RELU;
+                default: throw new IllegalArgumentException("Unsupported activation: " + name);
+            }
+        }
+
+        float apply(float x) {
+            switch (this) {
+                case TANH: return (float) Math.tanh(x);
+                case SIGMOID: return (float) (1 / (1 + Math.exp(-x)));
+                case HARD_SIGMOID: return Math.max(0f, Math.min(1f, 0.2f * x + 0.5f));
+                case RELU: return Math.max(0f, x);
+                default: return x;
+            }
+        }
+    }
+
+    private abstract static class Layer {
+        final String name;
+        final String[] inbound;
+        int outputSize;
+
+        Layer(String name, String[] inbound) {
+            this.name = name;
+            this.inbound = inbound;
+        }
+    }
+
+    private static class InputLayer extends Layer {
+        final int timeSteps;
+
+        InputLayer(String name, int timeSteps, int features) {
+            super(name, new String[0]);
+            this.timeSteps = timeSteps;
+            this.outputSize = features;
+        }
+    }
+
+    private static class LstmLayer extends Layer {
+        final int inputSize;
+        final Activation activation;
+        final Activation recurrentActivation;
+        final boolean useBias;
+        // Gates are stored in Keras order: input, forget, cell, output.
+        float[] kernel;
+        float[] recurrentKernel;
+        float[] bias;
+        // Input projection b + x . W of the rows of the last window, indexed by row stamp.
+        FrameTensor projectedWindow;
+        float[][] projections;
+        long[] projectionStamps;
+
+        LstmLayer(String name, String input, int inputSize, int units,
+                  Activation activation, Activation recurrentActivation, boolean useBias) {
+            super(name, new String[] {input});
+            this.inputSize = inputSize;
+            this.outputSize = units;
+            this.activation = activation;
+            this.recurrentActivation = recurrentActivation;
+            this.useBias = useBias;
+        }
+
+        /**
+         * Run the LSTM over the window and return the last hidden state.
+         */
+        float[] forward(FrameTensor window) {
+            if (window.width() != inputSize) {
+                throw new IllegalArgumentException(name + " expected " + inputSize + " features but got " + window.width());
+            }
+            int units = outputSize;
+            int gates = 4 * units;
+            int capacity = window.capacity();
+            float[] h = new float[units];
+            float[] c = new float[units];
+            float[] z = new float[gates];
+
+            if (projectedWindow != window) {
+                projections = new float[capacity][gates];
+                projectionStamps = new long[capacity];
+                Arrays.fill(projectionStamps, -1);
+                projectedWindow = window;
+            }
+
+            for (int t = 0; t < window.size(); t++) {
+                long stamp = window.stamp(t);
+                int slot = (int) (stamp % capacity);
+                float[] projection = projections[slot];
+                if (projectionStamps[slot] != stamp) {
+                    project(window.row(t), projection);
+                    projectionStamps[slot] = stamp;
+                }
+
+                // z = x . W + b + h . U
+                System.arraycopy(projection, 0, z, 0, gates);
+                for (int k = 0; k < units; k++) {
+                    float hk = h[k];
+                    if (hk != 0f) {
+                        int offset = k * gates;
+                        for (int j = 0; j < gates; j++) z[j] += hk * recurrentKernel[offset + j];
+                    }
+                }
+
+                for (int u = 0; u < units; u++) {
+                    float inputGate = recurrentActivation.apply(z[u]);
+                    float forgetGate = recurrentActivation.apply(z[units + u]);
+                    float candidate = activation.apply(z[2 * units + u]);
+                    float outputGate = recurrentActivation.apply(z[3 * units + u]);
+                    c[u] = forgetGate * c[u] + inputGate * candidate;
+                    h[u] = outputGate * activation.apply(c[u]);
+                }
+            }
+            return h;
+        }
+
+        private void project(float[] row, float[] projection) {
+            int gates = projection.length;
+            if (useBias) System.arraycopy(bias, 0, projection, 0, gates);
+            else Arrays.fill(projection, 0f);
+            for (int i = 0; i < inputSize; i++) {
+                float x = row[i];
+                if (x != 0f) {
+                    int offset = i * gates;
+                    for (int j = 0; j < gates; j++) projection[j] += x * kernel[offset + j];
+                }
+            }
+        }
+    }
+
+    private static class ConcatenateLayer extends Layer {
+        ConcatenateLayer(String name, String[] inbound) {
+            super(name, inbound);
+        }
+
+        float[] forward(Map<String, float[]> outputs) {
+            float[] result = new float[outputSize];
+            int offset = 0;
+            for (String input : inbound) {
+                float[] part = outputs.get(input);
+                System.arraycopy(part, 0, result, offset, part.length);
+                offset += part.length;
+            }
+            return result;
+        }
+    }
+
+    private static class DenseLayer extends Layer {
+        final int inputSize;
+        final Activation activation;
+        final boolean useBias;
+        float[] kernel;
+        float[] bias;
+
+        DenseLayer(String name, String input, int inputSize, int units, Activation activation, boolean useBias) {
+            super(name, new String[] {input});
+            this.inputSize = inputSize;
+            this.outputSize = units;
+            this.activation = activation;
+            this.useBias = useBias;
+        }
+
+        float[] forward(float[] x) {
+            int units = outputSize;
+            float[] y = new float[units];
+            if (useBias) System.arraycopy(bias, 0, y, 0, units);
+            for (int i = 0; i < inputSize; i++) {
+                float xi = x[i];
+                int offset = i * units;
+                for (int j = 0; j < units; j++) y[j] += xi * kernel[offset + j];
+            }
+            for (int j = 0; j < units; j++) y[j] = activation.apply(y[j]);
+            return y;
+        }
+    }
+
+    private List<Layer> layers;
+    private String outputLayer;
+    private boolean initialized = false;
+
+    /**
+     * Read a model exported from Keras into the engine model, which carries it to the engine like one from the server.
+     *
+     * @param file JSON file holding the model config under "model" and its weights under "weights", or under "weight"
+     *             in older exports
+     * @param engineModel the engine model to hold the model config and weights
+     * @throws IOException if the file could not be read
+     * @throws ParseException if the file is not JSON
+     */
+    public static void readExport(Path file, EngineModelPojo engineModel) throws IOException, ParseException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JSONObject parsed = (JSONObject) new JSONParser().parse(reader);
+            Object weights = parsed.containsKey("weights") ? parsed.get("weights") : parsed.get("weight");
+            if (parsed.get("model") == null || weights == null) {
+                throw new IllegalArgumentException(file + " is missing the model config or weights");
+            }
+            engineModel.setModel(JSONValue.toJSONString(parsed.get("model")));
+            engineModel.setWeights(JSONValue.toJSONString(weights));
+        }
+    }
+
+    /**
+     * @param engineModel the engine model of the typing profile
+     * @return the payload that init takes for the model config and weights of the engine model, or null if it has none
+     * @throws ParseException if the model config or weights are not JSON
+     */
+    public static String payloadOf(EngineModelPojo engineModel) throws ParseException {
+        if (engineModel.getModel() == null || engineModel.getWeights() == null) return null;
+        JSONParser parser = new JSONParser();
+        JSONObject payload = new JSONObject();
+        payload.put("model", parser.parse(engineModel.getModel()));
+        payload.put("weights", parser.parse(engineModel.getWeights()));
+        return payload.toJSONString();
+    }
+
+    public boolean init(String payload) {
+        initialized = false;
+        try {
+            JSONObject parsed = (JSONObject) new JSONParser().parse(payload);
+            JSONObject config = (JSONObject) parsed.get("model");
+            // Older exports name the weights "weight".
+            JSONArray weights = (JSONArray) (parsed.containsKey("weights") ? parsed.get("weights") : parsed.get("weight"));
+            if (config == null || weights == null) {
+                log.error("Model payload is missing the model config or weights.");
+                return false;
+            }
+
+            layers = buildLayers(config);
+            loadWeights(weights);
+            outputLayer = (String) ((JSONArray) ((JSONArray) config.get("output_layers")).get(0)).get(0);
+            initialized = true;
+        }
+        catch (Exception e) {
+            log.error("Could not init.", e);
+        }
+        return initialized;
+    }
+
+    public double predict(FrameTensor xRaw, FrameTensor x40, FrameTensor x100) {
+        if (!initialized) {
+            log.error("Model must be initialized before predictions can be made");
+            return -1;
+        }
+        try {
+            Map<String, FrameTensor> inputs = new HashMap<>();
+            inputs.put("x_raw", xRaw);
+            inputs.put("x_40", x40);
+            inputs.put("x_100", x100);
+
+            Map<String, float[]> outputs = new HashMap<>();
+            for (Layer layer : layers) {
+                if (layer instanceof LstmLayer) {
+                    FrameTensor window = inputs.get(layer.inbound[0]);
+                    if (window == null) throw new IllegalArgumentException("No window for input " + layer.inbound[0]);
+                    outputs.put(layer.name, ((LstmLayer) layer).forward(window));
+                }
+                else if (layer instanceof ConcatenateLayer) {
+                    outputs.put(layer.name, ((ConcatenateLayer) layer).forward(outputs));
+                }
+                else if (layer instanceof DenseLayer) {
+                    outputs.put(layer.name, ((DenseLayer) layer).forward(outputs.get(layer.inbound[0])));
+                }
+            }
+            return outputs.get(outputLayer)[0];
+        }
+        catch (Exception e) {
+            log.error("Could not predict.", e);
+        }
+        return -1;
+    }
+
+    public void kill() {
+        initialized = false;
+        layers = null;
+    }
+
+    public boolean isRunning() {
+        return initialized;
+    }
+
+    /**
+     * Build the layers from the Keras functional model config. Keras lists the layers in topological order.
+     */
+    private static List<Layer> buildLayers(JSONObject config) {
+        List<Layer> layers = new ArrayList<>();
+        Map<String, Layer> byName = new HashMap<>();
+
+        for (Object o : (JSONArray) config.get("layers")) {
+            JSONObject layerJson = (JSONObject) o;
+            String className = (String) layerJson.get("class_name");
+            String name = (String) layerJson.get("name");
+            JSONObject layerConfig = (JSONObject) layerJson.get("config");
+            String[] inbound = inboundNames((JSONArray) layerJson.get("inbound_nodes"));
+
+            Layer layer;
+            switch (className) {
+                case "InputLayer": {
+                    JSONArray shape = (JSONArray) layerConfig.get("batch_input_shape");
+                    layer = new InputLayer(name, toInt(shape.get(1)), toInt(shape.get(2)));
+                    break;
+                }
+                case "LSTM": {
+                    Layer input = byName.get(inbound[0]);
+                    if (!(input instanceof InputLayer)) throw new IllegalArgumentException(name + " must read from an InputLayer");
+                    if (Boolean.TRUE.equals(layerConfig.get("return_sequences")) || Boolean.TRUE.equals(layerConfig.get("go_backwards")) ||
+                            Boolean.TRUE.equals(layerConfig.get("stateful"))) {
+                        throw new IllegalArgumentException(name + " uses an unsupported LSTM mode");
+                    }
+                    layer = new LstmLayer(name, inbound[0], input.outputSize, toInt(layerConfig.get("units")),
+                            Activation.fromKeras((String) layerConfig.get("activation")),
+                            Activation.fromKeras((String) layerConfig.get("recurrent_activation")),
+                            !Boolean.FALSE.equals(layerConfig.get("use_bias")));
+                    break;
+                }
+                case "Concatenate": {
+                    layer = new ConcatenateLayer(name, inbound);
+                    for (String input : inbound) layer.outputSize += byName.get(input).outputSize;
+                    break;
+                }
+                case "Dense": {
+                    layer = new DenseLayer(name, inbound[0], byName.get(inbound[0]).outputSize, toInt(layerConfig.get("units")),
+                            Activation.fromKeras((String) layerConfig.get("activation")),
+                            !Boolean.FALSE.equals(layerConfig.get("use_bias")));
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unsupported layer: " + className);
+            }
+            layers.add(layer);
+            byName.put(name, layer);
+        }
+        return layers;
+    }
+
+    /**
+     * Assign the weight arrays to the layers in the order Keras' get_weights() returns them.
+     */
+    private void loadWeights(JSONArray weights) {
+        Iterator<Object> it = weights.iterator();
+        for (Layer layer : layers) {
+            if (layer instanceof LstmLayer) {
+                LstmLayer lstm = (LstmLayer) layer;
+                int gates = 4 * lstm.outputSize;
+                lstm.kernel = flatten((JSONArray) it.next(), lstm.inputSize, gates);
+                lstm.recurrentKernel = flatten((JSONArray) it.next(), lstm.outputSize, gates);
+                if (lstm.useBias) lstm.bias = flatten((JSONArray) it.next(), 1, gates);
+            }
+            else if (layer instanceof DenseLayer) {
+                DenseLayer dense = (DenseLayer) layer;
+                dense.kernel = flatten((JSONArray) it.next(), dense.inputSize, dense.outputSize);
+                if (dense.useBias) dense.bias = flatten((JSONArray) it.next(), 1, dense.outputSize);
+            }
+        }
+        if (it.hasNext()) throw new IllegalArgumentException("More weight arrays were given than the model uses");
+    }
+
+    /**
+     * Flatten a 1D or 2D JSON array into a row-major float array, checking its shape.
+     */
+    private static float[] flatten(JSONArray array, int rows, int cols) {
+        float[] result = new float[rows * cols];
+        if (rows == 1 && array.size() == cols && !(array.get(0) instanceof JSONArray)) {
+            for (int j = 0; j < cols; j++) result[j] = ((Number) array.get(j)).floatValue();
+            return result;
+        }
+        if (array.size() != rows) throw new IllegalArgumentException("Expected " + rows + " rows but got " + array.size());
+        for (int i = 0; i < rows; i++) {
+            JSONArray row = (JSONArray) array.get(i);
+            if (row.size() != cols) throw new IllegalArgumentException("Expected " + cols + " columns but got " + row.size());
+            for (int j = 0; j < cols; j++) result[i * cols + j] = ((Number) row.get(j)).floatValue();
+        }
+        return result;
+    }
+
+    private static String[] inboundNames(JSONArray inboundNodes) {
+        if (inboundNodes == null || inboundNodes.isEmpty()) return new String[0];
+        JSONArray node = (JSONArray) inboundNodes.get(0);
+        String[] names = new String[node.size()];
+        for (int i = 0; i < names.length; i++) names[i] = (String) ((JSONArray) node.get(i)).get(0);
+        return names;
+    }
+
+    private static int toInt(Object value) {
+        return ((Number) value).intValue();
+    }
+}
@@ -0,0 +1,91 @@
+package com.biokey.client.services.engine;
+
+import com.biokey.client.constants.BackpressureConstants;
+import com.biokey.client.models.pojo.AnalysisResultPojo;
+import org.apache.log4j.Logger;
+
+/**
+ * Decides when the analysis engine runs the model. Every update of the model inputs is recorded as pending, and a
+ * prediction covers all of the pending updates at once. When coalescing, the prediction waits until no more key
+ * events are queued, so a burst of typing costs a single inference over the latest windows.
+ *
+ * A coalesced prediction gives one analysis result for the whole batch, timestamped with its newest key, rather than a
+ * result per key. The updates that did not get a result of their own are counted, and the engine reports the count.
+ *
+ * Not thread safe, must only be used from the engine's pipeline thread. The counts may be read from any thread.
+ */
+public class PredictionScheduler {
+
+    private static Logger log = Logger.getLogger(PredictionScheduler.class);
+
+    private final BackpressureConstants policy;
+
+    private int pendingUpdates = 0;
+    private long newestKeyTimeStamp = 0;
+    // Only written by the pipeline thread.
+    private volatile long predictions = 0;
+    private volatile long coalescedUpdates = 0;
+
+    public PredictionScheduler(BackpressureConstants policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Record that the model inputs were updated for a key.
+     *
+     * @param keyTimeStamp the time of the key that caused the update
+     */
+    public void inputsUpdated(long keyTimeStamp) {
+        pendingUpdates++;
+        newestKeyTimeStamp = keyTimeStamp;
+    }
+
+    /**
+     * @param endOfBatch true if no other key event is waiting to be processed
+     * @return true if a prediction should be made now.
+     */
+    public boolean isPredictionDue(boolean endOfBatch) {
+        return pendingUpdates > 0 && (endOfBatch || policy != BackpressureConstants.COALESCE);
+    }
+
+    /**
+     * Run the model over the latest windows for all of the pending updates.
+     *
+     * @param model the model to run
+     * @param xRaw window of individual feature vectors
+     * @param x40 window of 40 keystroke frame feature vectors
+     * @param x100 window of 100 keystroke frame feature vectors
+     * @return the result, timestamped with the newest key it covers
+     */
+    public AnalysisResultPojo predict(IAnalysisModel model, FrameTensor xRaw, FrameTensor x40, FrameTensor x100) {
+        float probability = (float) model.predict(xRaw, x40, x100);
+        AnalysisResultPojo result = new AnalysisResultPojo(newestKeyTimeStamp, probability);
+
+        predictions++;
+        coalescedUpdates += pendingUpdates - 1;
+        if (pendingUpdates > 1) log.debug("Coalesced " + pendingUpdates + " updates into one prediction");
+        pendingUpdates = 0;
+        return result;
+    }
+
+    /**
+     * Forget the pending updates, for when the engine stops.
+     */
+    public void reset() {
+        pendingUpdates = 0;
+    }
+
+    /**
+     * @return the number of predictions made.
+     */
+    public long getPredictions() {
+        return predictions;
+    }
+
+    /**
+     * @return the number of input updates that did not get a prediction of their own.
+     */
+    public long getCoalescedUpdates() {
+        return coalescedUpdates;
+    }
+}
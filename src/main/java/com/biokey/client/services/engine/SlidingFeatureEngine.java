@@ -0,0 +1,334 @@
+package com.biokey.client.services.engine;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+import static com.biokey.client.constants.EngineConstants.LONG_FRAME;
+import static com.biokey.client.constants.EngineConstants.SHORT_FRAME;
+
+/**
+ * Maintains the three feature frames of the analysis engine as sequences are completed.
+ * A completed sequence belongs to a frame while the engine sequence number is within the frame size of the index
+ * where the sequence started. Each feature keeps the sequences currently inside the long frame and a count for each
+ * frame, so a key-up only touches the features whose sequences entered or left a frame. Sequences that have left the
+ * long frame are evicted.
+ *
+ * Sequences are stored in a pool of primitive arrays. Each one is linked into the list of its feature, in the order
+ * it was added, and into the bucket of its start index. Evicted sequences go back to the pool, so once the pool has
+ * grown to the busiest long frame, memory stays constant however long the session runs.
+ *
+ * Not thread safe, callers must serialize access.
+ */
+public class SlidingFeatureEngine {
+
+    // Mutable score handed to the averaging collector, so averaging allocates nothing.
+    private static final class Score {
+        double value;
+    }
+
+    public static final double DEFAULT_RAW_VALUE = 0.0;
+    public static final double DEFAULT_FRAME_VALUE = 0.5;
+
+    private static final int NONE = -1;
+    private static final int INITIAL_POOL_SIZE = 1024;
+
+    // Buckets of sequences by start index. Must be larger than the long frame so a bucket is cleared before it is reused.
+    private static final int SLOTS = Integer.highestOneBit(LONG_FRAME) << 1;
+
+    // Averages use the same collector the frames were originally built with, so results are bit for bit identical.
+    @SuppressWarnings("unchecked")
+    private static final Collector<Score, Object, Double> AVERAGE =
+            (Collector<Score, Object, Double>) (Collector<Score, ?, Double>) Collectors.averagingDouble((Score s) -> s.value);
+    private static final Supplier<Object> AVERAGE_SUPPLIER = AVERAGE.supplier();
+    private static final BiConsumer<Object, Score> AVERAGE_ACCUMULATOR = AVERAGE.accumulator();
+    private static final Function<Object, Double> AVERAGE_FINISHER = AVERAGE.finisher();
+
+    private final int featureSize;
+
+    // Pool of sequences. Free entries are chained through nextInFeature.
+    private int[] features = new int[INITIAL_POOL_SIZE];
+    private long[] indexStarts = new long[INITIAL_POOL_SIZE];
+    private double[] scores = new double[INITIAL_POOL_SIZE];
+    private boolean[] inShortFrame = new boolean[INITIAL_POOL_SIZE];
+    private int[] nextInFeature = new int[INITIAL_POOL_SIZE];
+    private int[] previousInFeature = new int[INITIAL_POOL_SIZE];
+    private int[] nextInSlot = new int[INITIAL_POOL_SIZE];
+    private int pooled = 0;
+    private int freeEntry = NONE;
+
+    private final int[] featureHeads;
+    private final int[] featureTails;
+    private final int[] slotHeads = new int[SLOTS];
+    private final int[] shortFrameCount;
+    private final int[] longFrameCount;
+    private final Score score = new Score();
+
+    private final boolean[] dirty;
+    private final int[] dirtyFeatures;
+    private int dirtyCount = 0;
+
+    // Log durations of the sequences that ended at the current and at the previous engine sequence number.
+    private int[] rawCurrentFeatures = new int[16];
+    private double[] rawCurrentValues = new double[16];
+    private int rawCurrentCount = 0;
+    private int[] rawPreviousFeatures = new int[16];
+    private double[] rawPreviousValues = new double[16];
+    private int rawPreviousCount = 0;
+    private final int[] rawFeaturesSet;
+    private int rawFeaturesSetCount = 0;
+
+    private final double[] rawFrame;
+    private final double[] shortFrame;
+    private final double[] longFrame;
+
+    private long seqNumber = 0;
+
+    public SlidingFeatureEngine(int featureSize) {
+        this.featureSize = featureSize;
+        featureHeads = new int[featureSize];
+        featureTails = new int[featureSize];
+        Arrays.fill(featureHeads, NONE);
+        Arrays.fill(featureTails, NONE);
+        Arrays.fill(slotHeads, NONE);
+        shortFrameCount = new int[featureSize];
+        longFrameCount = new int[featureSize];
+        dirty = new boolean[featureSize];
+        dirtyFeatures = new int[featureSize];
+        rawFeaturesSet = new int[featureSize];
+
+        rawFrame = new double[featureSize];
+        shortFrame = new double[featureSize];
+        longFrame = new double[featureSize];
+        Arrays.fill(rawFrame, DEFAULT_RAW_VALUE);
+        Arrays.fill(shortFrame, DEFAULT_FRAME_VALUE);
+        Arrays.fill(longFrame, DEFAULT_FRAME_VALUE);
+    }
+
+    /**
+     * @return the number of features in each frame.
+     */
+    public int getFeatureSize() {
+        return featureSize;
+    }
+
+    /**
+     * Add a completed sequence.
+     *
+     * @param seqNumber the engine sequence number when the sequence was completed
+     * @param feature the feature index of the sequence
+     * @param duration the duration of the sequence in milliseconds
+     * @param indexStart the engine sequence number of the first key of the sequence
+     * @param score the score of the duration against the profile
+     */
+    public void addSequence(long seqNumber, int feature, long duration, long indexStart, double score) {
+        advance(seqNumber);
+
+        if (duration > 0) addRaw(feature, Math.log(duration));
+
+        if (seqNumber - indexStart > LONG_FRAME) return;
+        int entry = allocate();
+        features[entry] = feature;
+        indexStarts[entry] = indexStart;
+        scores[entry] = score;
+        inShortFrame[entry] = seqNumber - indexStart <= SHORT_FRAME;
+
+        // Append to the list of the feature and push onto the bucket of the start index.
+        nextInFeature[entry] = NONE;
+        previousInFeature[entry] = featureTails[feature];
+        if (featureTails[feature] == NONE) featureHeads[feature] = entry;
+        else nextInFeature[featureTails[feature]] = entry;
+        featureTails[feature] = entry;
+        nextInSlot[entry] = slotHeads[slot(indexStart)];
+        slotHeads[slot(indexStart)] = entry;
+
+        longFrameCount[feature]++;
+        if (inShortFrame[entry]) shortFrameCount[feature]++;
+        markDirty(feature);
+    }
+
+    /**
+     * Bring the frames up to date with the engine sequence number.
+     * The arrays returned by the frame getters are valid until the next call to this class.
+     *
+     * @param seqNumber the current engine sequence number
+     */
+    public void update(long seqNumber) {
+        advance(seqNumber);
+
+        // Individual features are the log durations of the sequences that ended at the previous sequence number.
+        for (int i = 0; i < rawFeaturesSetCount; i++) rawFrame[rawFeaturesSet[i]] = DEFAULT_RAW_VALUE;
+        rawFeaturesSetCount = 0;
+        for (int i = 0; i < rawPreviousCount; i++) {
+            int feature = rawPreviousFeatures[i];
+            if (rawFrame[feature] == DEFAULT_RAW_VALUE) rawFeaturesSet[rawFeaturesSetCount++] = feature;
+            rawFrame[feature] = rawPreviousValues[i];
+        }
+
+        for (int i = 0; i < dirtyCount; i++) {
+            int feature = dirtyFeatures[i];
+            dirty[feature] = false;
+            shortFrame[feature] = shortFrameCount[feature] == 0 ? DEFAULT_FRAME_VALUE : average(feature, true);
+            longFrame[feature] = longFrameCount[feature] == 0 ? DEFAULT_FRAME_VALUE : average(feature, false);
+        }
+        dirtyCount = 0;
+    }
+
+    /**
+     * @return the log durations of the sequences that ended at the previous engine sequence number.
+     */
+    public double[] getRawFrame() {
+        return rawFrame;
+    }
+
+    /**
+     * @return the average score of each feature over the short frame.
+     */
+    public double[] getShortFrame() {
+        return shortFrame;
+    }
+
+    /**
+     * @return the average score of each feature over the long frame.
+     */
+    public double[] getLongFrame() {
+        return longFrame;
+    }
+
+    /**
+     * @return the number of completed sequences currently held.
+     */
+    public int getRetainedSequences() {
+        int retained = 0;
+        for (int i = 0; i < featureSize; i++) retained += longFrameCount[i];
+        return retained;
+    }
+
+    /**
+     * @return an estimate of the heap used by the sequence storage, in bytes, not counting object headers.
+     */
+    public long getRetainedBytes() {
+        long perEntry = Integer.BYTES * 4 + Long.BYTES + Double.BYTES + 1;
+        long perFeature = Integer.BYTES * 6 + Double.BYTES * 3 + 1;
+        long raw = (long) (Integer.BYTES + Double.BYTES) * (rawCurrentFeatures.length + rawPreviousFeatures.length);
+        return perEntry * features.length + perFeature * featureSize + (long) Integer.BYTES * SLOTS + raw;
+    }
+
+    /**
+     * Move the frames forward to the new sequence number, dropping sequences that have left each frame.
+     */
+    private void advance(long newSeqNumber) {
+        if (newSeqNumber <= seqNumber) return;
+        long oldSeqNumber = seqNumber;
+        seqNumber = newSeqNumber;
+
+        if (newSeqNumber == oldSeqNumber + 1) {
+            int[] recycledFeatures = rawPreviousFeatures;
+            double[] recycledValues = rawPreviousValues;
+            rawPreviousFeatures = rawCurrentFeatures;
+            rawPreviousValues = rawCurrentValues;
+            rawPreviousCount = rawCurrentCount;
+            rawCurrentFeatures = recycledFeatures;
+            rawCurrentValues = recycledValues;
+        } else rawPreviousCount = 0;
+        rawCurrentCount = 0;
+
+        // Live sequences started at or before the old sequence number, so only starts in
+        // [old - frame, min(new - frame - 1, old)] can have just left a frame.
+        long lastShort = Math.min(newSeqNumber - SHORT_FRAME - 1, oldSeqNumber);
+        for (long start = oldSeqNumber - SHORT_FRAME; start <= lastShort; start++) {
+            for (int entry = slotHeads[slot(start)]; entry != NONE; entry = nextInSlot[entry]) {
+                if (indexStarts[entry] != start || !inShortFrame[entry]) continue;
+                inShortFrame[entry] = false;
+                shortFrameCount[features[entry]]--;
+                markDirty(features[entry]);
+            }
+        }
+
+        long lastLong = Math.min(newSeqNumber - LONG_FRAME - 1, oldSeqNumber);
+        for (long start = oldSeqNumber - LONG_FRAME; start <= lastLong; start++) {
+            int entry = slotHeads[slot(start)];
+            slotHeads[slot(start)] = NONE;
+            while (entry != NONE) {
+                int nextEntry = nextInSlot[entry];
+                int feature = features[entry];
+                longFrameCount[feature]--;
+                if (inShortFrame[entry]) shortFrameCount[feature]--;
+                markDirty(feature);
+                release(entry);
+                entry = nextEntry;
+            }
+        }
+    }
+
+    private double average(int feature, boolean shortFrameOnly) {
+        Object container = AVERAGE_SUPPLIER.get();
+        for (int entry = featureHeads[feature]; entry != NONE; entry = nextInFeature[entry]) {
+            if (shortFrameOnly && !inShortFrame[entry]) continue;
+            score.value = scores[entry];
+            AVERAGE_ACCUMULATOR.accept(container, score);
+        }
+        return AVERAGE_FINISHER.apply(container);
+    }
+
+    /**
+     * Take an entry from the pool, growing the pool if every entry is in use.
+     */
+    private int allocate() {
+        if (freeEntry != NONE) {
+            int entry = freeEntry;
+            freeEntry = nextInFeature[entry];
+            return entry;
+        }
+        if (pooled == features.length) {
+            int capacity = pooled * 2;
+            features = Arrays.copyOf(features, capacity);
+            indexStarts = Arrays.copyOf(indexStarts, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            inShortFrame = Arrays.copyOf(inShortFrame, capacity);
+            nextInFeature = Arrays.copyOf(nextInFeature, capacity);
+            previousInFeature = Arrays.copyOf(previousInFeature, capacity);
+            nextInSlot = Arrays.copyOf(nextInSlot, capacity);
+        }
+        return pooled++;
+    }
+
+    /**
+     * Unlink an entry from the list of its feature and return it to the pool.
+     */
+    private void release(int entry) {
+        int feature = features[entry];
+        int previous = previousInFeature[entry];
+        int next = nextInFeature[entry];
+        if (previous == NONE) featureHeads[feature] = next;
+        else nextInFeature[previous] = next;
+        if (next == NONE) featureTails[feature] = previous;
+        else previousInFeature[next] = previous;
+
+        nextInFeature[entry] = freeEntry;
+        freeEntry = entry;
+    }
+
+    private void addRaw(int feature, double logDuration) {
+        if (rawCurrentCount == rawCurrentFeatures.length) {
+            rawCurrentFeatures = Arrays.copyOf(rawCurrentFeatures, rawCurrentCount * 2);
+            rawCurrentValues = Arrays.copyOf(rawCurrentValues, rawCurrentCount * 2);
+        }
+        rawCurrentFeatures[rawCurrentCount] = feature;
+        rawCurrentValues[rawCurrentCount] = logDuration;
+        rawCurrentCount++;
+    }
+
+    private void markDirty(int feature) {
+        if (dirty[feature]) return;
+        dirty[feature] = true;
+        dirtyFeatures[dirtyCount++] = feature;
+    }
+
+    private static int slot(long indexStart) {
+        return (int) (indexStart & (SLOTS - 1));
+    }
+}
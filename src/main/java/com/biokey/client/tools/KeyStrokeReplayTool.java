@@ -0,0 +1,166 @@
+package com.biokey.client.tools;
+
+import com.biokey.client.constants.EngineConstants;
+import com.biokey.client.helpers.KeyStrokeCsvHelper;
+import com.biokey.client.models.pojo.*;
+import com.biokey.client.services.HeadlessAnalysisEngine;
+import com.biokey.client.services.engine.LstmEnsembleModel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays recorded key strokes through the analysis engine, without any view or native hook, and reports the
+ * throughput and the latency from each key release to the analysis result it produced.
+ *
+ * Usage: KeyStrokeReplayTool file.csv [--speed factor] [--user id] [--profile model.json] [--model ensemble.json] [--verbose]
+ *
+ * The file is read by {@link KeyStrokeCsvHelper}. Key strokes go through ClientStateController.enqueueKeyStroke as
+ * fast as they are taken, or with --speed when a virtual clock started at the first key stroke reaches their time
+ * stamp, the clock running factor times faster than real time. --profile gives the engine model of the typing profile
+ * (the tensorFlowModel of a typing profile from the server) and --model the ensemble it runs. Without a model, the
+ * engine still builds its frames but every prediction is -1.
+ */
+public class KeyStrokeReplayTool {
+
+    private static final long RESULT_WAIT = 10000; // milliseconds to wait for the result of the last key release
+
+    private final List<KeyStrokePojo> keyStrokes = new ArrayList<>();
+    // Index of the last key release with each time stamp, which is the time stamp of the result it produces.
+    private final Map<Long, Integer> keyUpIndex = new HashMap<>();
+    private long[] enqueueTimes;
+    private long lastKeyUpTimeStamp = Long.MIN_VALUE;
+
+    // Written by the engine thread only.
+    private long[] latencies;
+    private final AtomicInteger resultCount = new AtomicInteger();
+    private volatile long lastResultTimeStamp = Long.MIN_VALUE;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: KeyStrokeReplayTool file.csv [--speed factor] [--user id] " +
+                    "[--profile model.json] [--model ensemble.json] [--verbose]");
+            System.exit(1);
+        }
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--verbose")) options.put(args[i], "true");
+            else if (i + 1 < args.length) options.put(args[i], args[++i]);
+            else throw new IllegalArgumentException("Missing value for " + args[i]);
+        }
+        if (!options.containsKey("--verbose")) Logger.getRootLogger().setLevel(Level.WARN);
+
+        EngineModelPojo engineModel = options.containsKey("--profile") ?
+                new ObjectMapper().readValue(Paths.get(options.get("--profile")).toFile(), EngineModelPojo.class) :
+                new EngineModelPojo();
+        if (options.containsKey("--model")) {
+            LstmEnsembleModel.readExport(Paths.get(options.get("--model")), engineModel);
+        } else {
+            System.out.println("No --model given, every prediction will be -1.");
+            // The model logs an error for each prediction it cannot make.
+            Logger.getLogger(LstmEnsembleModel.class).setLevel(Level.OFF);
+        }
+
+        KeyStrokeReplayTool tool = new KeyStrokeReplayTool();
+        tool.load(Paths.get(args[0]), options.get("--user"));
+        tool.replay(engineModel, Double.parseDouble(options.getOrDefault("--speed", "0")));
+        System.exit(0);
+    }
+
+    /**
+     * Read the key strokes to replay.
+     *
+     * @param file the CSV file holding the key strokes
+     * @param userId the user whose key strokes are replayed, or null for all of them
+     */
+    private void load(Path file, String userId) throws Exception {
+        KeyStrokeCsvHelper.read(file, (String user, int key, boolean keyDown, long timeStamp, boolean isUser) -> {
+            if (userId != null && !userId.equals(user)) return;
+            if (!keyDown) {
+                keyUpIndex.put(timeStamp, keyStrokes.size());
+                lastKeyUpTimeStamp = timeStamp;
+            }
+            keyStrokes.add(new KeyStrokePojo(key, keyDown, timeStamp));
+        });
+        enqueueTimes = new long[keyStrokes.size()];
+        latencies = new long[keyStrokes.size()];
+        System.out.println("Read " + keyStrokes.size() + " key strokes from " + file);
+    }
+
+    /**
+     * Feed the key strokes to a headless engine and print the throughput and latencies.
+     *
+     * @param engineModel the engine model of the typing profile
+     * @param speed how many times faster than real time to replay, or 0 for as fast as possible
+     */
+    private void replay(EngineModelPojo engineModel, double speed) {
+        if (keyStrokes.isEmpty()) return;
+
+        HeadlessAnalysisEngine engine = new HeadlessAnalysisEngine(engineModel, (AnalysisResultPojo analysisResult) ->
+                resultProduced(analysisResult.getTimeStamp(), System.nanoTime()));
+
+        long firstTimeStamp = keyStrokes.get(0).getTimeStamp();
+        long start = System.nanoTime();
+        for (int i = 0; i < keyStrokes.size(); i++) {
+            KeyStrokePojo keyStroke = keyStrokes.get(i);
+            if (speed > 0) {
+                long due = start + (long) ((keyStroke.getTimeStamp() - firstTimeStamp) * 1000000 / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+            }
+            // The engine drops the oldest key strokes rather than hold up typing, so do not get a full queue ahead of it.
+            while (i - engine.getConsumed() >= EngineConstants.KEY_EVENT_RING_SIZE) LockSupport.parkNanos(10000);
+            enqueueTimes[i] = System.nanoTime();
+            engine.enqueueKeyStroke(keyStroke);
+        }
+        long enqueued = System.nanoTime();
+
+        long giveUp = enqueued + RESULT_WAIT * 1000000;
+        while (lastResultTimeStamp < lastKeyUpTimeStamp && System.nanoTime() < giveUp) LockSupport.parkNanos(1000000);
+        long end = System.nanoTime();
+        engine.close();
+
+        report(start, enqueued, end);
+        System.out.println(engine.getEngine().getPredictions() + " predictions, " + engine.getEngine().getCoalescedUpdates() +
+                " key releases coalesced into a later prediction");
+    }
+
+    /**
+     * Record the latency of a result, on the engine thread.
+     */
+    private void resultProduced(long timeStamp, long now) {
+        Integer index = keyUpIndex.get(timeStamp);
+        if (index != null && enqueueTimes[index] != 0) {
+            latencies[resultCount.get()] = now - enqueueTimes[index];
+            resultCount.incrementAndGet();
+        }
+        lastResultTimeStamp = timeStamp;
+    }
+
+    private void report(long start, long enqueued, long end) {
+        int results = resultCount.get();
+        long[] sorted = Arrays.copyOf(latencies, results);
+        Arrays.sort(sorted);
+
+        double seconds = (end - start) / 1e9;
+        System.out.printf("Enqueued %d key strokes in %.1f ms%n", keyStrokes.size(), (enqueued - start) / 1e6);
+        System.out.printf("Processed %d key strokes in %.1f ms: %.0f keys/s%n", keyStrokes.size(), seconds * 1000,
+                keyStrokes.size() / seconds);
+        if (lastResultTimeStamp < lastKeyUpTimeStamp) {
+            System.out.println("The last key release did not produce a result within " + RESULT_WAIT + " ms");
+        }
+        if (results == 0) {
+            System.out.println("No analysis results were produced");
+            return;
+        }
+        System.out.printf("%d analysis results, key up to result latency p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                results, sorted[(results - 1) / 2] / 1e6, sorted[(results - 1) * 99 / 100] / 1e6, sorted[results - 1] / 1e6);
+    }
+}
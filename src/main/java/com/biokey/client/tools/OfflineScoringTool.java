@@ -0,0 +1,375 @@
+package com.biokey.client.tools;
+
+import com.biokey.client.helpers.KeyStrokeCsvHelper;
+import com.biokey.client.models.pojo.EngineModelPojo;
+import com.biokey.client.services.engine.CompiledProfile;
+import com.biokey.client.services.engine.FeaturePipeline;
+import com.biokey.client.services.engine.LstmEnsembleModel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.json.simple.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static com.biokey.client.constants.AppConstants.CHALLENGE_AVERAGE_THRESHOLD;
+import static com.biokey.client.constants.AppConstants.CHALLENGE_LONG_WINDOW;
+import static com.biokey.client.constants.AppConstants.CHALLENGE_LOW_SCORE;
+import static com.biokey.client.constants.AppConstants.CHALLENGE_LOW_SCORE_COUNT;
+import static com.biokey.client.constants.AppConstants.CHALLENGE_SHORT_WINDOW;
+
+/**
+ * Scores recorded typing of many users offline and reports how the rules ChallengeService challenges with would do on
+ * it, for tuning their thresholds.
+ *
+ * Usage: OfflineScoringTool file.csv --profile model.json [--model ensemble.json] [--threads n] [--session-gap ms]
+ *
+ * The file is read by {@link KeyStrokeCsvHelper} and split into sessions: runs of key strokes of one user, ended by
+ * another user's key stroke or a pause longer than --session-gap (30 minutes by default). Each session is scored by an
+ * engine of its own, started from the reset frames like the client's, so sessions are independent and are scored in
+ * parallel on a pool of --threads threads (one per processor by default). --profile gives the engine model of the
+ * typing profile and --model the ensemble it runs, if the engine model does not hold it. Key strokes marked as the
+ * user's own are genuine, the others are imposters'.
+ *
+ * Reported are the distributions of the genuine and imposter scores, the trade-off between rejecting genuine and
+ * imposter scores at each threshold, and how many genuine and imposter sessions would be challenged, and how soon,
+ * with the current challenge rules and with each of their thresholds changed.
+ */
+public class OfflineScoringTool {
+
+    private static final long DEFAULT_SESSION_GAP = 30 * 60 * 1000L; // milliseconds of pause that end a session
+    private static final int WINDOW_SIZE = 100; // frames in each model input window, as in the engine
+    private static final int HISTOGRAM_BINS = 10;
+    private static final double SWEEP_STEP = 0.05;
+
+    /**
+     * Key strokes of one user without a long pause, and the scores the engine gave them.
+     */
+    static class Session {
+
+        private final String userId;
+        private final boolean isUser;
+        private final List<int[]> keyStrokes = new ArrayList<>(); // key and 1 for a press or 0 for a release
+        private final List<Long> timeStamps = new ArrayList<>();
+
+        // Score of each prediction and the number of key strokes of the session it was made after.
+        private float[] scores;
+        private int[] scoredAfter;
+        private long cpuTime;
+
+        Session(String userId, boolean isUser) {
+            this.userId = userId;
+            this.isUser = isUser;
+        }
+
+        String getUserId() {
+            return userId;
+        }
+
+        boolean isUser() {
+            return isUser;
+        }
+
+        int size() {
+            return keyStrokes.size();
+        }
+
+        long lastTimeStamp() {
+            return timeStamps.get(timeStamps.size() - 1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: OfflineScoringTool file.csv --profile model.json [--model ensemble.json] " +
+                    "[--threads n] [--session-gap ms]");
+            System.exit(1);
+        }
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (i + 1 < args.length) options.put(args[i], args[++i]);
+            else throw new IllegalArgumentException("Missing value for " + args[i]);
+        }
+        if (!options.containsKey("--profile")) throw new IllegalArgumentException("No --profile given");
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        EngineModelPojo engineModel = new ObjectMapper().readValue(Paths.get(options.get("--profile")).toFile(), EngineModelPojo.class);
+        String payload = readPayload(engineModel, options.get("--model"));
+        CompiledProfile profile = CompiledProfile.compile(engineModel);
+        JSONObject resetFrames = FeaturePipeline.readResetFrames();
+
+        long sessionGap = Long.parseLong(options.getOrDefault("--session-gap", Long.toString(DEFAULT_SESSION_GAP)));
+        List<Session> sessions = partition(Paths.get(args[0]), sessionGap);
+        int keyStrokes = sessions.stream().mapToInt(Session::size).sum();
+        System.out.println("Read " + keyStrokes + " key strokes in " + sessions.size() + " sessions from " + args[0]);
+
+        int threads = Integer.parseInt(options.getOrDefault("--threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        long start = System.nanoTime();
+        scoreAll(sessions, profile, payload, resetFrames, threads);
+        long wallTime = System.nanoTime() - start;
+
+        long cpuTime = sessions.stream().mapToLong(session -> session.cpuTime).sum();
+        System.out.printf("Scored on %d threads in %.1f ms: %.0f keys/s, %.1f ms of CPU in the sessions, %.2f sessions at a time%n",
+                threads, wallTime / 1e6, keyStrokes / (wallTime / 1e9), cpuTime / 1e6, (double) cpuTime / wallTime);
+
+        report(sessions);
+        System.exit(0);
+    }
+
+    /**
+     * Read the ensemble the engine runs, from the file if there is one or else from the engine model.
+     *
+     * @return the payload the model is initialized with
+     */
+    private static String readPayload(EngineModelPojo engineModel, String file) throws Exception {
+        if (file != null) LstmEnsembleModel.readExport(Paths.get(file), engineModel);
+        String payload = LstmEnsembleModel.payloadOf(engineModel);
+        if (payload == null) throw new IllegalArgumentException("The engine model has no ensemble and no --model was given");
+        return payload;
+    }
+
+    /**
+     * Split the key strokes in the file into sessions.
+     *
+     * @param file the CSV file holding the key strokes
+     * @param sessionGap milliseconds between key strokes of a user after which a new session starts
+     * @return the sessions in the order they start in the file
+     */
+    static List<Session> partition(Path file, long sessionGap) throws Exception {
+        List<Session> sessions = new ArrayList<>();
+        KeyStrokeCsvHelper.read(file, (String userId, int key, boolean keyDown, long timeStamp, boolean isUser) -> {
+            Session session = sessions.isEmpty() ? null : sessions.get(sessions.size() - 1);
+            if (session == null || !session.userId.equals(userId) || session.isUser != isUser ||
+                    timeStamp - session.lastTimeStamp() > sessionGap) {
+                session = new Session(userId, isUser);
+                sessions.add(session);
+            }
+            session.keyStrokes.add(new int[] {key, keyDown ? 1 : 0});
+            session.timeStamps.add(timeStamp);
+        });
+        return sessions;
+    }
+
+    /**
+     * Score every session on a pool of the given number of threads.
+     */
+    private static void scoreAll(List<Session> sessions, CompiledProfile profile, String payload, JSONObject resetFrames,
+                                 int threads) throws Exception {
+        List<Callable<Session>> tasks = new ArrayList<>();
+        for (Session session : sessions) tasks.add(() -> score(session, profile, payload, resetFrames));
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Session> scored : pool.invokeAll(tasks)) scored.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Score a session like the engine would if it was typed on a client that just started, with a prediction after
+     * every key release that updates the frames.
+     *
+     * @param profile the compiled profile, only read
+     * @param payload the payload the model is initialized with
+     * @param resetFrames the frames the windows start with, only read
+     * @return the session, with its scores
+     */
+    static Session score(Session session, CompiledProfile profile, String payload, JSONObject resetFrames) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+
+        FeaturePipeline features = new FeaturePipeline(WINDOW_SIZE);
+        features.reset(profile.getFeatureSize());
+        features.pushFrames(resetFrames);
+        LstmEnsembleModel model = new LstmEnsembleModel();
+        model.init(payload);
+
+        float[] scores = new float[session.size()];
+        int[] scoredAfter = new int[session.size()];
+        int predictions = 0;
+        for (int i = 0; i < session.size(); i++) {
+            int[] keyStroke = session.keyStrokes.get(i);
+            if (!features.keyEvent(profile, keyStroke[0], keyStroke[1] == 1, session.timeStamps.get(i))) continue;
+            features.updateWindows();
+            scores[predictions] = (float) model.predict(features.getRawWindow(), features.getShortWindow(), features.getLongWindow());
+            scoredAfter[predictions++] = i + 1;
+        }
+        model.kill();
+
+        session.scores = Arrays.copyOf(scores, predictions);
+        session.scoredAfter = Arrays.copyOf(scoredAfter, predictions);
+        session.cpuTime = threads.getCurrentThreadCpuTime() - cpuStart;
+        return session;
+    }
+
+    /**
+     * Find the first score at which ChallengeService would challenge, if it had seen no scores before the given one.
+     *
+     * @param scores the scores in the order they were made
+     * @param from the index of the first score the challenge rules see
+     * @param averageThreshold average of the long window below which the user is challenged
+     * @param lowScoreCount low scores in the short window that challenge the user
+     * @return the index of the score that is challenged, or -1 if none is
+     */
+    static int firstChallenge(float[] scores, int from, double averageThreshold, int lowScoreCount) {
+        for (int i = from + CHALLENGE_LONG_WINDOW - 1; i < scores.length; i++) {
+            double sum = 0;
+            for (int j = i - CHALLENGE_LONG_WINDOW + 1; j <= i; j++) sum += scores[j];
+            long low = 0;
+            for (int j = i - CHALLENGE_SHORT_WINDOW + 1; j <= i; j++) if (scores[j] <= CHALLENGE_LOW_SCORE) low++;
+            if (scores[i] < 0 || sum / CHALLENGE_LONG_WINDOW < averageThreshold || low >= lowScoreCount) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of times the session would be challenged, the scores being forgotten after each challenge
+     *         like when the user is unlocked.
+     */
+    static int challenges(float[] scores, double averageThreshold, int lowScoreCount) {
+        int challenges = 0;
+        for (int i = firstChallenge(scores, 0, averageThreshold, lowScoreCount); i >= 0;
+             i = firstChallenge(scores, i + 1, averageThreshold, lowScoreCount)) {
+            challenges++;
+        }
+        return challenges;
+    }
+
+    private static void report(List<Session> sessions) {
+        List<Session> genuine = new ArrayList<>();
+        List<Session> imposters = new ArrayList<>();
+        for (Session session : sessions) (session.isUser ? genuine : imposters).add(session);
+        float[] genuineScores = allScores(genuine);
+        float[] imposterScores = allScores(imposters);
+
+        System.out.println();
+        System.out.printf("%d genuine sessions with %d scores, %d imposter sessions with %d scores%n",
+                genuine.size(), genuineScores.length, imposters.size(), imposterScores.length);
+        System.out.println("Scores            p5     p25    p50    p75    p95");
+        System.out.println("  genuine   " + percentiles(genuineScores));
+        System.out.println("  imposter  " + percentiles(imposterScores));
+
+        System.out.println("Histogram        genuine  imposter");
+        for (int bin = -1; bin < HISTOGRAM_BINS; bin++) {
+            double low = (double) bin / HISTOGRAM_BINS;
+            double high = (double) (bin + 1) / HISTOGRAM_BINS;
+            System.out.printf("  %-13s %7s  %7s%n", bin < 0 ? "failed" : String.format("%.1f-%.1f", low, high),
+                    share(genuineScores, low, high, bin), share(imposterScores, low, high, bin));
+        }
+
+        if (genuineScores.length > 0 && imposterScores.length > 0) {
+            System.out.printf("Area under the ROC curve of single scores: %.4f%n", areaUnderCurve(genuineScores, imposterScores));
+        }
+        System.out.println("Scores rejected below  genuine  imposter");
+        for (double threshold = SWEEP_STEP; threshold < 1; threshold += SWEEP_STEP) {
+            System.out.printf("  %.2f                 %7s  %7s%n", threshold,
+                    percent(below(genuineScores, threshold), genuineScores.length),
+                    percent(below(imposterScores, threshold), imposterScores.length));
+        }
+
+        System.out.println();
+        System.out.println("Challenge rules: average of the last " + CHALLENGE_LONG_WINDOW + " scores below the threshold, " +
+                "or count of the last " + CHALLENGE_SHORT_WINDOW + " scores at or below " + CHALLENGE_LOW_SCORE + " at least the count");
+        System.out.println("  average  count  genuine challenged  challenges per genuine session  imposters challenged  imposter keys to challenge p50");
+        for (int step = 0; step * SWEEP_STEP < 1; step++) {
+            reportRules(genuine, imposters, step * SWEEP_STEP, CHALLENGE_LOW_SCORE_COUNT);
+        }
+        System.out.println();
+        for (int count = 1; count <= CHALLENGE_SHORT_WINDOW; count++) {
+            reportRules(genuine, imposters, CHALLENGE_AVERAGE_THRESHOLD, count);
+        }
+    }
+
+    private static void reportRules(List<Session> genuine, List<Session> imposters, double averageThreshold, int lowScoreCount) {
+        int genuineChallenged = 0;
+        int genuineChallenges = 0;
+        for (Session session : genuine) {
+            int challenges = challenges(session.scores, averageThreshold, lowScoreCount);
+            if (challenges > 0) genuineChallenged++;
+            genuineChallenges += challenges;
+        }
+        List<Integer> keysToChallenge = new ArrayList<>();
+        for (Session session : imposters) {
+            int challenged = firstChallenge(session.scores, 0, averageThreshold, lowScoreCount);
+            if (challenged >= 0) keysToChallenge.add(session.scoredAfter[challenged]);
+        }
+        Collections.sort(keysToChallenge);
+
+        boolean current = Math.abs(averageThreshold - CHALLENGE_AVERAGE_THRESHOLD) < SWEEP_STEP / 2 &&
+                lowScoreCount == CHALLENGE_LOW_SCORE_COUNT;
+        System.out.printf("%s %.2f  %5d  %18s  %30s  %20s  %30s%n", current ? "*" : " ", averageThreshold, lowScoreCount,
+                percent(genuineChallenged, genuine.size()),
+                genuine.isEmpty() ? "-" : String.format("%.2f", (double) genuineChallenges / genuine.size()),
+                percent(keysToChallenge.size(), imposters.size()),
+                keysToChallenge.isEmpty() ? "-" : Integer.toString(keysToChallenge.get((keysToChallenge.size() - 1) / 2)));
+    }
+
+    private static float[] allScores(List<Session> sessions) {
+        float[] scores = new float[sessions.stream().mapToInt(session -> session.scores.length).sum()];
+        int next = 0;
+        for (Session session : sessions) {
+            System.arraycopy(session.scores, 0, scores, next, session.scores.length);
+            next += session.scores.length;
+        }
+        return scores;
+    }
+
+    private static String percentiles(float[] scores) {
+        if (scores.length == 0) return "-";
+        float[] sorted = Arrays.copyOf(scores, scores.length);
+        Arrays.sort(sorted);
+        int last = sorted.length - 1;
+        return String.format("%.3f  %.3f  %.3f  %.3f  %.3f", sorted[last * 5 / 100], sorted[last / 4], sorted[last / 2],
+                sorted[last * 3 / 4], sorted[last * 95 / 100]);
+    }
+
+    /**
+     * @return the share of the scores in the bin, the last bin including 1 and bin -1 holding the failed predictions.
+     */
+    private static String share(float[] scores, double low, double high, int bin) {
+        int count = 0;
+        for (float score : scores) {
+            if (bin < 0 ? score < 0 : score >= low && (score < high || bin == HISTOGRAM_BINS - 1 && score <= high)) count++;
+        }
+        return percent(count, scores.length);
+    }
+
+    private static int below(float[] scores, double threshold) {
+        int count = 0;
+        for (float score : scores) if (score < threshold) count++;
+        return count;
+    }
+
+    private static String percent(int count, int total) {
+        return total == 0 ? "-" : String.format("%.1f%%", 100.0 * count / total);
+    }
+
+    /**
+     * @return the chance that a genuine score is higher than an imposter score, ties counting half.
+     */
+    static double areaUnderCurve(float[] genuineScores, float[] imposterScores) {
+        float[] genuine = Arrays.copyOf(genuineScores, genuineScores.length);
+        float[] imposter = Arrays.copyOf(imposterScores, imposterScores.length);
+        Arrays.sort(genuine);
+        Arrays.sort(imposter);
+
+        double wins = 0;
+        int lower = 0;
+        int notHigher = 0;
+        for (float score : genuine) {
+            while (lower < imposter.length && imposter[lower] < score) lower++;
+            while (notHigher < imposter.length && imposter[notHigher] <= score) notHigher++;
+            wins += lower + (notHigher - lower) / 2.0;
+        }
+        return wins / ((double) genuine.length * imposter.length);
+    }
+}
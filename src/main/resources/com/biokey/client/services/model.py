@@ -1,48 +1,88 @@
 import numpy as np
 from keras.models import Model
-from keras.models import load_model
+import struct
 import sys
 import json
 
+# Messages are framed as a little-endian int32 length, a one byte message type and the body.
+INIT = 1
+PREDICT = 2
+
 model = None
+windows = {}
+
+stdin = sys.stdin.buffer
+stdout = sys.stdout.buffer
+
+def read_exactly(n):
+	data = b''
+	while len(data) < n:
+		chunk = stdin.read(n - len(data))
+		if not chunk:
+			raise EOFError()
+		data += chunk
+	return data
 
-def send(message):
-	print(message, flush=True)
+def send(message_type, body):
+	stdout.write(struct.pack('<iB', len(body) + 1, message_type) + body)
+	stdout.flush()
 
-def init(payload):
+def init(body):
 	global model
 	try:
+		payload = json.loads(body.decode('utf-8'))
 		model = Model.from_config(payload['model'])
 		model.set_weights([np.array(w) for w in payload['weights']])
 		model.compile(loss='binary_crossentropy', optimizer='adam')
-		send('INIT: true')
-	except Exception as ex:
-		send('INIT: Failed to load model/weights')
+		windows.clear()
+		send(INIT, b'\x01')
+	except Exception as e:
+		sys.stderr.write('INIT: Failed to load model/weights: %s\n' % str(e))
+		send(INIT, b'\x00')
 
-def predict(payload):
-	global model
+def append_frames(body, offset):
+	# Each input holds its name, a reset flag, the window capacity and width, the number of frames and the frames.
+	name_length = body[offset]
+	offset += 1
+	name = body[offset:offset + name_length].decode('utf-8')
+	offset += name_length
+	reset = body[offset] == 1
+	capacity, width, count = struct.unpack_from('<iii', body, offset + 1)
+	offset += 13
+	frames = np.frombuffer(body, dtype='<f4', count=count * width, offset=offset).reshape(count, width)
+	offset += 4 * count * width
+
+	window = windows.get(name)
+	if reset or window is None or window.shape[1] != width:
+		window = np.zeros((0, width), dtype=np.float32)
+	windows[name] = np.concatenate((window, frames))[-capacity:]
+	return offset
+
+def predict(body):
 	result = -1
-	if model is not None:
-		try:
-			x = {i: np.array([payload[i]]) for i in payload}
+	offset = 0
+	try:
+		while offset < len(body):
+			offset = append_frames(body, offset)
+		if model is not None:
+			x = {name: windows[name][np.newaxis, :, :] for name in windows}
 			result = model.predict(x).tolist()[0][0]
-		except Exception as e:
-			sys.stderr.write(e)
-	else:
-		sys.stderr.write("PREDICT: Model not defined")
-	send('PREDICT: %s' % str(result))
+		else:
+			sys.stderr.write('PREDICT: Model not defined\n')
+	except Exception as e:
+		sys.stderr.write('PREDICT: %s\n' % str(e))
+	send(PREDICT, struct.pack('<d', result))
 
 
 while True:
-	i = input()
 	try:
-		command, payload = i.split(': ', 1)
-		payload = json.loads(payload)
-		if command == 'init':
-			init(payload)
-		elif command == 'predict':
-			predict(payload)
-	except:
-		send(command.upper() + ': Failed to parse')
-
-	
\ No newline at end of file
+		length, = struct.unpack('<i', read_exactly(4))
+		message = read_exactly(length)
+	except EOFError:
+		break
+	if message[0] == INIT:
+		init(message[1:])
+	elif message[0] == PREDICT:
+		predict(message[1:])
+	else:
+		sys.stderr.write('Unknown message type %d\n' % message[0])
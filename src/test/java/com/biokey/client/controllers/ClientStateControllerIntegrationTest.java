@@ -2,6 +2,7 @@ package com.biokey.client.controllers;
 
 import com.biokey.client.constants.AuthConstants;
 import com.biokey.client.constants.SecurityConstants;
+import com.biokey.client.constants.SyncStatusConstants;
 import com.biokey.client.helpers.PojoHelper;
 import com.biokey.client.helpers.ServerRequestExecutorHelper;
 import com.biokey.client.models.ClientStateModel;
@@ -17,9 +18,12 @@ import org.springframework.http.ResponseEntity;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.biokey.client.constants.AppConstants.KEYSTROKE_WINDOW_SIZE_PER_REQUEST;
 import static org.junit.Assert.assertTrue;
@@ -120,11 +124,107 @@ public class ClientStateControllerIntegrationTest {
         state.releaseAccessToModel();
 
         underTest.sendKeyStrokes();
-        verify(serverRequestExecutorHelper).submitPostRequest(any(), any(), any(), any(), any());
-        verify(state, timeout(TEST_TIMEOUT).times(2)).releaseAccessToModel();
+        verify(serverRequestExecutorHelper).submitBinaryPostRequest(any(), any(), any(), any(), any());
+        verify(state, timeout(TEST_TIMEOUT).times(2)).releaseAccessToKeyStrokes();
         verify(state, timeout(TEST_TIMEOUT).times(1)).dequeueOneFromUnsyncedKeyStrokes();
     }
 
+    @Test
+    public void GIVEN_severalSealedWindows_WHEN_sendKeyStrokes_THEN_sentInOneRequest() {
+        state.obtainAccessToModel();
+        for (int i = 0; i < 3; i++) {
+            state.enqueueKeyStroke(KEY_STROKE_POJO);
+            state.divideKeyStrokes();
+        }
+        state.enqueueKeyStroke(KEY_STROKE_POJO);
+        state.releaseAccessToModel();
+
+        underTest.sendKeyStrokes();
+        verify(serverRequestExecutorHelper).submitBinaryPostRequest(any(), any(), any(), any(), any());
+        verify(state, timeout(TEST_TIMEOUT).times(3)).dequeueOneFromUnsyncedKeyStrokes();
+    }
+
+    @Test
+    public void GIVEN_fullRequestQueue_WHEN_sendKeyStrokes_THEN_returnsWithWindowsUnsynced() {
+        state.obtainAccessToModel();
+        for (int i = 0; i < 3; i++) {
+            state.enqueueKeyStroke(KEY_STROKE_POJO);
+            state.divideKeyStrokes();
+        }
+        state.enqueueKeyStroke(KEY_STROKE_POJO);
+        state.releaseAccessToModel();
+
+        // One request running and one waiting fill the executor, so every request sent is refused.
+        CountDownLatch releaseExecutor = new CountDownLatch(1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        executor.execute(() -> {
+            try {
+                releaseExecutor.await();
+            } catch (InterruptedException e) {}
+        });
+        executor.execute(() -> {});
+        ClientStateController withFullQueue = new ClientStateController(state, new ServerRequestExecutorHelper(executor));
+
+        boolean[] sent = {true};
+        Thread sender = new Thread(() -> {
+            sent[0] = withFullQueue.sendKeyStrokes();
+            testCompleteFlag.countDown();
+        });
+        sender.setDaemon(true);
+        sender.start();
+        waitForCompletion();
+        releaseExecutor.countDown();
+        executor.shutdown();
+
+        assertTrue("refused requests should not count as sent", !sent[0]);
+        state.obtainAccessToKeyStrokes();
+        try {
+            assertTrue("windows should be left to send on the next sync", state.getUnsyncedKeyStrokes().stream()
+                    .allMatch(window -> window.getSyncedWithServer() == SyncStatusConstants.UNSYNCED));
+        } finally {
+            state.releaseAccessToKeyStrokes();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void GIVEN_requestsThatAlwaysFail_WHEN_sendKeyStrokes_THEN_windowsSentOncePerSync() {
+        state.obtainAccessToModel();
+        for (int i = 0; i < 3; i++) {
+            state.enqueueKeyStroke(KEY_STROKE_POJO);
+            state.divideKeyStrokes();
+        }
+        state.enqueueKeyStroke(KEY_STROKE_POJO);
+        state.releaseAccessToModel();
+
+        // Every request fails before it is even made, as when the server is down.
+        AtomicInteger requests = new AtomicInteger();
+        ServerRequestExecutorHelper failing = spy(new ServerRequestExecutorHelper(Executors.newCachedThreadPool()));
+        doAnswer(invocation -> {
+            requests.incrementAndGet();
+            ((ServerRequestExecutorHelper.ServerResponseHandler<String>) invocation.getArguments()[4]).handleResponse(null);
+            return true;
+        }).when(failing).submitBinaryPostRequest(any(), any(), any(), any(), any());
+        ClientStateController withFailingServer = new ClientStateController(state, failing);
+
+        Thread sender = new Thread(() -> {
+            withFailingServer.sendKeyStrokes();
+            testCompleteFlag.countDown();
+        });
+        sender.setDaemon(true);
+        sender.start();
+        waitForCompletion();
+
+        assertTrue("failed windows should not be sent again in the same sync", requests.get() == 1);
+        state.obtainAccessToKeyStrokes();
+        try {
+            assertTrue("windows should be left to send on the next sync", state.getUnsyncedKeyStrokes().stream()
+                    .allMatch(window -> window.getSyncedWithServer() == SyncStatusConstants.UNSYNCED));
+        } finally {
+            state.releaseAccessToKeyStrokes();
+        }
+    }
+
     @Test
     public void GIVEN_realCallToServer_WHEN_sendLoginRequest_THEN_success() {
         // Confirmed this works but because of server side checks for integrity, the test will never pass.
@@ -159,8 +259,8 @@ public class ClientStateControllerIntegrationTest {
         state.releaseAccessToModel();
 
         underTest.sendAnalysisResult();
-        verify(serverRequestExecutorHelper).submitPostRequest(any(), any(), any(), any(), any());
-        verify(state, timeout(TEST_TIMEOUT).times(2)).releaseAccessToModel();
+        verify(serverRequestExecutorHelper).submitBinaryPostRequest(any(), any(), any(), any(), any());
+        verify(state, timeout(TEST_TIMEOUT).times(2)).releaseAccessToAnalysisResult();
         verify(state, timeout(TEST_TIMEOUT).times(1)).dequeueAnalysisResults();
     }
 
@@ -173,7 +273,7 @@ public class ClientStateControllerIntegrationTest {
 
         waitForCompletion();
         verify(serverRequestExecutorHelper).submitPostRequest(any(), any(), any(), any(), any());
-        verify(state).releaseAccessToStatus();
+        verify(state, never()).obtainAccessToStatus();
     }
 
     @Test
@@ -209,7 +309,7 @@ public class ClientStateControllerIntegrationTest {
 
         waitForCompletion();
         verify(serverRequestExecutorHelper).submitGetRequest(any(), any(), any(), any());
-        verify(state).releaseAccessToStatus();
+        verify(state, never()).obtainAccessToStatus();
     }
 
     @Test
@@ -222,7 +322,7 @@ public class ClientStateControllerIntegrationTest {
 
         waitForCompletion();
         verify(serverRequestExecutorHelper, never()).submitGetRequest(any(), any(), any(), any());
-        verify(state).releaseAccessToStatus();
+        verify(state, never()).obtainAccessToStatus();
     }
 
     @Test
@@ -236,7 +336,7 @@ public class ClientStateControllerIntegrationTest {
             assertTrue("newest division of keystrokes should only have one keystroke",
                     state.getNewestUnsyncedKeyStrokes().getKeyStrokes().size() == 1);
             verify(state, times(numEnqueues)).notifyKeyQueueChange(KEY_STROKE_POJO, false);
-            verify(state, times(numEnqueues)).releaseAccessToKeyStrokes();
+            verify(state, times(numEnqueues)).offerKeyStroke(KEY_STROKE_POJO);
         } finally {
             state.releaseAccessToKeyStrokes();
         }
@@ -253,7 +353,7 @@ public class ClientStateControllerIntegrationTest {
             assertTrue("newest division of keystrokes should only have two keystrokes",
                     state.getNewestUnsyncedKeyStrokes().getKeyStrokes().size() == 2);
             verify(state, times(3)).notifyKeyQueueChange(any(), any());
-            verify(state, times(3)).releaseAccessToKeyStrokes();
+            verify(state, times(3)).offerKeyStroke(any());
         } finally {
             state.releaseAccessToKeyStrokes();
         }
@@ -297,6 +397,38 @@ public class ClientStateControllerIntegrationTest {
         }
     }
 
+    @Test
+    public void GIVEN_statusThenBacklog_WHEN_passStatusToModel_passBacklogToModel_THEN_backlogAheadOfNewKeys() {
+        ClientStateModel newModel = new ClientStateModel(Executors.newCachedThreadPool());
+        try {
+            newModel.obtainAccessToModel();
+            newModel.enqueueStatus(CLIENT_STATUS_POJO);
+            newModel.enqueueKeyStroke(OLD_KEY_STROKE_POJO);
+        } finally {
+            newModel.releaseAccessToModel();
+        }
+        underTest.passStatusToModel(newModel);
+        underTest.enqueueKeyStroke(KEY_STROKE_POJO);
+        assertTrue("key strokes should not sync before the backlog is in the model", !underTest.sendKeyStrokes());
+
+        newModel.obtainAccessToModel();
+        try {
+            underTest.passBacklogToModel(newModel.copyBacklog());
+        } finally {
+            newModel.releaseAccessToModel();
+        }
+
+        try {
+            state.obtainAccessToModel();
+            assertTrue("current status should now be unauthenticated",
+                    state.getCurrentStatus().getAuthStatus().equals(AuthConstants.UNAUTHENTICATED));
+            assertTrue("key stroke from memory should be oldest", state.getKeyStrokes().peek() == OLD_KEY_STROKE_POJO);
+            assertTrue("new key stroke should follow it", state.getKeyStrokes().peekLast() == KEY_STROKE_POJO);
+        } finally {
+            state.releaseAccessToModel();
+        }
+    }
+
     @Test
     public void GIVEN_na_WHEN_checkStateModel_THEN_na() {
         // Covered in ClientStateModelTest
@@ -0,0 +1,309 @@
+package com.biokey.client.helpers;
+
+import com.biokey.client.constants.AuthConstants;
+import com.biokey.client.constants.SecurityConstants;
+import com.biokey.client.models.ClientStateModel;
+import com.biokey.client.models.pojo.*;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static com.biokey.client.constants.AppConstants.JOURNAL_COMPACTION_SIZE;
+import static org.junit.Assert.assertTrue;
+
+public class ClientStateJournalHelperTest {
+
+    private static final ClientStatusPojo CLIENT_STATUS_POJO =
+            new ClientStatusPojo(
+                    new TypingProfilePojo("", "", "", new EngineModelPojo(), new String[] {}, ""),
+                    AuthConstants.AUTHENTICATED, SecurityConstants.UNLOCKED,
+                    "HELLO", "", "", 0);
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.toFile().delete();
+    }
+
+    @Test
+    public void GIVEN_changes_WHEN_readState_THEN_stateRebuilt() throws IOException {
+        ClientStateJournalHelper underTest = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(underTest);
+        makeChanges(state, 0);
+        underTest.sync();
+
+        ClientStateModel fromDisk = new ClientStateJournalHelper(directory).readState();
+        assertSameState(state, fromDisk);
+    }
+
+    @Test
+    public void GIVEN_tornRecord_WHEN_reopened_THEN_tornRecordDropped() throws IOException {
+        ClientStateJournalHelper underTest = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(underTest);
+        makeChanges(state, 0);
+        underTest.sync();
+
+        // Half of a key stroke record, as left by a crash in the middle of a write.
+        Path journal = directory.resolve("state.journal.0");
+        long size = Files.size(journal);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {14, 0, 0, 0, 1, 2, 3}));
+        }
+
+        ClientStateJournalHelper reopened = new ClientStateJournalHelper(directory);
+        assertTrue("torn record should be truncated", Files.size(journal) == size);
+        assertSameState(state, reopened.readState());
+    }
+
+    @Test
+    public void GIVEN_modelReplaced_WHEN_readState_THEN_snapshotAndNewJournalRead() throws IOException {
+        ClientStateJournalHelper underTest = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(underTest);
+        makeChanges(state, 0);
+
+        state.obtainAccessToModel();
+        try {
+            underTest.modelReplaced(state);
+        } finally {
+            state.releaseAccessToModel();
+        }
+        underTest.sync();
+        assertTrue("old journal should be deleted", !Files.exists(directory.resolve("state.journal.0")));
+
+        makeChanges(state, 1000);
+        underTest.sync();
+        assertSameState(state, new ClientStateJournalHelper(directory).readState());
+    }
+
+    @Test
+    public void GIVEN_changesNotWritten_WHEN_modelReplaced_THEN_snapshotAndChangesAfterRead() throws IOException {
+        ClientStateJournalHelper underTest = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(underTest);
+
+        // Changes still waiting for the writer when the model is replaced, and changes made right after.
+        makeChanges(state, 0);
+        state.obtainAccessToModel();
+        try {
+            underTest.modelReplaced(state);
+            state.enqueueKeyStroke(new KeyStrokePojo(1, true, 500));
+        } finally {
+            state.releaseAccessToModel();
+        }
+        makeChanges(state, 1000);
+        underTest.sync();
+
+        assertTrue("old journal should be deleted", !Files.exists(directory.resolve("state.journal.0")));
+        assertSameState(state, underTest.readState());
+        assertSameState(state, new ClientStateJournalHelper(directory).readState());
+    }
+
+    @Test
+    public void GIVEN_largeJournal_WHEN_compactIfNeeded_THEN_snapshotAndFollowingJournalsRead() throws IOException {
+        ClientStateJournalHelper underTest = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(underTest);
+        assertTrue("small journal should not be compacted", !underTest.compactIfNeeded(state));
+
+        long timeStamp = 0;
+        while (underTest.getJournalSize() < JOURNAL_COMPACTION_SIZE) {
+            makeChanges(state, timeStamp);
+            timeStamp += 1000;
+            underTest.sync();
+        }
+        assertTrue("large journal should be compacted", underTest.compactIfNeeded(state));
+        assertTrue("old journal should be deleted", !Files.exists(directory.resolve("state.journal.0")));
+
+        makeChanges(state, timeStamp);
+        underTest.sync();
+        assertSameState(state, new ClientStateJournalHelper(directory).readState());
+    }
+
+    @Test
+    public void GIVEN_changesNotWritten_WHEN_compactIfNeeded_THEN_changesBeforeAndAfterRead() throws IOException {
+        ClientStateJournalHelper underTest = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(underTest);
+        long timeStamp = 0;
+        while (underTest.getJournalSize() < JOURNAL_COMPACTION_SIZE) {
+            makeChanges(state, timeStamp);
+            timeStamp += 1000;
+            underTest.sync();
+        }
+
+        // Changes still waiting for the writer when the model is copied, and changes made right after.
+        makeChanges(state, timeStamp);
+        assertTrue("large journal should be compacted", underTest.compactIfNeeded(state));
+        makeChanges(state, timeStamp + 1000);
+        underTest.sync();
+
+        assertTrue("old journal should be deleted", !Files.exists(directory.resolve("state.journal.0")));
+        assertSameState(state, underTest.readState());
+        assertSameState(state, new ClientStateJournalHelper(directory).readState());
+    }
+
+    @Test
+    public void GIVEN_snapshotAndJournal_WHEN_readStatus_readBacklog_THEN_eachPartReadAlone() throws IOException {
+        ClientStateJournalHelper underTest = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(underTest);
+        makeChanges(state, 0);
+        state.obtainAccessToModel();
+        try {
+            underTest.modelReplaced(state);
+        } finally {
+            state.releaseAccessToModel();
+        }
+        makeChanges(state, 1000);
+        underTest.sync();
+
+        ClientStateJournalHelper reopened = new ClientStateJournalHelper(directory);
+        ClientStateModel status = reopened.readStatus();
+        ClientStateModel backlog = reopened.readBacklog();
+        status.obtainAccessToModel();
+        backlog.obtainAccessToModel();
+        try {
+            assertTrue("status should be read", status.getCurrentStatus().getAccessToken().equals("HELLO"));
+            assertTrue("status should come without key strokes", status.getKeyStrokes().isEmpty());
+            assertTrue("backlog should come without status", backlog.getCurrentStatus() == null);
+        } finally {
+            status.releaseAccessToModel();
+            backlog.releaseAccessToModel();
+        }
+        assertSameState(state, reopened.readState());
+    }
+
+    @Test
+    public void GIVEN_keyStrokesEnqueuedAfterReadStatus_WHEN_readBacklog_THEN_keyStrokesNotDuplicated() throws IOException {
+        ClientStateJournalHelper underTest = new ClientStateJournalHelper(directory);
+        ClientStateModel saved = journaledModel(underTest);
+        makeChanges(saved, 0);
+        underTest.sync();
+
+        ClientStateJournalHelper reopened = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(reopened);
+        ClientStateModel status = reopened.readStatus();
+        state.obtainAccessToModel();
+        try {
+            state.loadStatusFromMemory(status);
+        } finally {
+            state.releaseAccessToModel();
+        }
+
+        // Typed while the backlog is still being read.
+        state.obtainAccessToModel();
+        try {
+            for (int i = 0; i < 10; i++) state.enqueueKeyStroke(new KeyStrokePojo(i, true, 5000 + i));
+        } finally {
+            state.releaseAccessToModel();
+        }
+        reopened.sync();
+
+        ClientStateModel backlog = reopened.readBacklog();
+        state.obtainAccessToModel();
+        saved.obtainAccessToModel();
+        try {
+            state.loadBacklogFromMemory(backlog);
+            assertTrue("key strokes should not be duplicated", state.getKeyStrokes().size() == saved.getKeyStrokes().size() + 10);
+            assertTrue("saved key strokes should come first",
+                    state.getKeyStrokes().peek().getTimeStamp() == saved.getKeyStrokes().peek().getTimeStamp());
+        } finally {
+            state.releaseAccessToModel();
+            saved.releaseAccessToModel();
+        }
+        assertSameState(state, new ClientStateJournalHelper(directory).readState());
+    }
+
+    @Test
+    public void GIVEN_posixFileSystem_WHEN_saved_THEN_onlyOwnerHasAccess() throws IOException {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        // Left by an older client.
+        Files.createFile(directory.resolve("state.journal.0"), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-r--r--")));
+
+        ClientStateJournalHelper underTest = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(underTest);
+        makeChanges(state, 0);
+        underTest.sync();
+        assertTrue("only the owner should read the existing journal", Files.getPosixFilePermissions(directory.resolve("state.journal.0"))
+                .equals(PosixFilePermissions.fromString("rw-------")));
+
+        state.obtainAccessToModel();
+        try {
+            underTest.modelReplaced(state);
+        } finally {
+            state.releaseAccessToModel();
+        }
+        makeChanges(state, 1000);
+        underTest.sync();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                assertTrue("only the owner should read " + file.getFileName(),
+                        Files.getPosixFilePermissions(file).equals(PosixFilePermissions.fromString("rw-------")));
+            }
+        }
+    }
+
+    @Test
+    public void GIVEN_nothingSaved_WHEN_readState_THEN_null() throws IOException {
+        assertTrue("nothing should be read", new ClientStateJournalHelper(directory).readState() == null);
+    }
+
+    private static ClientStateModel journaledModel(ClientStateJournalHelper journal) {
+        ClientStateModel state = new ClientStateModel(null);
+        state.setJournal(journal);
+        return state;
+    }
+
+    private static void makeChanges(ClientStateModel state, long timeStamp) {
+        state.obtainAccessToModel();
+        try {
+            state.enqueueStatus(CLIENT_STATUS_POJO);
+            for (int i = 0; i < 250; i++) {
+                if (i % 100 == 99) state.divideKeyStrokes();
+                state.enqueueKeyStroke(new KeyStrokePojo(i, i % 2 == 0, timeStamp + i));
+                if (i % 10 == 0) state.enqueueAnalysisResult(new AnalysisResultPojo(timeStamp + i, i / 250f));
+            }
+            state.divideAnalysisResults();
+            state.dequeueOneFromUnsyncedKeyStrokes();
+            state.dequeueOneFromAllKeyStrokes();
+            state.dequeueAnalysisResults();
+        } finally {
+            state.releaseAccessToModel();
+        }
+    }
+
+    private static void assertSameState(ClientStateModel expected, ClientStateModel actual) {
+        assertTrue("state should have been read", actual != null);
+        expected.obtainAccessToModel();
+        actual.obtainAccessToModel();
+        try {
+            assertTrue("status should match",
+                    actual.getCurrentStatus().getAccessToken().equals(expected.getCurrentStatus().getAccessToken()));
+            assertTrue("key strokes should match", actual.getKeyStrokes().size() == expected.getKeyStrokes().size() &&
+                    actual.getKeyStrokes().peek().getTimeStamp() == expected.getKeyStrokes().peek().getTimeStamp());
+            assertTrue("unsynced key strokes should match", actual.getOldestUnsyncedKeyStrokes().getKeyStrokes().size() ==
+                    expected.getOldestUnsyncedKeyStrokes().getKeyStrokes().size());
+            assertTrue("analysis results should match", actual.getOldestAnalysisResults().getAnalysisResults().size() ==
+                    expected.getOldestAnalysisResults().getAnalysisResults().size());
+        } finally {
+            expected.releaseAccessToModel();
+            actual.releaseAccessToModel();
+        }
+    }
+}
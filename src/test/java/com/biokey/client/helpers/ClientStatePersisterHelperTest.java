@@ -0,0 +1,97 @@
+package com.biokey.client.helpers;
+
+import com.biokey.client.models.ClientStateModel;
+import com.biokey.client.models.pojo.KeyStrokePojo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertTrue;
+
+public class ClientStatePersisterHelperTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("persister");
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.toFile().delete();
+    }
+
+    @Test
+    public void GIVEN_burstOfRequests_WHEN_requestSave_THEN_oneSaveServesAll() throws Exception {
+        ClientStateJournalHelper journal = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(journal);
+        ClientStatePersisterHelper underTest = new ClientStatePersisterHelper(journal, state, 200);
+
+        for (int i = 0; i < 50; i++) {
+            enqueueKeyStroke(state, i);
+            underTest.requestSave();
+        }
+        assertTrue("requests should wait for the save", underTest.getQueueDepth() == 50);
+
+        waitForSaves(underTest, 1);
+        assertTrue("burst should be saved once", underTest.getSaveCount() == 1);
+        assertTrue("save should serve every request", underTest.getCoalescedRequestCount() == 50);
+        assertTrue("queue should be empty", underTest.getQueueDepth() == 0);
+        assertTrue("latency should include the coalescing delay", underTest.getLastSaveLatency() >= 200);
+
+        assertTrue("saved state should hold every key stroke", savedKeyStrokeCount() == 50);
+    }
+
+    @Test
+    public void GIVEN_pendingRequest_WHEN_saveNow_THEN_savedOnCallingThread() throws Exception {
+        ClientStateJournalHelper journal = new ClientStateJournalHelper(directory);
+        ClientStateModel state = journaledModel(journal);
+        ClientStatePersisterHelper underTest = new ClientStatePersisterHelper(journal, state, 60000);
+
+        enqueueKeyStroke(state, 0);
+        underTest.requestSave();
+        underTest.saveNow();
+
+        assertTrue("request should be served by the save", underTest.getSaveCount() == 1 &&
+                underTest.getCoalescedRequestCount() == 1 && underTest.getQueueDepth() == 0);
+        assertTrue("saved state should hold the key stroke", savedKeyStrokeCount() == 1);
+    }
+
+    private int savedKeyStrokeCount() throws IOException {
+        ClientStateModel fromDisk = new ClientStateJournalHelper(directory).readState();
+        fromDisk.obtainAccessToModel();
+        try {
+            return fromDisk.getKeyStrokes().size();
+        } finally {
+            fromDisk.releaseAccessToModel();
+        }
+    }
+
+    private static ClientStateModel journaledModel(ClientStateJournalHelper journal) {
+        ClientStateModel state = new ClientStateModel(null);
+        state.setJournal(journal);
+        return state;
+    }
+
+    private static void enqueueKeyStroke(ClientStateModel state, long timeStamp) {
+        state.obtainAccessToModel();
+        try {
+            state.enqueueKeyStroke(new KeyStrokePojo(1, true, timeStamp));
+        } finally {
+            state.releaseAccessToModel();
+        }
+    }
+
+    private static void waitForSaves(ClientStatePersisterHelper persister, long saves) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (persister.getSaveCount() < saves && System.currentTimeMillis() < deadline) Thread.sleep(10);
+    }
+}
@@ -0,0 +1,122 @@
+package com.biokey.client.helpers;
+
+import com.biokey.client.models.pojo.KeyStrokePojo;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class KeyStrokeArchiveHelperTest {
+
+    private static final long MAX_AGE = 60000;
+
+    private Path file;
+    private long now;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("keystrokes", ".archive");
+        now = System.currentTimeMillis();
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void GIVEN_appendedKeyStrokes_WHEN_read_THEN_sameKeyStrokesInOrder() throws IOException {
+        KeyStrokeArchiveHelper underTest = new KeyStrokeArchiveHelper(file, 2000, MAX_AGE);
+        for (int i = 0; i < 1000; i++) underTest.append(i % 97, i % 2 == 0, now + i);
+
+        long[] read = {0};
+        long next = underTest.read(10, (int key, boolean keyDown, long timeStamp) -> {
+            long i = 10 + read[0]++;
+            assertTrue("key stroke " + i + " should match", key == i % 97 && keyDown == (i % 2 == 0) && timeStamp == now + i);
+        });
+        assertTrue("every key stroke after the start should be read", read[0] == 990 && next == 1000);
+
+        List<KeyStrokePojo> keyStrokes = readFrom(underTest, 998);
+        assertTrue("read should start at the index",
+                keyStrokes.get(0).getKey() == 998 % 97 && keyStrokes.get(0).getTimeStamp() == now + 998);
+        assertTrue("read should end at the last key stroke", keyStrokes.size() == 2);
+        underTest.close();
+    }
+
+    @Test
+    public void GIVEN_fullArchive_WHEN_reopened_THEN_newestKeyStrokesKept() throws IOException {
+        KeyStrokeArchiveHelper underTest = new KeyStrokeArchiveHelper(file, 1000, MAX_AGE);
+        long size = Files.size(file);
+        int count = 2500;
+        for (int i = 0; i < count; i++) underTest.append(i, true, now + i);
+        underTest.close();
+        assertTrue("the file should not grow", Files.size(file) == size);
+
+        KeyStrokeArchiveHelper reopened = new KeyStrokeArchiveHelper(file, 1000, MAX_AGE);
+        assertTrue("size and the oldest kept should be kept", reopened.size() == count && reopened.first() == count - 1000);
+        long[] read = {0, -1};
+        reopened.read(0, (int key, boolean keyDown, long timeStamp) -> {
+            if (read[0]++ == 0) read[1] = key;
+        });
+        assertTrue("only the newest key strokes should be read", read[0] == 1000 && read[1] == count - 1000);
+
+        reopened.append(7, false, now + count);
+        assertTrue("appends should continue after the kept key strokes", reopened.size() == count + 1 &&
+                !readFrom(reopened, count).get(0).isKeyDown() && reopened.first() == count - 999);
+        reopened.close();
+    }
+
+    @Test
+    public void GIVEN_oldKeyStrokes_WHEN_appendAndReopen_THEN_oldKeyStrokesErased() throws IOException {
+        KeyStrokeArchiveHelper underTest = new KeyStrokeArchiveHelper(file, 1000, MAX_AGE);
+        for (int i = 0; i < 10; i++) underTest.append(i, true, now - 2 * MAX_AGE + i);
+        for (int i = 10; i < 20; i++) underTest.append(i, true, now - MAX_AGE / 2 + i);
+        assertTrue("key strokes older than the maximum age should be erased", underTest.first() == 10);
+        underTest.close();
+
+        KeyStrokeArchiveHelper reopened = new KeyStrokeArchiveHelper(file, 1000, MAX_AGE / 4);
+        assertTrue("key strokes that aged while closed should be erased", reopened.first() == 20 && reopened.size() == 20 &&
+                readFrom(reopened, 0).isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    public void GIVEN_posixFileSystem_WHEN_opened_THEN_onlyOwnerHasAccess() throws IOException {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+        new KeyStrokeArchiveHelper(file, 10, MAX_AGE).close();
+        assertTrue("only the owner should read the archive",
+                Files.getPosixFilePermissions(file).equals(PosixFilePermissions.fromString("rw-------")));
+
+        Files.delete(file);
+        new KeyStrokeArchiveHelper(file, 10, MAX_AGE).close();
+        assertTrue("a new archive should only be readable by the owner",
+                Files.getPosixFilePermissions(file).equals(PosixFilePermissions.fromString("rw-------")));
+    }
+
+    @Test
+    public void GIVEN_closedArchive_WHEN_append_THEN_nothingArchived() throws IOException {
+        KeyStrokeArchiveHelper underTest = new KeyStrokeArchiveHelper(file, 10, MAX_AGE);
+        underTest.append(1, true, now);
+        underTest.close();
+        underTest.append(2, true, now + 1);
+        underTest.close();
+        assertTrue("key strokes after close should not be archived", underTest.size() == 1);
+    }
+
+    private static List<KeyStrokePojo> readFrom(KeyStrokeArchiveHelper archive, long from) {
+        List<KeyStrokePojo> keyStrokes = new ArrayList<>();
+        archive.read(from, (int key, boolean keyDown, long timeStamp) -> keyStrokes.add(new KeyStrokePojo(key, keyDown, timeStamp)));
+        return keyStrokes;
+    }
+}
@@ -0,0 +1,67 @@
+package com.biokey.client.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class KeyStrokeCsvHelperTest {
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("keystrokes", ".csv");
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void GIVEN_keyLoggerOutput_WHEN_read_THEN_keyStrokesOfUserInOrder() throws IOException {
+        Files.write(file, Arrays.asList("0,1521664006591,36,true", "1,1521664006607,36,false", ""), StandardCharsets.UTF_8);
+
+        List<String> read = new ArrayList<>();
+        int count = KeyStrokeCsvHelper.read(file, (String userId, int key, boolean keyDown, long timeStamp, boolean isUser) ->
+                read.add(userId + "/" + key + "/" + keyDown + "/" + timeStamp + "/" + isUser));
+        assertTrue("every key stroke should be read", count == 2);
+        assertTrue("key strokes should be read in order", read.equals(Arrays.asList(
+                "/36/true/1521664006591/true", "/36/false/1521664006607/true")));
+    }
+
+    @Test
+    public void GIVEN_simulatedImposters_WHEN_read_THEN_userAndDirectionRead() throws IOException {
+        Files.write(file, Arrays.asList(",user_id,key_time,key_code,direction,is_user",
+                "0,a1,1000,65,d,True", "1,b2,1090,65,u,False"), StandardCharsets.UTF_8);
+
+        List<String> read = new ArrayList<>();
+        int count = KeyStrokeCsvHelper.read(file, (String userId, int key, boolean keyDown, long timeStamp, boolean isUser) ->
+                read.add(userId + "/" + key + "/" + keyDown + "/" + timeStamp + "/" + isUser));
+        assertTrue("the header should not be read as a key stroke", count == 2);
+        assertTrue("key strokes should be read in order", read.equals(Arrays.asList(
+                "a1/65/true/1000/true", "b2/65/false/1090/false")));
+    }
+
+    @Test
+    public void GIVEN_badLine_WHEN_read_THEN_lineNumberReported() throws IOException {
+        Files.write(file, Arrays.asList("0,1000,36,true", "1,oops,36,false"), StandardCharsets.UTF_8);
+
+        try {
+            KeyStrokeCsvHelper.read(file, (String userId, int key, boolean keyDown, long timeStamp, boolean isUser) -> {});
+            assertTrue("a bad line should not be read", false);
+        } catch (IOException e) {
+            assertTrue("the bad line should be reported", e.getMessage().contains("line 2"));
+        }
+    }
+}
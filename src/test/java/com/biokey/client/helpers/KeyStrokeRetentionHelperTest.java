@@ -0,0 +1,34 @@
+package com.biokey.client.helpers;
+
+import com.biokey.client.models.ClientStateModel;
+import com.biokey.client.models.pojo.KeyStrokePojo;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class KeyStrokeRetentionHelperTest {
+
+    @Test
+    public void GIVEN_keyStrokesOverCount_WHEN_trim_THEN_syncedAndConsumedDroppedAndGaugeUpdated() {
+        ClientStateModel state = new ClientStateModel(null);
+        KeyStrokeRetentionHelper underTest = new KeyStrokeRetentionHelper(state, 100, 60000);
+
+        long now = System.currentTimeMillis();
+        state.obtainAccessToKeyStrokes();
+        try {
+            for (int i = 0; i < 300; i++) state.enqueueKeyStroke(new KeyStrokePojo('t', i % 2 == 0, now + i));
+            state.divideKeyStrokes();
+            state.enqueueKeyStroke(new KeyStrokePojo('t', true, now + 300));
+            state.dequeueOneFromUnsyncedKeyStrokes();
+        } finally {
+            state.releaseAccessToKeyStrokes();
+        }
+        state.keyStrokesConsumed(now + 300);
+
+        assertTrue("key strokes over the count should be dropped", underTest.trim() == 201);
+        assertTrue("gauge should count the key strokes kept", underTest.getRetainedKeyStrokes() == 100);
+        assertTrue("gauge should estimate the heap kept",
+                underTest.getRetainedBytes() == 100 * KeyStrokeRetentionHelper.BYTES_PER_KEY_STROKE);
+        assertTrue("nothing more should be dropped", underTest.trim() == 0 && underTest.getDroppedKeyStrokes() == 201);
+    }
+}
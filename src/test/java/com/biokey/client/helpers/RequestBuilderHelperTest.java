@@ -9,6 +9,14 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
 import static org.junit.Assert.assertTrue;
 
 public class RequestBuilderHelperTest {
@@ -33,6 +41,8 @@ public class RequestBuilderHelperTest {
 
     // TODO: not urgent but will need to update these expected
     private static final String EXPECTED_KEY_STROKE_JSON = "{\"keystrokes\": [{\"character\":116,\"keyDown\":true,\"timestamp\":1,\"typingProfile\":\"TYPING_PROFILE_ID\"},{\"character\":98,\"keyDown\":false,\"timestamp\":2,\"typingProfile\":\"TYPING_PROFILE_ID\"}]}";
+    private static final String EXPECTED_COMPACT_KEY_STROKE_JSON = "{\"typingProfile\":\"TYPING_PROFILE_ID\",\"character\":[116,98],\"keyDown\":[1,0],\"timestamp\":[1,1]}";
+    private static final String EXPECTED_COMPACT_ANALYSIS_RESULTS_JSON = "{\"typingProfile\":\"TYPING_PROFILE_ID\",\"timestamp\":[1,1],\"probability\":[0.1,0.2]}";
     private static final String EXPECTED_LOGIN_JSON = "{\"email\": \"EMAIL\", \"password\": \"PASSWORD\"}";
     private static final String EXPECTED_CLIENT_STATUS_JSON = "{\"typingProfile\":{\"_id\":\"1\",\"user\":\"3\",\"machine\":\"2\",\"isLocked\":false,\"tensorFlowModel\":{\"gaussianProfile\":{}},\"endpoint\":\"5\",\"challengeStrategies\":[],\"locked\":false},\"phoneNumber\":\"7\",\"googleAuthKey\":\"8\",\"timeStamp\":9}";
     private static final String EXPECTED_ANALYSIS_RESULTS_JSON = "{\"analysisResults\": [{\"timestamp\":1,\"probability\":0.1,\"typingProfile\":\"TYPING_PROFILE_ID\"},{\"timestamp\":2,\"probability\":0.2,\"typingProfile\":\"TYPING_PROFILE_ID\"}]}";
@@ -63,6 +73,33 @@ public class RequestBuilderHelperTest {
                 RequestBuilderHelper.requestBodyToPostKeystrokes(KEY_STROKES_POJO, TYPING_PROFILE_ID).equals(EXPECTED_KEY_STROKE_JSON));
     }
 
+    @Test
+    public void GIVEN_severalWindows_WHEN_requestBodyToPostKeystrokes_THEN_keysOfAllWindowsInOrder() throws JsonProcessingException {
+        KeyStrokesPojo firstWindow = new KeyStrokesPojo();
+        firstWindow.getKeyStrokes().add(KEY_STROKE_POJO);
+        KeyStrokesPojo secondWindow = new KeyStrokesPojo();
+        secondWindow.getKeyStrokes().add(OTHER_KEY_STROKE_POJO);
+        assertTrue("generated JSON does not match expected JSON",
+                RequestBuilderHelper.requestBodyToPostKeystrokes(Arrays.asList(firstWindow, secondWindow), TYPING_PROFILE_ID)
+                        .equals(EXPECTED_KEY_STROKE_JSON));
+    }
+
+    @Test
+    public void GIVEN_input_WHEN_compactRequestBodyToPostKeystrokes_THEN_expectedResult() throws IOException {
+        assertTrue("generated JSON does not match expected JSON",
+                gunzip(RequestBuilderHelper.compactRequestBodyToPostKeystrokes(Arrays.asList(KEY_STROKES_POJO), TYPING_PROFILE_ID))
+                        .equals(EXPECTED_COMPACT_KEY_STROKE_JSON));
+    }
+
+    @Test
+    public void GIVEN_severalRequestsOnOneThread_WHEN_requestBytesToPost_THEN_eachBodyComplete() throws IOException {
+        RequestBuilderHelper.compactRequestBodyToPostKeystrokes(Arrays.asList(KEY_STROKES_POJO), TYPING_PROFILE_ID);
+        RequestBuilderHelper.requestBytesToPostAnalysisResults(ANALYSIS_RESULTS_POJO, TYPING_PROFILE_ID);
+        byte[] body = RequestBuilderHelper.requestBytesToPostKeystrokes(Arrays.asList(KEY_STROKES_POJO), TYPING_PROFILE_ID);
+        assertTrue("generated JSON does not match expected JSON",
+                new String(body, StandardCharsets.UTF_8).equals(EXPECTED_KEY_STROKE_JSON));
+    }
+
     @Test
     public void GIVEN_input_WHEN_requestBodyToPostLogin_THEN_expectedResult() {
         assertTrue("generated JSON does not match expected JSON",
@@ -83,4 +120,21 @@ public class RequestBuilderHelperTest {
                 RequestBuilderHelper.requestBodyToPostAnalysisResults(ANALYSIS_RESULTS_POJO, TYPING_PROFILE_ID).equals(EXPECTED_ANALYSIS_RESULTS_JSON));
     }
 
+    @Test
+    public void GIVEN_input_WHEN_compactRequestBodyToPostAnalysisResults_THEN_expectedResult() throws IOException {
+        assertTrue("generated JSON does not match expected JSON",
+                gunzip(RequestBuilderHelper.compactRequestBodyToPostAnalysisResults(ANALYSIS_RESULTS_POJO, TYPING_PROFILE_ID))
+                        .equals(EXPECTED_COMPACT_ANALYSIS_RESULTS_JSON));
+    }
+
+    private static String gunzip(byte[] gzipped) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) bytes.write(buffer, 0, read);
+        }
+        return bytes.toString("UTF-8");
+    }
+
 }
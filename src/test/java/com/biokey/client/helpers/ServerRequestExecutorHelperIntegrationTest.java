@@ -7,6 +7,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.util.LinkedMultiValueMap;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -53,6 +54,28 @@ public class ServerRequestExecutorHelperIntegrationTest {
         waitForCompletion();
     }
 
+    @Test
+    public void GIVEN_realUrl_WHEN_submitGetRequest_THEN_connectionKeptAlive() {
+        underTest.submitGetRequest(GET_REQUEST_URL, new HttpHeaders(), String.class,
+                (ResponseEntity<String> response) -> testCompleteFlag.countDown());
+        waitForCompletion();
+
+        assertTrue("Connection should be back in the pool", underTest.getLeasedConnections() == 0);
+        assertTrue("Connection should be kept alive", underTest.getIdleConnections() > 0);
+    }
+
+    @Test
+    public void GIVEN_fullExecutor_WHEN_submitGetRequest_THEN_nullResponse() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        new ServerRequestExecutorHelper(executor).submitGetRequest(GET_REQUEST_URL, new HttpHeaders(), String.class,
+                (ResponseEntity<String> response) -> {
+                    assertTrue("Response should be null", response == null);
+                    testCompleteFlag.countDown();
+                });
+        waitForCompletion();
+    }
+
     @Test
     public void GIVEN_badUrl_WHEN_submitGetRequest_THEN_success() {
         underTest.submitGetRequest(BAD_GET_REQUEST_URL, new HttpHeaders(), String.class,
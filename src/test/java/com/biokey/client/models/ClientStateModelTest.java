@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.concurrent.Executors;
 
+import static com.biokey.client.constants.AppConstants.KEYSTROKE_WINDOW_SIZE_PER_REQUEST;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -88,6 +89,9 @@ public class ClientStateModelTest {
         badListeners.add(underTest::dequeueOneFromAllKeyStrokes);
         badListeners.add(underTest::getOldestUnsyncedKeyStrokes);
         badListeners.add(underTest::getKeyStrokes);
+        badListeners.add(underTest::copyStatus);
+        badListeners.add(underTest::copyBacklog);
+        badListeners.add(() -> underTest.trimKeyStrokes(0, 0));
 
         // All the functions with no parameters.
         for (ITestRunner badListener : badListeners) {
@@ -107,6 +111,20 @@ public class ClientStateModelTest {
             assertTrue(e instanceof AccessControlException);
         }
 
+        try {
+            underTest.loadStatusFromMemory(underTest);
+            fail("AccessControlException not thrown.");
+        } catch (Exception e) {
+            assertTrue(e instanceof AccessControlException);
+        }
+
+        try {
+            underTest.loadBacklogFromMemory(underTest);
+            fail("AccessControlException not thrown.");
+        } catch (Exception e) {
+            assertTrue(e instanceof AccessControlException);
+        }
+
         try {
             underTest.enqueueStatus(CLIENT_STATUS_POJO);
             fail("AccessControlException not thrown.");
@@ -256,6 +274,62 @@ public class ClientStateModelTest {
         }
     }
 
+    @Test
+    public void GIVEN_syncedAndConsumedKeyStrokes_WHEN_trimKeyStrokes_THEN_onlyThoseDropped() {
+        underTest.obtainAccessToKeyStrokes();
+        try {
+            for (int i = 0; i < 10; i++) {
+                if (i % 4 == 0) underTest.divideKeyStrokes();
+                underTest.enqueueKeyStroke(new KeyStrokePojo('t', true, i + 1));
+            }
+            underTest.dequeueOneFromUnsyncedKeyStrokes(); // key strokes 1 to 4 synced
+            underTest.dequeueOneFromUnsyncedKeyStrokes(); // key strokes 5 to 8 synced
+
+            assertTrue("nothing should be dropped before the engine consumed it", underTest.trimKeyStrokes(0, 100) == 0);
+
+            underTest.keyStrokesConsumed(6);
+            assertTrue("nothing should be dropped within the limits", underTest.trimKeyStrokes(10, 0) == 0);
+            assertTrue("consumed key strokes over the count should be dropped", underTest.trimKeyStrokes(8, 0) == 2);
+            assertTrue("consumed key strokes too old should be dropped", underTest.trimKeyStrokes(10, 5) == 2);
+            assertTrue("oldest kept key stroke should be the oldest left", underTest.getKeyStrokes().peek().getTimeStamp() == 5);
+
+            underTest.keyStrokesConsumed(10);
+            assertTrue("unsynced key strokes should be kept", underTest.trimKeyStrokes(0, 100) == 4);
+            assertTrue("only unsynced key strokes should be left", underTest.getKeyStrokes().size() == 2);
+        } finally {
+            underTest.releaseAccessToKeyStrokes();
+        }
+    }
+
+    @Test
+    public void GIVEN_keyStrokesLockHeld_WHEN_offerKeyStroke_THEN_enqueuedInOrderOnRelease() throws InterruptedException {
+        int numOffers = 2 * KEYSTROKE_WINDOW_SIZE_PER_REQUEST + 1;
+        underTest.obtainAccessToKeyStrokes();
+        try {
+            Thread offering = new Thread(() -> {
+                for (int i = 0; i < numOffers; i++) underTest.offerKeyStroke(new KeyStrokePojo(i, true, i));
+            });
+            offering.start();
+            offering.join();
+            assertTrue("offered key strokes should wait for the lock", underTest.getKeyStrokes().isEmpty());
+        } finally {
+            underTest.releaseAccessToKeyStrokes();
+        }
+
+        underTest.obtainAccessToKeyStrokes();
+        try {
+            assertTrue("offered key strokes should be enqueued", underTest.getKeyStrokes().size() == numOffers);
+            long timeStamp = 0;
+            for (KeyStrokePojo keyStroke : underTest.getKeyStrokes()) {
+                assertTrue("offered key strokes should keep their order", keyStroke.getTimeStamp() == timeStamp++);
+            }
+            assertTrue("offered key strokes should be divided into windows",
+                    underTest.getNewestUnsyncedKeyStrokes().getKeyStrokes().size() == 1);
+        } finally {
+            underTest.releaseAccessToKeyStrokes();
+        }
+    }
+
     @Test
     public void GIVEN_newAnalysisResult_WHEN_enqueueAnalysisResult_THEN_success() {
         try {
@@ -280,6 +354,28 @@ public class ClientStateModelTest {
         }
     }
 
+    @Test
+    public void GIVEN_backlogFromMemory_WHEN_loadBacklogFromMemory_THEN_backlogAheadOfNewKeyStrokes() {
+        ClientStateModel fromMemory = new ClientStateModel(null);
+        try {
+            fromMemory.obtainAccessToModel();
+            fromMemory.enqueueKeyStroke(KEY_STROKE_POJO);
+            fromMemory.enqueueAnalysisResult(ANALYSIS_RESULT_POJO);
+
+            underTest.obtainAccessToModel();
+            underTest.enqueueKeyStroke(OTHER_KEY_STROKE_POJO);
+            underTest.loadBacklogFromMemory(fromMemory.copyBacklog());
+            assertTrue("Key stroke from memory should be oldest", underTest.getKeyStrokes().peek() == KEY_STROKE_POJO);
+            assertTrue("New key stroke should follow it", underTest.getKeyStrokes().peekLast() == OTHER_KEY_STROKE_POJO);
+            assertTrue("Analysis result from memory should be loaded",
+                    underTest.getOldestAnalysisResults().getAnalysisResults().peek() == ANALYSIS_RESULT_POJO);
+            assertTrue("Status should not be loaded", underTest.getCurrentStatus() == null);
+        } finally {
+            fromMemory.releaseAccessToModel();
+            underTest.releaseAccessToModel();
+        }
+    }
+
     @Test
     public void GIVEN_dividedAnalysisResults_WHEN_enqueueAnalysisResult_THEN_orderRetrievedCorrect() {
         try {
@@ -413,6 +509,17 @@ public class ClientStateModelTest {
         verify(ANALYSIS_LISTENER, timeout(100).times(1)).analysisResultQueueChanged(any(), any());
     }
 
+    @Test
+    public void GIVEN_orderedKeyListener_WHEN_notifyKeyQueueChange_THEN_calledOnNotifyingThread() {
+        ClientStateModel.IClientOrderedKeyListener orderedListener = mock(ClientStateModel.IClientOrderedKeyListener.class);
+        HashSet<ClientStateModel.IClientKeyListener> orderedListenerSet = new HashSet<>();
+        orderedListenerSet.add(orderedListener);
+        underTest.setKeyQueueListeners(orderedListenerSet);
+
+        underTest.notifyKeyQueueChange(KEY_STROKE_POJO, false);
+        verify(orderedListener, times(1)).keystrokeQueueChanged(KEY_STROKE_POJO, false);
+    }
+
     @Test
     public void GIVEN_newModel_WHEN_loadStateFromMemory_THEN_changesReflected() {
         ClientStateModel newModel = new ClientStateModel(Executors.newCachedThreadPool());
@@ -0,0 +1,98 @@
+package com.biokey.client.services;
+
+import com.biokey.client.models.pojo.EngineModelPojo;
+import com.biokey.client.services.engine.FrameTensor;
+import com.biokey.client.services.engine.LstmEnsembleModel;
+import org.apache.log4j.Logger;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class AnalysisEngineServiceEquivalenceTest {
+
+    private static Logger log = Logger.getLogger(AnalysisEngineServiceEquivalenceTest.class);
+
+    private static final Path KEY_STROKES = Paths.get("keystrokes.csv");
+    private static final Path SIMULATED_KEY_STROKES = Paths.get("simulated-imposters-small.csv");
+    private static final Path PAYLOAD = Paths.get("testOutputs.json");
+
+    // Snapshot of the native model's own predictions on keystrokes.csv with the profile in keystrokes-profile.json, which
+    // catches changes to the engine's output. It is not a reference: only the recorded Keras predictions are.
+    private static final Path PROFILE = Paths.get("keystrokes-profile.json");
+    private static final Path NATIVE_PREDICTIONS = Paths.get("predictions-native.csv");
+    private static final double TOLERANCE = 1e-5;
+
+    // predictions.csv and predictions-sim.csv were recorded with Keras and a profile that is not kept with the client.
+    // Give its path in this property to compare with them, they are reported as skipped without it.
+    private static final String RECORDED_PROFILE_PROPERTY = "biokey.recordedProfile";
+    private static final double RECORDED_TOLERANCE = 1e-4;
+
+    @Test
+    public void GIVEN_keyStrokes_WHEN_replayWithNativeModel_THEN_predictionsMatchSnapshot() throws Exception {
+        EngineModelPojo engineModel = PredictionReplayHarness.readEngineModel(PROFILE, PAYLOAD);
+        List<PredictionReplayHarness.Prediction> actual = PredictionReplayHarness.replay(KEY_STROKES, engineModel, LstmEnsembleModel::new);
+        log.debug("Native model on " + KEY_STROKES + ": " + PredictionReplayHarness.latencySummary(actual));
+
+        String differences = PredictionReplayHarness.compare(PredictionReplayHarness.readPredictions(NATIVE_PREDICTIONS), actual, TOLERANCE);
+        assertTrue("predictions should match the snapshot in " + NATIVE_PREDICTIONS + ": " + differences, differences == null);
+    }
+
+    @Test
+    public void GIVEN_backendThatDiffers_WHEN_replay_THEN_differencesReported() throws Exception {
+        EngineModelPojo engineModel = PredictionReplayHarness.readEngineModel(PROFILE, PAYLOAD);
+        List<PredictionReplayHarness.Prediction> actual = PredictionReplayHarness.replay(KEY_STROKES, engineModel, () -> new LstmEnsembleModel() {
+            @Override
+            public double predict(FrameTensor xRaw, FrameTensor x40, FrameTensor x100) {
+                return super.predict(xRaw, x40, x100) * 0.999;
+            }
+        });
+
+        String differences = PredictionReplayHarness.compare(PredictionReplayHarness.readPredictions(NATIVE_PREDICTIONS), actual, TOLERANCE);
+        assertTrue("a backend with different predictions should be caught", differences != null);
+    }
+
+    @Test
+    public void GIVEN_recordingWithSkippedPredictions_WHEN_compareSkipped_THEN_onlyPredictionsNotMadeReported() throws Exception {
+        List<PredictionReplayHarness.Prediction> made = PredictionReplayHarness.readPredictions(NATIVE_PREDICTIONS);
+        List<PredictionReplayHarness.Prediction> recorded = new ArrayList<>();
+        for (int i = 0; i < made.size(); i += 3) {
+            // Recorded when the next key was already pressed.
+            recorded.add(new PredictionReplayHarness.Prediction(made.get(i).getSeqNumber() + 1, made.get(i).getProbability(), -1));
+        }
+        assertTrue("every third prediction should be matched", PredictionReplayHarness.compareSkipped(recorded, made, TOLERANCE) == null);
+
+        recorded.set(10, new PredictionReplayHarness.Prediction(recorded.get(10).getSeqNumber(), recorded.get(10).getProbability() + 0.01f, -1));
+        assertTrue("a prediction that was not made should be reported", PredictionReplayHarness.compareSkipped(recorded, made, TOLERANCE) != null);
+    }
+
+    @Test
+    public void GIVEN_recordedProfile_WHEN_replayKeyStrokes_THEN_predictionsMatchKeras() throws Exception {
+        assertMatchesRecorded(KEY_STROKES, Paths.get("predictions.csv"), false);
+    }
+
+    @Test
+    public void GIVEN_recordedProfile_WHEN_replaySimulatedImposters_THEN_predictionsMatchKeras() throws Exception {
+        // The recording skipped the releases that came while the model was still busy.
+        assertMatchesRecorded(SIMULATED_KEY_STROKES, Paths.get("predictions-sim.csv"), true);
+    }
+
+    private static void assertMatchesRecorded(Path keyStrokes, Path recorded, boolean skipped) throws Exception {
+        String profile = System.getProperty(RECORDED_PROFILE_PROPERTY);
+        Assume.assumeTrue("no profile given in " + RECORDED_PROFILE_PROPERTY, profile != null);
+
+        EngineModelPojo engineModel = PredictionReplayHarness.readEngineModel(Paths.get(profile), PAYLOAD);
+        List<PredictionReplayHarness.Prediction> actual = PredictionReplayHarness.replay(keyStrokes, engineModel, LstmEnsembleModel::new);
+        log.debug("Replay of " + keyStrokes + ": " + PredictionReplayHarness.latencySummary(actual));
+
+        List<PredictionReplayHarness.Prediction> expected = PredictionReplayHarness.readPredictions(recorded);
+        String differences = skipped ? PredictionReplayHarness.compareSkipped(expected, actual, RECORDED_TOLERANCE) :
+                PredictionReplayHarness.compare(expected, actual, RECORDED_TOLERANCE);
+        assertTrue("predictions should match " + recorded + ": " + differences, differences == null);
+    }
+}
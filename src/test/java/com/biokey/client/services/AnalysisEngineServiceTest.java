@@ -0,0 +1,96 @@
+package com.biokey.client.services;
+
+import com.biokey.client.constants.AuthConstants;
+import com.biokey.client.constants.SecurityConstants;
+import com.biokey.client.models.pojo.*;
+import com.biokey.client.services.engine.FrameTensor;
+import com.biokey.client.services.engine.IAnalysisModel;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertTrue;
+
+public class AnalysisEngineServiceTest {
+
+    private static final int TEST_TIMEOUT = 5000;
+
+    /**
+     * Model that remembers the width of the frames of each prediction.
+     */
+    private static class WidthRecordingModel implements IAnalysisModel {
+        private final List<Integer> widths = new CopyOnWriteArrayList<>();
+        private volatile boolean running = true;
+
+        public boolean init(String payload) {
+            return true;
+        }
+
+        public double predict(FrameTensor xRaw, FrameTensor x40, FrameTensor x100) {
+            widths.add(xRaw.width());
+            return 0.5;
+        }
+
+        public void kill() {
+            running = false;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+    }
+
+    @Test
+    public void GIVEN_runningEngine_WHEN_profileWithMoreFeatures_THEN_restartedWithNewProfile() throws Exception {
+        List<WidthRecordingModel> models = new CopyOnWriteArrayList<>();
+        try (HeadlessAnalysisEngine underTest = new HeadlessAnalysisEngine(engineModel(2), () -> {
+            WidthRecordingModel model = new WidthRecordingModel();
+            models.add(model);
+            return model;
+        }, (AnalysisResultPojo analysisResult) -> {})) {
+            typeKeys(underTest, 0);
+            assertTrue("first profile should be predicted with its features", models.size() == 1 &&
+                    !models.get(0).widths.isEmpty() && models.get(0).widths.stream().allMatch(width -> width == 2));
+
+            TypingProfilePojo profile = new TypingProfilePojo("swapped", "swapped", "swapped", engineModel(3), new String[] {}, "");
+            underTest.getEngine().statusChanged(null, new ClientStatusPojo(profile, AuthConstants.AUTHENTICATED,
+                    SecurityConstants.UNLOCKED, "", "", "", System.currentTimeMillis()), false);
+            typeKeys(underTest, 1000);
+
+            assertTrue("engine should start a new model for the new profile", models.size() == 2 && !models.get(0).isRunning());
+            assertTrue("new profile should be predicted with its features",
+                    !models.get(1).widths.isEmpty() && models.get(1).widths.stream().allMatch(width -> width == 3));
+        }
+    }
+
+    /**
+     * @return an engine model whose features are the keys from 30 on, one key each
+     */
+    private static EngineModelPojo engineModel(int featureSize) {
+        EngineModelPojo engineModel = new EngineModelPojo();
+        for (int i = 0; i < featureSize; i++) {
+            GaussianFeaturePojo feature = new GaussianFeaturePojo();
+            feature.setIndex(i);
+            feature.setMean(4.0);
+            feature.setStdev(0.5);
+            engineModel.getGaussianProfile().put(Integer.toString(30 + i), feature);
+        }
+        return engineModel;
+    }
+
+    /**
+     * Type each key of the profiles once and wait for the engine to be done with them.
+     */
+    private static void typeKeys(HeadlessAnalysisEngine engine, long timeStamp) throws InterruptedException {
+        long expected = engine.getConsumed();
+        for (int key = 30; key < 33; key++) {
+            engine.enqueueKeyStroke(new KeyStrokePojo(key, true, timeStamp + 100 * key));
+            engine.enqueueKeyStroke(new KeyStrokePojo(key, false, timeStamp + 100 * key + 60));
+            expected += 2;
+        }
+        long deadline = System.currentTimeMillis() + TEST_TIMEOUT;
+        while (engine.getConsumed() < expected && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertTrue("engine should consume the key strokes", engine.getConsumed() >= expected);
+    }
+}
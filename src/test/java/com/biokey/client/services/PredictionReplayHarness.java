@@ -0,0 +1,203 @@
+package com.biokey.client.services;
+
+import com.biokey.client.helpers.KeyStrokeCsvHelper;
+import com.biokey.client.models.pojo.*;
+import com.biokey.client.services.engine.IAnalysisModel;
+import com.biokey.client.services.engine.LstmEnsembleModel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Replays recorded key strokes through a headless analysis engine and compares its predictions with recorded ones.
+ *
+ * Key strokes are handed to the engine one at a time through the controller, waiting until the engine is done with
+ * each, so every key release that updates the model inputs gets a prediction of its own and its latency is the time
+ * from enqueueing the release to the result. Predictions are identified, like in the recorded files, by the engine
+ * sequence number: the number of key presses so far.
+ */
+public class PredictionReplayHarness {
+
+    private static final long KEY_STROKE_WAIT = 30000; // milliseconds the engine may take over one key stroke
+
+    /**
+     * Prediction made after a key stroke.
+     */
+    public static class Prediction {
+
+        private final long seqNumber;
+        private final float probability;
+        private final long latency;
+
+        public Prediction(long seqNumber, float probability, long latency) {
+            this.seqNumber = seqNumber;
+            this.probability = probability;
+            this.latency = latency;
+        }
+
+        public long getSeqNumber() {
+            return seqNumber;
+        }
+
+        public float getProbability() {
+            return probability;
+        }
+
+        /**
+         * @return nanoseconds from enqueueing the key stroke to the result, or -1 for recorded predictions.
+         */
+        public long getLatency() {
+            return latency;
+        }
+    }
+
+    /**
+     * Read the recorded predictions, one "seq,probability" pair per line.
+     */
+    public static List<Prediction> readPredictions(@NonNull Path file) throws IOException {
+        List<Prediction> predictions = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] columns = line.split(",");
+                predictions.add(new Prediction(Long.parseLong(columns[0]), Float.parseFloat(columns[1]), -1));
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * Write predictions in the format of the recorded files.
+     */
+    public static void writePredictions(@NonNull Path file, @NonNull List<Prediction> predictions) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            for (Prediction prediction : predictions) writer.println(prediction.getSeqNumber() + "," + prediction.getProbability());
+        }
+    }
+
+    /**
+     * Read an engine model.
+     *
+     * @param profile JSON file holding the gaussianProfile of the engine model
+     * @param payload JSON file holding the Keras model under "model" and its weights under "weights" or "weight"
+     */
+    public static EngineModelPojo readEngineModel(@NonNull Path profile, @NonNull Path payload) throws Exception {
+        EngineModelPojo engineModel = new ObjectMapper().readValue(profile.toFile(), EngineModelPojo.class);
+        LstmEnsembleModel.readExport(payload, engineModel);
+        return engineModel;
+    }
+
+    /**
+     * Replay the key strokes through an engine running the given backend.
+     *
+     * @param keyStrokes CSV file of key strokes, read by KeyStrokeCsvHelper
+     * @param engineModel the engine model of the typing profile
+     * @param backend makes the model the engine runs
+     * @return the predictions made, in order
+     */
+    public static List<Prediction> replay(@NonNull Path keyStrokes, @NonNull EngineModelPojo engineModel,
+                                          @NonNull Supplier<IAnalysisModel> backend) throws Exception {
+        List<KeyStrokePojo> toReplay = new ArrayList<>();
+        KeyStrokeCsvHelper.read(keyStrokes, (String userId, int key, boolean keyDown, long timeStamp, boolean isUser) ->
+                toReplay.add(new KeyStrokePojo(key, keyDown, timeStamp)));
+
+        List<Prediction> predictions = Collections.synchronizedList(new ArrayList<>());
+        long[] current = new long[2]; // sequence number and enqueue time of the key stroke being replayed
+
+        try (HeadlessAnalysisEngine engine = new HeadlessAnalysisEngine(engineModel, backend, (AnalysisResultPojo analysisResult) -> {
+            long now = System.nanoTime();
+            synchronized (current) {
+                predictions.add(new Prediction(current[0], analysisResult.getProbability(), now - current[1]));
+            }
+        })) {
+            long seqNumber = 0;
+            for (int i = 0; i < toReplay.size(); i++) {
+                KeyStrokePojo keyStroke = toReplay.get(i);
+                if (keyStroke.isKeyDown()) seqNumber++;
+                synchronized (current) {
+                    current[0] = seqNumber;
+                    current[1] = System.nanoTime();
+                }
+                engine.enqueueKeyStroke(keyStroke);
+
+                long giveUp = System.currentTimeMillis() + KEY_STROKE_WAIT;
+                while (engine.getConsumed() <= i) {
+                    if (System.currentTimeMillis() > giveUp) throw new IllegalStateException("Engine did not take key stroke " + i);
+                    Thread.yield();
+                }
+            }
+        }
+        return new ArrayList<>(predictions);
+    }
+
+    /**
+     * Compare predictions with the expected ones, in order. Sequence numbers only label the differences: the recorded
+     * files took them when the engine got round to predicting, which was sometimes after the next key press.
+     *
+     * @param tolerance the largest difference in probability allowed
+     * @return null if there are as many predictions as expected and each is within the tolerance, or else a
+     *         description of the differences
+     */
+    public static String compare(@NonNull List<Prediction> expected, @NonNull List<Prediction> actual, double tolerance) {
+        if (expected.size() != actual.size()) {
+            return "expected " + expected.size() + " predictions but " + actual.size() + " were made";
+        }
+        int mismatches = 0;
+        String first = null;
+        for (int i = 0; i < expected.size(); i++) {
+            Prediction e = expected.get(i);
+            Prediction a = actual.get(i);
+            if (Math.abs(e.getProbability() - a.getProbability()) <= tolerance) continue;
+            if (mismatches++ == 0) {
+                first = "prediction " + i + " was " + a.getSeqNumber() + "," + a.getProbability() +
+                        " instead of " + e.getSeqNumber() + "," + e.getProbability();
+            }
+        }
+        return mismatches == 0 ? null : mismatches + " predictions differ, first " + first;
+    }
+
+    /**
+     * Compare predictions with a recording that skipped some of them, made by an engine that only predicted when it
+     * was free. Each recorded prediction must match one of the predictions made after the one matching the previous
+     * recorded prediction and at or before its sequence number.
+     *
+     * @param tolerance the largest difference in probability allowed
+     * @return null if every recorded prediction is matched, or else a description of the first that is not
+     */
+    public static String compareSkipped(@NonNull List<Prediction> expected, @NonNull List<Prediction> actual, double tolerance) {
+        int next = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            Prediction e = expected.get(i);
+            int match = next;
+            while (match < actual.size() && actual.get(match).getSeqNumber() <= e.getSeqNumber() &&
+                    Math.abs(e.getProbability() - actual.get(match).getProbability()) > tolerance) match++;
+            if (match == actual.size() || actual.get(match).getSeqNumber() > e.getSeqNumber()) {
+                return "recorded prediction " + i + " " + e.getSeqNumber() + "," + e.getProbability() + " was not made";
+            }
+            next = match + 1;
+        }
+        return null;
+    }
+
+    /**
+     * @return the p50, p99 and max latency of the predictions in milliseconds.
+     */
+    public static String latencySummary(@NonNull List<Prediction> predictions) {
+        if (predictions.isEmpty()) return "no predictions";
+        long[] latencies = new long[predictions.size()];
+        for (int i = 0; i < latencies.length; i++) latencies[i] = predictions.get(i).getLatency();
+        Arrays.sort(latencies);
+        int last = latencies.length - 1;
+        return String.format("%d predictions, latency p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                latencies.length, latencies[last / 2] / 1e6, latencies[last * 99 / 100] / 1e6, latencies[last] / 1e6);
+    }
+}
@@ -0,0 +1,77 @@
+package com.biokey.client.services.engine;
+
+import com.biokey.client.models.pojo.EngineModelPojo;
+import com.biokey.client.models.pojo.GaussianFeaturePojo;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class CompiledProfileTest {
+
+    private static GaussianFeaturePojo feature(int index, double mean, double stdev) {
+        GaussianFeaturePojo feature = new GaussianFeaturePojo();
+        feature.setIndex(index);
+        feature.setMean(mean);
+        feature.setStdev(stdev);
+        return feature;
+    }
+
+    @Test
+    public void GIVEN_profile_WHEN_walkBackwards_THEN_featuresFound() {
+        EngineModelPojo model = new EngineModelPojo();
+        model.getGaussianProfile().put("42", feature(0, 4.0, 0.5));
+        model.getGaussianProfile().put("36-3675-42", feature(1, 5.0, 0.25));
+        CompiledProfile underTest = CompiledProfile.compile(model);
+
+        int node = underTest.child(CompiledProfile.ROOT, 42);
+        assertTrue("42 should be a feature", underTest.featureIndex(node) == 0 && underTest.mean(node) == 4.0);
+        node = underTest.child(node, 3675);
+        assertTrue("3675-42 should be a prefix but not a feature", node != CompiledProfile.NONE && underTest.featureIndex(node) == CompiledProfile.NONE);
+        node = underTest.child(node, 36);
+        assertTrue("36-3675-42 should be a feature", underTest.featureIndex(node) == 1 && underTest.stdev(node) == 0.25);
+        assertTrue("no longer sequence should exist", underTest.child(node, 36) == CompiledProfile.NONE);
+        assertTrue("unknown key should not match", underTest.child(CompiledProfile.ROOT, 3675) == CompiledProfile.NONE);
+        assertTrue("feature size should match the profile", underTest.getFeatureSize() == 2);
+        assertTrue("profile should remember its model", underTest.getModel() == model);
+    }
+
+    @Test
+    public void GIVEN_randomProfile_WHEN_walkSequences_THEN_matchesStringLookup() {
+        Random random = new Random(11);
+        int[] keyCodes = {0, 14, 30, 31, 57, 3675, 65535, Integer.MAX_VALUE};
+        EngineModelPojo model = new EngineModelPojo();
+        HashMap<String, GaussianFeaturePojo> gaussianProfile = model.getGaussianProfile();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder sequence = new StringBuilder();
+            int length = 1 + random.nextInt(4);
+            for (int k = 0; k < length; k++) sequence.append(k == 0 ? "" : "-").append(keyCodes[random.nextInt(keyCodes.length)]);
+            gaussianProfile.put(sequence.toString(), feature(gaussianProfile.size(), random.nextDouble(), random.nextDouble()));
+        }
+        CompiledProfile underTest = CompiledProfile.compile(model);
+
+        for (int i = 0; i < 5000; i++) {
+            // Keys held down, oldest first, walked from the newest as the engine does.
+            int[] held = new int[1 + random.nextInt(6)];
+            for (int k = 0; k < held.length; k++) held[k] = keyCodes[random.nextInt(keyCodes.length)];
+
+            String runningSequence = "";
+            int node = CompiledProfile.ROOT;
+            for (int k = held.length - 1; k >= 0; k--) {
+                runningSequence = held[k] + (runningSequence.length() == 0 ? "" : "-" + runningSequence);
+                GaussianFeaturePojo expected = gaussianProfile.get(runningSequence);
+                if (node != CompiledProfile.NONE) node = underTest.child(node, held[k]);
+
+                if (expected == null) {
+                    assertTrue(runningSequence + " should not be a feature", node == CompiledProfile.NONE || underTest.featureIndex(node) == CompiledProfile.NONE);
+                }
+                else {
+                    assertTrue(runningSequence + " should be found", node != CompiledProfile.NONE &&
+                            underTest.featureIndex(node) == expected.getIndex() && underTest.mean(node) == expected.getMean());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.biokey.client.services.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+public class FrameTensorTest {
+
+    @Test
+    public void GIVEN_fullWindow_WHEN_push_THEN_oldestFrameEvicted() {
+        FrameTensor underTest = new FrameTensor(3, 2);
+        for (int i = 0; i < 5; i++) underTest.push(new double[] {i, -i});
+
+        assertTrue("window should stay at capacity", underTest.size() == 3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue("row " + i + " should hold frame " + (i + 2), underTest.row(i)[0] == i + 2 && underTest.row(i)[1] == -(i + 2));
+            assertTrue("row " + i + " should be stamped with its push", underTest.stamp(i) == i + 2);
+        }
+    }
+
+    @Test
+    public void GIVEN_partialWindow_WHEN_push_THEN_rowsInOrder() {
+        FrameTensor underTest = new FrameTensor(4, 1);
+        underTest.push(Arrays.asList(1.5));
+        underTest.push(new double[] {2.5});
+
+        assertTrue("window should hold the pushed frames", underTest.size() == 2);
+        assertTrue("oldest frame should come first", underTest.row(0)[0] == 1.5f && underTest.row(1)[0] == 2.5f);
+        assertTrue("stamps should start at zero", underTest.stamp(0) == 0 && underTest.stamp(1) == 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void GIVEN_wrongWidth_WHEN_push_THEN_throwException() {
+        new FrameTensor(2, 3).push(new double[] {1, 2});
+    }
+}
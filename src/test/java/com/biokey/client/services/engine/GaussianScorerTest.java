@@ -0,0 +1,53 @@
+package com.biokey.client.services.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class GaussianScorerTest {
+
+    @Test
+    public void GIVEN_exponents_WHEN_fastExp_THEN_withinErrorBound() {
+        double worst = 0;
+        for (double x = -708; x <= 50; x += 0.0007) {
+            double exact = Math.exp(x);
+            worst = Math.max(worst, Math.abs(GaussianScorer.fastExp(x) - exact) / exact);
+        }
+        assertTrue("relative error " + worst + " should be below the bound", worst < GaussianScorer.FAST_EXP_ERROR);
+        assertTrue("huge negative exponents should give zero", GaussianScorer.fastExp(Double.NEGATIVE_INFINITY) == 0.0);
+        assertTrue("NaN should stay NaN", Double.isNaN(GaussianScorer.fastExp(Double.NaN)));
+    }
+
+    @Test
+    public void GIVEN_batch_WHEN_score_THEN_matchesGaussianFormula() {
+        Random random = new Random(7);
+        GaussianScorer exact = new GaussianScorer(64, false);
+        GaussianScorer fast = new GaussianScorer(64, true);
+        double[] means = new double[64];
+        double[] stdevs = new double[64];
+
+        for (int i = 0; i < 64; i++) {
+            long duration = 1 + random.nextInt(10000);
+            means[i] = 3 + 4 * random.nextDouble();
+            stdevs[i] = 0.05 + random.nextDouble();
+            exact.add(i, i, duration, means[i], stdevs[i], 1 / (2 * stdevs[i] * stdevs[i]));
+            fast.add(i, i, duration, means[i], stdevs[i], 1 / (2 * stdevs[i] * stdevs[i]));
+        }
+        exact.score();
+        fast.score();
+
+        for (int i = 0; i < 64; i++) {
+            long duration = exact.duration(i);
+            double expected = Math.exp(-Math.pow(Math.log(duration) - means[i], 2) / (2 * Math.pow(stdevs[i], 2)));
+            assertTrue("log should match Math.log", GaussianScorer.log(duration) == Math.log(duration));
+            assertTrue("score should match the formula bit for bit", exact.score(i) == expected);
+            assertTrue("fast score should be within the bound",
+                    Math.abs(fast.score(i) - exact.score(i)) <= GaussianScorer.FAST_EXP_ERROR * exact.score(i) + Double.MIN_VALUE);
+        }
+
+        exact.clear();
+        assertTrue("cleared batch should be empty", exact.size() == 0);
+    }
+}
@@ -0,0 +1,97 @@
+package com.biokey.client.services.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class KeyEventRingTest {
+
+    @Test
+    public void GIVEN_producerThread_WHEN_drain_THEN_allEventsInOrder() throws InterruptedException {
+        final int events = 100000;
+        KeyEventRing underTest = new KeyEventRing(64);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < events; i++) {
+                // The ring never waits for the consumer, so wait here to keep every event.
+                while (underTest.size() == 64) Thread.yield();
+                underTest.publish(i, i % 2 == 0, 1000L + i);
+            }
+        });
+        producer.start();
+
+        int[] next = {0};
+        boolean[] inOrder = {true};
+        while (next[0] < events) {
+            int handled = underTest.drain((key, keyDown, timeStamp, endOfBatch) -> {
+                if (key != next[0] || keyDown != (key % 2 == 0) || timeStamp != 1000L + key) inOrder[0] = false;
+                next[0]++;
+            });
+            if (handled == 0) underTest.awaitEvents(10, TimeUnit.MILLISECONDS);
+        }
+        producer.join();
+
+        assertTrue("events should arrive in order and intact", inOrder[0]);
+        assertTrue("no events should be dropped", underTest.getDropped() == 0 && underTest.size() == 0);
+    }
+
+    @Test
+    public void GIVEN_producerThreads_WHEN_drain_THEN_everyEventIntactAndInOrderPerProducer() throws InterruptedException {
+        final int producers = 4;
+        final int events = 50000;
+        // Small enough that the producers overtake the consumer and drop events while they publish at once.
+        KeyEventRing underTest = new KeyEventRing(64);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < events; i++) underTest.publish(producer, i % 2 == 0, (long) producer * events + i);
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        long[] last = new long[producers];
+        Arrays.fill(last, -1);
+        long[] handled = {0};
+        boolean[] intact = {true};
+        KeyEventRing.IKeyEventHandler handler = (key, keyDown, timeStamp, endOfBatch) -> {
+            long i = timeStamp - (long) key * events;
+            if (key < 0 || key >= producers || i < 0 || i >= events || keyDown != (i % 2 == 0) || i <= last[key]) {
+                intact[0] = false;
+            } else {
+                last[key] = i;
+            }
+            handled[0]++;
+        };
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            if (underTest.drain(handler) == 0) underTest.awaitEvents(1, TimeUnit.MILLISECONDS);
+        }
+        for (Thread thread : threads) thread.join();
+        underTest.drain(handler);
+
+        assertTrue("events should arrive intact and in order for each producer", intact[0]);
+        assertTrue("every event should be handled or counted as dropped: " + handled[0] + " + " + underTest.getDropped(),
+                handled[0] + underTest.getDropped() == (long) producers * events && underTest.size() == 0);
+    }
+
+    @Test
+    public void GIVEN_fullRing_WHEN_publish_THEN_newestEventsKeptWithoutWaiting() {
+        KeyEventRing underTest = new KeyEventRing(4);
+        for (int i = 0; i < 10; i++) underTest.publish(i, true, i);
+
+        List<Integer> keys = new ArrayList<>();
+        List<Boolean> endOfBatches = new ArrayList<>();
+        underTest.drain((key, keyDown, timeStamp, endOfBatch) -> {
+            keys.add(key);
+            endOfBatches.add(endOfBatch);
+        });
+
+        assertTrue("the newest events should be kept: " + keys, keys.toString().equals("[6, 7, 8, 9]"));
+        assertTrue("only the last event should end the batch: " + endOfBatches, endOfBatches.toString().equals("[false, false, false, true]"));
+        assertTrue("the oldest events should be counted as dropped", underTest.getDropped() == 6);
+    }
+}
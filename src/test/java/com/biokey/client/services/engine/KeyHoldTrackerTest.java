@@ -0,0 +1,40 @@
+package com.biokey.client.services.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class KeyHoldTrackerTest {
+
+    @Test
+    public void GIVEN_overlappingKeys_WHEN_keyUp_THEN_walksBackToStartOfRun() {
+        KeyHoldTracker underTest = new KeyHoldTracker(8, 150);
+
+        underTest.keyDown(1, 0);
+        underTest.keyDown(2, 500); // gap above threshold, starts a new run
+        underTest.keyDown(3, 600);
+        underTest.keyDown(4, 700);
+
+        long position = underTest.keyUp(3);
+        assertTrue("released key should map to its press", position == 2 && underTest.key(position) == 3);
+        assertTrue("run should start at the press after the gap", underTest.getReleasedRunStart() == 1);
+        assertTrue("press times should be kept", underTest.downTime(1) == 500 && underTest.downTime(2) == 600);
+        assertTrue("next press should get the next sequence number", underTest.getSeqNumber() == 4);
+
+        assertTrue("second release should be ignored", underTest.keyUp(3) == KeyHoldTracker.NONE);
+        assertTrue("key never pressed should be ignored", underTest.keyUp(9) == KeyHoldTracker.NONE);
+
+        assertTrue("first key should be alone in its run", underTest.keyUp(1) == 0 && underTest.getReleasedRunStart() == 0);
+    }
+
+    @Test
+    public void GIVEN_keyHeldPastCapacity_WHEN_keyUp_THEN_runCutToLogAndOverwrittenPressIgnored() {
+        KeyHoldTracker underTest = new KeyHoldTracker(4, 150);
+
+        for (int i = 0; i < 6; i++) underTest.keyDown(i, i * 10);
+
+        assertTrue("overwritten press should be ignored", underTest.keyUp(0) == KeyHoldTracker.NONE);
+        assertTrue("retained press should be found", underTest.keyUp(5) == 5);
+        assertTrue("run should be cut to the oldest retained press", underTest.getReleasedRunStart() == 2);
+    }
+}
@@ -0,0 +1,146 @@
+package com.biokey.client.services.engine;
+
+import com.biokey.client.models.pojo.EngineModelPojo;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class LstmEnsembleModelTest {
+
+    // Output of the testOutputs.json ensemble on the reset frames, computed with a float64 reference of the Keras layers.
+    private static final double RESET_FRAMES_PREDICTION = 0.9920827023779198;
+    private static final double TOLERANCE = 1e-5;
+
+    // One LSTM unit over two features followed by a sigmoid Dense layer.
+    private static final String TINY_MODEL =
+            "{\"model\": {\"name\": \"tiny\", \"layers\": [" +
+                    "{\"name\": \"x_raw\", \"class_name\": \"InputLayer\", \"inbound_nodes\": [], \"config\": {\"batch_input_shape\": [null, 2, 2]}}," +
+                    "{\"name\": \"x_40\", \"class_name\": \"InputLayer\", \"inbound_nodes\": [], \"config\": {\"batch_input_shape\": [null, 2, 2]}}," +
+                    "{\"name\": \"lstm\", \"class_name\": \"LSTM\", \"inbound_nodes\": [[[\"x_raw\", 0, 0, {}]]], \"config\": {\"units\": 1, \"activation\": \"tanh\", \"recurrent_activation\": \"hard_sigmoid\", \"use_bias\": true, \"return_sequences\": false}}," +
+                    "{\"name\": \"dense\", \"class_name\": \"Dense\", \"inbound_nodes\": [[[\"lstm\", 0, 0, {}]]], \"config\": {\"units\": 1, \"activation\": \"sigmoid\", \"use_bias\": true}}]," +
+                    "\"input_layers\": [[\"x_raw\", 0, 0]], \"output_layers\": [[\"dense\", 0, 0]]}," +
+                    "\"weights\": [[[0.1, 0.2, 0.3, 0.4], [0.5, 0.6, 0.7, 0.8]], [[0.9, 1.0, 1.1, 1.2]], [0.01, 1.0, 0.02, 0.03], [[2.0]], [-0.5]]}";
+
+    private static double hardSigmoid(double x) {
+        return Math.max(0, Math.min(1, 0.2 * x + 0.5));
+    }
+
+    @Test
+    public void GIVEN_tinyModel_WHEN_predict_THEN_matchesKerasEquations() {
+        LstmEnsembleModel underTest = new LstmEnsembleModel();
+        assertTrue("model should initialize", underTest.init(TINY_MODEL));
+
+        double[][] window = {{1.0, 2.0}, {0.0, -1.0}};
+        double h = 0, c = 0;
+        double[][] kernel = {{0.1, 0.2, 0.3, 0.4}, {0.5, 0.6, 0.7, 0.8}};
+        double[] recurrent = {0.9, 1.0, 1.1, 1.2};
+        double[] bias = {0.01, 1.0, 0.02, 0.03};
+        for (double[] x : window) {
+            double[] z = new double[4];
+            for (int j = 0; j < 4; j++) z[j] = bias[j] + x[0] * kernel[0][j] + x[1] * kernel[1][j] + h * recurrent[j];
+            c = hardSigmoid(z[1]) * c + hardSigmoid(z[0]) * Math.tanh(z[2]);
+            h = hardSigmoid(z[3]) * Math.tanh(c);
+        }
+        double expected = 1 / (1 + Math.exp(-(2.0 * h - 0.5)));
+
+        double actual = underTest.predict(toTensor(window), toTensor(window), toTensor(window));
+        assertTrue("prediction " + actual + " should match " + expected, Math.abs(actual - expected) < TOLERANCE);
+    }
+
+    @Test
+    public void GIVEN_uninitializedModel_WHEN_predict_THEN_returnsError() {
+        LstmEnsembleModel underTest = new LstmEnsembleModel();
+        assertTrue("uninitialized model should not predict", underTest.predict(new FrameTensor(1, 1), new FrameTensor(1, 1), new FrameTensor(1, 1)) == -1);
+        assertTrue("uninitialized model should not be running", !underTest.isRunning());
+    }
+
+    @Test
+    public void GIVEN_unsupportedLayer_WHEN_init_THEN_returnsFalse() {
+        LstmEnsembleModel underTest = new LstmEnsembleModel();
+        assertTrue("model with unsupported layer should not initialize",
+                !underTest.init(TINY_MODEL.replace("\"class_name\": \"Dense\"", "\"class_name\": \"Conv1D\"")));
+    }
+
+    @Test
+    public void GIVEN_testOutputsModel_WHEN_predictResetFrames_THEN_matchesReference() throws Exception {
+        JSONParser parser = new JSONParser();
+        JSONObject payload = (JSONObject) parser.parse(new FileReader("testOutputs.json"));
+        JSONObject resetFrames = (JSONObject) parser.parse(new InputStreamReader(
+                getClass().getResourceAsStream("/com/biokey/client/services/reset-frames.json")));
+
+        LstmEnsembleModel underTest = new LstmEnsembleModel();
+        assertTrue("model should initialize", underTest.init(payload.toJSONString()));
+
+        double actual = underTest.predict(toTensor((JSONArray) resetFrames.get("x_raw")),
+                toTensor((JSONArray) resetFrames.get("x_40")), toTensor((JSONArray) resetFrames.get("x_100")));
+        assertTrue("prediction " + actual + " should match " + RESET_FRAMES_PREDICTION,
+                Math.abs(actual - RESET_FRAMES_PREDICTION) < TOLERANCE);
+    }
+
+    @Test
+    public void GIVEN_exportWithWeightKey_WHEN_readExport_THEN_modelInitializes() throws Exception {
+        // testOutputs.json is an older export, which names the weights "weight".
+        EngineModelPojo engineModel = new EngineModelPojo();
+        LstmEnsembleModel.readExport(Paths.get("testOutputs.json"), engineModel);
+        assertTrue("weights should be read", engineModel.getWeights() != null && !engineModel.getWeights().equals("null"));
+
+        LstmEnsembleModel underTest = new LstmEnsembleModel();
+        assertTrue("model should initialize from the engine model", underTest.init(LstmEnsembleModel.payloadOf(engineModel)));
+        assertTrue("engine model without an ensemble should have no payload", LstmEnsembleModel.payloadOf(new EngineModelPojo()) == null);
+    }
+
+    @Test
+    public void GIVEN_slidingWindow_WHEN_predict_THEN_matchesFreshModel() {
+        LstmEnsembleModel underTest = new LstmEnsembleModel();
+        assertTrue("model should initialize", underTest.init(TINY_MODEL));
+
+        Random random = new Random(7);
+        FrameTensor window = new FrameTensor(3, 2);
+        for (int i = 0; i < 10; i++) {
+            double[] frame = {random.nextInt(3) == 0 ? 0 : random.nextGaussian(), random.nextGaussian()};
+            window.push(frame);
+
+            LstmEnsembleModel fresh = new LstmEnsembleModel();
+            fresh.init(TINY_MODEL);
+            double expected = fresh.predict(copy(window), copy(window), copy(window));
+            double actual = underTest.predict(window, window, window);
+            assertTrue("prediction " + actual + " should match " + expected + " after " + (i + 1) + " frames", actual == expected);
+        }
+    }
+
+    private static FrameTensor toTensor(double[][] window) {
+        FrameTensor tensor = new FrameTensor(window.length, window[0].length);
+        for (double[] row : window) tensor.push(row);
+        return tensor;
+    }
+
+    private static FrameTensor toTensor(JSONArray window) {
+        FrameTensor tensor = new FrameTensor(window.size(), ((JSONArray) window.get(0)).size());
+        for (Object row : window) {
+            List<Double> values = new ArrayList<>();
+            for (Object value : (JSONArray) row) values.add(((Number) value).doubleValue());
+            tensor.push(values);
+        }
+        return tensor;
+    }
+
+    private static FrameTensor copy(FrameTensor window) {
+        FrameTensor tensor = new FrameTensor(window.capacity(), window.width());
+        for (int i = 0; i < window.size(); i++) {
+            double[] row = new double[window.width()];
+            for (int j = 0; j < row.length; j++) row[j] = window.row(i)[j];
+            tensor.push(row);
+        }
+        return tensor;
+    }
+}
@@ -0,0 +1,61 @@
+package com.biokey.client.services.engine;
+
+import com.biokey.client.constants.BackpressureConstants;
+import com.biokey.client.models.pojo.AnalysisResultPojo;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class PredictionSchedulerTest {
+
+    // Model that counts its predictions and returns the count.
+    private static class CountingModel implements IAnalysisModel {
+        int predictions = 0;
+
+        public boolean init(String payload) {
+            return true;
+        }
+
+        public double predict(FrameTensor xRaw, FrameTensor x40, FrameTensor x100) {
+            return ++predictions;
+        }
+
+        public void kill() {
+        }
+
+        public boolean isRunning() {
+            return true;
+        }
+    }
+
+    private static final FrameTensor WINDOW = new FrameTensor(1, 1);
+
+    @Test
+    public void GIVEN_coalesce_WHEN_burstOfUpdates_THEN_onePredictionForNewestKey() {
+        PredictionScheduler underTest = new PredictionScheduler(BackpressureConstants.COALESCE);
+        CountingModel model = new CountingModel();
+
+        for (long timeStamp = 1; timeStamp <= 5; timeStamp++) {
+            underTest.inputsUpdated(timeStamp);
+            assertTrue("prediction should wait for the end of the batch", timeStamp == 5 || !underTest.isPredictionDue(false));
+        }
+        assertTrue("prediction should be due at the end of the batch", underTest.isPredictionDue(true));
+
+        AnalysisResultPojo result = underTest.predict(model, WINDOW, WINDOW, WINDOW);
+        assertTrue("model should run once", model.predictions == 1 && result.getProbability() == 1);
+        assertTrue("result should be timestamped with the newest key", result.getTimeStamp() == 5);
+        assertTrue("four updates should be coalesced", underTest.getCoalescedUpdates() == 4 && underTest.getPredictions() == 1);
+        assertTrue("nothing should be pending", !underTest.isPredictionDue(true));
+    }
+
+    @Test
+    public void GIVEN_dropOldest_WHEN_update_THEN_predictionDueImmediately() {
+        PredictionScheduler underTest = new PredictionScheduler(BackpressureConstants.DROP_OLDEST);
+        assertTrue("nothing should be due without an update", !underTest.isPredictionDue(true));
+
+        underTest.inputsUpdated(10);
+        assertTrue("prediction should not wait for the end of the batch", underTest.isPredictionDue(false));
+        underTest.reset();
+        assertTrue("reset should drop the pending update", !underTest.isPredictionDue(true));
+    }
+}
@@ -0,0 +1,118 @@
+package com.biokey.client.services.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+
+public class SlidingFeatureEngineTest {
+
+    private static final int FEATURE_SIZE = 20;
+
+    // Sequence as it was kept in the old completedSequences list.
+    private static class CompletedSequence {
+        final int feature;
+        final long duration;
+        final long indexStart;
+        final long indexEnd;
+        final double score;
+
+        CompletedSequence(int feature, long duration, long indexStart, long indexEnd, double score) {
+            this.feature = feature;
+            this.duration = duration;
+            this.indexStart = indexStart;
+            this.indexEnd = indexEnd;
+            this.score = score;
+        }
+    }
+
+    @Test
+    public void GIVEN_randomSession_WHEN_update_THEN_framesMatchStreams() {
+        Random random = new Random(42);
+        SlidingFeatureEngine underTest = new SlidingFeatureEngine(FEATURE_SIZE);
+        List<CompletedSequence> completed = new ArrayList<>();
+
+        long seqNumber = 0;
+        for (int keyUp = 0; keyUp < 3000; keyUp++) {
+            // Between zero and a few key-downs before each key-up, with an occasional long pause.
+            seqNumber += random.nextInt(10) == 0 ? random.nextInt(150) : random.nextInt(3);
+
+            int sequences = random.nextInt(4);
+            for (int i = 0; i < sequences; i++) {
+                int feature = random.nextInt(FEATURE_SIZE);
+                long duration = random.nextInt(10) == 0 ? 0 : random.nextInt(400);
+                long indexStart = Math.max(0, seqNumber - 1 - random.nextInt(4));
+                double score = random.nextDouble();
+
+                // Repeated features within one key-up collided in the old raw frame, keep them distinct.
+                final long currentSeqNumber = seqNumber;
+                if (completed.stream().anyMatch(s -> s.indexEnd == currentSeqNumber && s.feature == feature)) continue;
+
+                completed.add(new CompletedSequence(feature, duration, indexStart, seqNumber, score));
+                underTest.addSequence(seqNumber, feature, duration, indexStart, score);
+            }
+
+            underTest.update(seqNumber);
+            assertFrame("raw frame at " + seqNumber, rawFrame(completed, seqNumber), underTest.getRawFrame());
+            assertFrame("40 frame at " + seqNumber, averageFrame(completed, seqNumber, 40), underTest.getShortFrame());
+            assertFrame("100 frame at " + seqNumber, averageFrame(completed, seqNumber, 100), underTest.getLongFrame());
+        }
+    }
+
+    @Test
+    public void GIVEN_longSession_WHEN_update_THEN_oldSequencesEvicted() {
+        SlidingFeatureEngine underTest = new SlidingFeatureEngine(FEATURE_SIZE);
+        for (long seqNumber = 1; seqNumber <= 10000; seqNumber++) {
+            underTest.addSequence(seqNumber, (int) (seqNumber % FEATURE_SIZE), 100, seqNumber - 1, 0.25);
+            underTest.update(seqNumber);
+        }
+        assertTrue("only sequences in the long frame should be retained", underTest.getRetainedSequences() <= 101);
+
+        long retainedBytes = underTest.getRetainedBytes();
+        for (long seqNumber = 10001; seqNumber <= 50000; seqNumber++) {
+            underTest.addSequence(seqNumber, (int) (seqNumber % FEATURE_SIZE), 100, seqNumber - 1 - seqNumber % 3, 0.25);
+            underTest.update(seqNumber);
+        }
+        assertTrue("memory should stay constant", underTest.getRetainedBytes() == retainedBytes);
+
+        underTest.update(60000);
+        assertTrue("all sequences should be evicted", underTest.getRetainedSequences() == 0);
+        assertTrue("frames should be reset", underTest.getLongFrame()[0] == SlidingFeatureEngine.DEFAULT_FRAME_VALUE);
+    }
+
+    private static double[] averageFrame(List<CompletedSequence> completed, long seqNumber, int frameSize) {
+        double[] frame = new double[FEATURE_SIZE];
+        Arrays.fill(frame, SlidingFeatureEngine.DEFAULT_FRAME_VALUE);
+        Map<Integer, Double> averages = completed
+                .stream()
+                .filter(s -> seqNumber - s.indexStart <= frameSize)
+                .collect(Collectors.groupingBy(s -> s.feature, Collectors.averagingDouble(s -> s.score)));
+        averages.forEach((feature, average) -> frame[feature] = average);
+        return frame;
+    }
+
+    private static double[] rawFrame(List<CompletedSequence> completed, long seqNumber) {
+        double[] frame = new double[FEATURE_SIZE];
+        Arrays.fill(frame, SlidingFeatureEngine.DEFAULT_RAW_VALUE);
+        Map<Integer, Double> raw = completed
+                .stream()
+                .filter(s -> seqNumber - 1 == s.indexEnd)
+                .filter(s -> s.duration > 0)
+                .collect(Collectors.toMap(s -> s.feature, s -> Math.log(s.duration)));
+        raw.forEach((feature, value) -> frame[feature] = value);
+        return frame;
+    }
+
+    private static void assertFrame(String message, double[] expected, double[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue(message + " feature " + i + ": " + actual[i] + " should be " + expected[i],
+                    Double.doubleToLongBits(expected[i]) == Double.doubleToLongBits(actual[i]));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.biokey.client.tools;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class OfflineScoringToolTest {
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("keystrokes", ".csv");
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void GIVEN_usersAndPause_WHEN_partition_THEN_sessionPerRunOfUser() throws Exception {
+        Files.write(file, Arrays.asList(",user_id,key_time,key_code,direction,is_user",
+                "0,a1,1000,65,d,True", "1,a1,1090,65,u,True",
+                "2,b2,1200,66,d,False", "3,b2,1300,66,u,False",
+                "4,a1,1400,67,d,True", "5,a1,1500,67,u,True",
+                "6,a1,9000,68,d,True", "7,a1,9100,68,u,True"), StandardCharsets.UTF_8);
+
+        List<OfflineScoringTool.Session> sessions = OfflineScoringTool.partition(file, 5000);
+        assertTrue("another user and a long pause should start a session", sessions.size() == 4);
+        assertTrue("sessions should be in the order of the file", sessions.get(0).getUserId().equals("a1") &&
+                sessions.get(1).getUserId().equals("b2") && sessions.get(2).getUserId().equals("a1"));
+        assertTrue("imposter sessions should be told apart", sessions.get(0).isUser() && !sessions.get(1).isUser());
+        assertTrue("each session should hold its key strokes", sessions.stream().allMatch(session -> session.size() == 2));
+    }
+
+    @Test
+    public void GIVEN_scores_WHEN_firstChallenge_THEN_challengeRulesApplied() {
+        float[] high = new float[30];
+        Arrays.fill(high, 0.9f);
+        assertTrue("high scores should not be challenged", OfflineScoringTool.firstChallenge(high, 0, 0.30, 5) == -1);
+
+        float[] lowFirst = high.clone();
+        Arrays.fill(lowFirst, 0, 5, 0.1f);
+        assertTrue("low scores should only be challenged once 20 are seen",
+                OfflineScoringTool.firstChallenge(lowFirst, 0, 0.30, 5) == -1);
+
+        float[] lowLater = high.clone();
+        Arrays.fill(lowLater, 20, 25, 0.15f);
+        assertTrue("5 of the last 10 at or below 0.2 should be challenged",
+                OfflineScoringTool.firstChallenge(lowLater, 0, 0.30, 5) == 24);
+        assertTrue("the count should be tunable", OfflineScoringTool.firstChallenge(lowLater, 0, 0.30, 3) == 22);
+
+        float[] failed = high.clone();
+        failed[25] = -1;
+        assertTrue("a failed prediction should be challenged", OfflineScoringTool.firstChallenge(failed, 0, 0.30, 5) == 25);
+        assertTrue("every challenge should be counted", OfflineScoringTool.challenges(lowLater, 0.95, 5) == 1);
+    }
+
+    @Test
+    public void GIVEN_separatedScores_WHEN_areaUnderCurve_THEN_oneOrHalf() {
+        float[] genuine = {0.8f, 0.9f, 0.7f};
+        float[] imposter = {0.1f, 0.2f};
+        assertTrue("separated scores should have an area of 1", OfflineScoringTool.areaUnderCurve(genuine, imposter) == 1);
+        assertTrue("equal scores should have an area of 0.5", OfflineScoringTool.areaUnderCurve(imposter, imposter) == 0.5);
+    }
+}